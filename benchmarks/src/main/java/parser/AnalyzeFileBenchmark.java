@@ -0,0 +1,71 @@
+package parser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный прогон OS.analyzeFile на синтетических логах разного размера: чтение, разбор,
+ * статистика и запись отчёта. Файлы создаются в java.io.tmpdir один раз и переиспользуются.
+ * Пропускная способность в байтах видна во вспомогательном счётчике bytes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class AnalyzeFileBenchmark {
+    @Param({"1MB", "100MB", "1GB"})
+    public String size;
+
+    private File input;
+    private File output;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        input = LogGenerator.ensureFile(new File(directory, "parser-bench-" + size + ".log"),
+                LogGenerator.parseSize(size));
+        output = File.createTempFile("parser-bench-report", ".txt");
+        // прогресс и итоги анализа не должны попадать в замер и вывод JMH
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+        output.delete();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Processed {
+        public long bytes;
+    }
+
+    @Benchmark
+    public void analyzeFile(Processed processed) {
+        OS.analyzeFile(input.getPath(), output.getPath());
+        processed.bytes += input.length();
+    }
+}
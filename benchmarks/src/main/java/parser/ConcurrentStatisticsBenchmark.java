@@ -0,0 +1,87 @@
+package parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+/**
+ * Разбор и добавление строк из нескольких потоков: фрагменты ConcurrentStatistics
+ * против одной Statistics под общей блокировкой. Каждый поток разбирает строки своим
+ * токенизатором и кешем User-Agent; число потоков задаётся -t, например -t 1, -t 4, -t 8
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ConcurrentStatisticsBenchmark {
+    private static final int LINES = 65_536;
+
+    private String[] lines;
+    private ConcurrentStatistics sharded;
+    private Statistics locked;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LogGenerator generator = new LogGenerator(42);
+        lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = generator.nextLine().toString();
+        }
+    }
+
+    // новая статистика на каждую итерацию, чтобы словари и ряды не росли от итерации к итерации
+    @Setup(Level.Iteration)
+    public void resetStatistics() {
+        sharded = new ConcurrentStatistics();
+        locked = new Statistics();
+    }
+
+    // Разбор в потоке: свой токенизатор, кеш и позиция в строках
+    @State(Scope.Thread)
+    public static class Parser {
+        private final LogTokenizer tokenizer = new LogTokenizer(LogTokenizer.Mode.STRICT);
+        private final UserAgentCache userAgents = new UserAgentCache();
+        private final LineRecord record = new LineRecord(tokenizer, userAgents);
+        private int next;
+
+        @Setup(Level.Trial)
+        public void setUp(ThreadParams params) {
+            // потоки начинают с разных строк, как при делении файла на части
+            next = (int) ((long) LINES * params.getThreadIndex() / params.getThreadCount());
+        }
+
+        // Следующая строка; отвергнутые токенизатором разбираются регулярным выражением
+        LogRecord parse(String[] lines) {
+            String line = lines[next];
+            next = (next + 1) & (LINES - 1);
+            return record.parse(line) ? record : LogEntry.tryParse(line, null, userAgents);
+        }
+    }
+
+    @Benchmark
+    public void sharded(Parser parser) {
+        sharded.addLine(parser.parse(lines));
+    }
+
+    @Benchmark
+    public void locked(Parser parser) {
+        LogRecord record = parser.parse(lines);
+        synchronized (locked) {
+            locked.countLine();
+            if (record != null) {
+                locked.addEntry(record);
+            }
+        }
+    }
+}
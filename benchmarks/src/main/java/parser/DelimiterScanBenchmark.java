@@ -0,0 +1,119 @@
+package parser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Разделители в сырых байтах: побайтовый и векторный поиск, разбор строк по индексу и без него.
+ * Форк запускается с модулем jdk.incubator.vector, иначе векторный вариант недоступен
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DelimiterScanBenchmark {
+    private static final int LINES = 100_000;
+
+    private byte[] bytes;
+    private ByteBuffer buffer;
+    // статистика только по кодам ответа, чтобы замер разбора не тонул в ней
+    private AnalysisOptions options;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LogGenerator generator = new LogGenerator(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < LINES; i++) {
+            text.append(generator.nextLine()).append('\n');
+        }
+        bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.wrap(bytes);
+        options = AnalysisOptions.of("", "");
+        options.setSelectedMetrics(EnumSet.of(Statistics.Metric.STATUS));
+    }
+
+    // Поиск разделителей: scalar - побайтовый, vector - через Vector API
+    @State(Scope.Thread)
+    public static class Scanner {
+        @Param({"scalar", "vector"})
+        public String scanner;
+
+        private DelimiterScanner selected;
+        private final int[] positions = new int[DelimiterIndex.CHUNK_BYTES];
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            selected = select(scanner);
+        }
+    }
+
+    // Разбор строк: none - без индекса, побайтово; scalar и vector - по индексу разделителей
+    @State(Scope.Thread)
+    public static class Index {
+        @Param({"none", "scalar", "vector"})
+        public String index;
+
+        private DelimiterIndex delimiters;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            delimiters = new DelimiterIndex(index.equals("none") ? null : select(index));
+        }
+    }
+
+    // Скорость в байтах в секунду рядом с проходами в секунду
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Processed {
+        public long bytes;
+    }
+
+    @Benchmark
+    public long scan(Scanner scanner, Processed processed) {
+        long found = 0;
+        for (int from = 0; from < bytes.length; from += DelimiterIndex.CHUNK_BYTES) {
+            found += scanner.selected.scan(bytes, from, Math.min(bytes.length, from + DelimiterIndex.CHUNK_BYTES),
+                    scanner.positions);
+        }
+        processed.bytes += bytes.length;
+        return found;
+    }
+
+    @Benchmark
+    public long parse(Index index, Processed processed) {
+        Statistics stats = new Statistics(Long.MAX_VALUE, options.getCollectedMetrics());
+        index.delimiters.processLines(buffer, 0, bytes.length, true, new LineProcessor(stats, options));
+        processed.bytes += bytes.length;
+        return stats.getErrorRequests();
+    }
+
+    private static DelimiterScanner select(String name) {
+        if (name.equals("scalar")) {
+            return DelimiterScanner.scalar();
+        }
+        DelimiterScanner vector = DelimiterScanner.vector();
+        if (vector == null) {
+            throw new IllegalStateException("Векторный поиск недоступен: нужен --add-modules jdk.incubator.vector"
+                    + " и процессор, обрабатывающий хотя бы 16 байт за команду");
+        }
+        return vector;
+    }
+}
@@ -0,0 +1,83 @@
+package parser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Куча, которую удерживает Statistics после анализа всего файла, против её собственной оценки estimatedBytes.
+ * Итоги - во вспомогательных счётчиках retainedBytes и estimatedBytes; время замера включает
+ * полные сборки мусора до и после анализа и само по себе не показательно
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class HeapBenchmark {
+    @Param({"100MB"})
+    public String size;
+
+    private AnalysisOptions options;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        File input = LogGenerator.ensureFile(new File(directory, "parser-bench-" + size + ".log"),
+                LogGenerator.parseSize(size));
+        options = AnalysisOptions.of(input.getPath(), "");
+        options.setProgressIntervalSeconds(0);
+        // прогресс и итоги анализа не должны попадать в вывод JMH
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Retained {
+        public long retainedBytes;
+        public long estimatedBytes;
+    }
+
+    @Benchmark
+    public Statistics analyze(Retained retained) throws IOException {
+        long before = usedHeap();
+        Statistics stats = LogAnalyzer.analyze(options);
+        retained.retainedBytes += usedHeap() - before;
+        retained.estimatedBytes += stats.estimatedBytes();
+        return stats;
+    }
+
+    // Занятая куча после нескольких полных сборок мусора
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,260 @@
+package parser;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Нагрузка на сервер приёма логов (OS --listen/--udp): несколько соединений шлют синтетические
+ * строки LogGenerator с заданной общей частотой, после чего выводятся достигнутая частота
+ * и задержка от отправки строки до её учёта сервером.
+ * Задержка измеряется по счётчику lines_total из /status: отправители отмечают, сколько строк
+ * отправлено к моменту времени, а опрос /status раз в несколько миллисекунд находит момент,
+ * когда сервер учёл столько же строк. Поэтому сервер должен принимать строки только от генератора.
+ * Запуск: java parser.IngestLoadGenerator [--host=127.0.0.1] [--tcp=PORT | --udp=PORT] [--http=PORT]
+ * [--connections=N] [--rate=строк в секунду, 0 - без ограничения] [--duration=секунды]
+ */
+public class IngestLoadGenerator {
+    private static final Pattern LINES_TOTAL = Pattern.compile("\"lines_total\":\\s*(\\d+)");
+    // строк в одной датаграмме UDP
+    private static final int LINES_PER_DATAGRAM = 8;
+    // как часто отправители отмечают число отправленных строк, мс
+    private static final long MARK_INTERVAL_MILLIS = 10;
+
+    private String host = "127.0.0.1";
+    private int tcpPort = 5140;
+    private int udpPort;
+    private int httpPort = 8080;
+    private int connections = 4;
+    private long rate = 100_000;
+    private int durationSeconds = 10;
+
+    private final AtomicLong sent = new AtomicLong();
+    // отметки (время отправки, строк отправлено к этому времени)
+    private final ConcurrentLinkedQueue<long[]> marks = new ConcurrentLinkedQueue<>();
+    private volatile boolean sending = true;
+
+    public static void main(String[] args) throws Exception {
+        IngestLoadGenerator generator = new IngestLoadGenerator();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--host": generator.host = value; break;
+                case "--tcp": generator.tcpPort = Integer.parseInt(value); generator.udpPort = 0; break;
+                case "--udp": generator.udpPort = Integer.parseInt(value); generator.tcpPort = 0; break;
+                case "--http": generator.httpPort = Integer.parseInt(value); break;
+                case "--connections": generator.connections = Math.max(1, Integer.parseInt(value)); break;
+                case "--rate": generator.rate = Long.parseLong(value); break;
+                case "--duration": generator.durationSeconds = Integer.parseInt(value); break;
+                default:
+                    System.err.println("Неизвестный параметр: " + arg);
+                    return;
+            }
+        }
+        generator.run();
+    }
+
+    private void run() throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        URI status = URI.create("http://" + host + ":" + httpPort + "/status");
+        long baseLines = linesTotal(client, status);
+        System.out.printf("Нагрузка: %d соединений %s, %s строк/с, %d с%n", connections,
+                udpPort != 0 ? "UDP" : "TCP", rate == 0 ? "без ограничения" : Long.toString(rate), durationSeconds);
+
+        long start = System.nanoTime();
+        long end = start + durationSeconds * 1_000_000_000L;
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            int seed = i;
+            senders.add(Thread.ofVirtual().name("load-", i).start(() -> send(seed, start, end)));
+        }
+        Thread marker = Thread.ofVirtual().start(() -> {
+            while (sending) {
+                marks.add(new long[]{System.nanoTime(), sent.get()});
+                sleep(MARK_INTERVAL_MILLIS);
+            }
+        });
+
+        // опрос сервера: задержка отметки - время до первого опроса, в котором учтено не меньше строк
+        List<Long> latencies = new ArrayList<>();
+        long received = 0;
+        long deadline = Long.MAX_VALUE;
+        while (System.nanoTime() < deadline) {
+            received = linesTotal(client, status) - baseLines;
+            long now = System.nanoTime();
+            for (long[] mark = marks.peek(); mark != null && mark[1] <= received; mark = marks.peek()) {
+                latencies.add(now - mark[0]);
+                marks.poll();
+            }
+            if (sending && senders.stream().noneMatch(Thread::isAlive)) {
+                sending = false;
+                // после отправки ждём, пока сервер догонит, но не дольше 10 с
+                deadline = now + 10_000_000_000L;
+            }
+            if (!sending && received >= sent.get()) {
+                break;
+            }
+            sleep(5);
+        }
+        marker.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        double sendSeconds = durationSeconds;
+
+        System.out.printf("Отправлено строк: %d, учтено сервером: %d%n", sent.get(), received);
+        System.out.printf("Частота отправки: %.0f строк/с, учёта сервером: %.0f строк/с%n",
+                sent.get() / sendSeconds, received / seconds);
+        if (latencies.isEmpty()) {
+            System.out.println("Задержка: нет данных");
+            return;
+        }
+        latencies.sort(null);
+        System.out.printf("Задержка от отправки до учёта: p50 %.1f мс, p99 %.1f мс, max %.1f мс (%d отметок)%n",
+                percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6,
+                latencies.get(latencies.size() - 1) / 1e6, latencies.size());
+        if (marks.size() > 0) {
+            System.out.println("Отметок без учёта сервером: " + marks.size() + " (строки потеряны или не дождались)");
+        }
+    }
+
+    // Отправка строк одним соединением с долей общей частоты
+    private void send(int seed, long start, long end) {
+        LogGenerator generator = new LogGenerator(seed);
+        double perConnection = rate == 0 ? 0 : (double) rate / connections;
+        long own = 0;
+        try (Sink sink = udpPort != 0 ? new UdpSink() : new TcpSink()) {
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= end) {
+                    break;
+                }
+                if (perConnection > 0) {
+                    long due = (long) ((now - start) / 1e9 * perConnection);
+                    if (own >= due) {
+                        sink.flush();
+                        sleep(1);
+                        continue;
+                    }
+                }
+                // пачками по 64 строки, чтобы не смотреть на часы на каждой строке
+                for (int i = 0; i < 64; i++) {
+                    sink.write(generator.nextLine());
+                }
+                own += 64;
+                sink.flush();
+                sent.addAndGet(64);
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка отправки: " + e.getMessage());
+        }
+    }
+
+    private interface Sink extends AutoCloseable {
+        void write(CharSequence line) throws IOException;
+        void flush() throws IOException;
+        @Override
+        void close() throws IOException;
+    }
+
+    private final class TcpSink implements Sink {
+        private final Socket socket = new Socket(host, tcpPort);
+        private final OutputStream out = new BufferedOutputStream(socket.getOutputStream(), 1 << 16);
+
+        TcpSink() throws IOException {
+        }
+
+        @Override
+        public void write(CharSequence line) throws IOException {
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+            socket.close();
+        }
+    }
+
+    private final class UdpSink implements Sink {
+        private final DatagramSocket socket = new DatagramSocket();
+        private final InetSocketAddress target = new InetSocketAddress(InetAddress.getByName(host), udpPort);
+        private final StringBuilder datagram = new StringBuilder();
+        private int lines;
+
+        UdpSink() throws IOException {
+        }
+
+        @Override
+        public void write(CharSequence line) throws IOException {
+            datagram.append(line).append('\n');
+            if (++lines == LINES_PER_DATAGRAM) {
+                flush();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (lines == 0) {
+                return;
+            }
+            byte[] bytes = datagram.toString().getBytes(StandardCharsets.UTF_8);
+            socket.send(new DatagramPacket(bytes, bytes.length, target));
+            datagram.setLength(0);
+            lines = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+            socket.close();
+        }
+    }
+
+    private static long linesTotal(HttpClient client, URI status) throws IOException, InterruptedException {
+        HttpResponse<InputStream> response = client.send(HttpRequest.newBuilder(status).build(),
+                HttpResponse.BodyHandlers.ofInputStream());
+        try (InputStream body = response.body()) {
+            Matcher matcher = LINES_TOTAL.matcher(new String(body.readAllBytes(), StandardCharsets.UTF_8));
+            if (!matcher.find()) {
+                throw new IOException("В ответе /status нет lines_total");
+            }
+            return Long.parseLong(matcher.group(1));
+        }
+    }
+
+    private static long percentile(List<Long> sorted, double p) {
+        return sorted.get(Math.min(sorted.size() - 1, (int) (p * sorted.size())));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Разбор одной строки лога: конструктор LogEntry с токенизатором по умолчанию
+ * и с переиспользуемым токенизатором и кешем User-Agent, как в LogAnalyzer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogEntryBenchmark {
+    private static final int LINES = 16_384;
+
+    private String[] lines;
+    private int next;
+    private LogTokenizer tokenizer;
+    private UserAgentCache userAgents;
+
+    @Setup
+    public void setUp() {
+        LogGenerator generator = new LogGenerator(42);
+        lines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            lines[i] = generator.nextLine().toString();
+        }
+        tokenizer = new LogTokenizer(LogTokenizer.Mode.STRICT);
+        userAgents = new UserAgentCache(UserAgentCache.DEFAULT_CAPACITY, UserAgentCache.Policy.LRU);
+    }
+
+    private String nextLine() {
+        String line = lines[next];
+        next = (next + 1) & (LINES - 1);
+        return line;
+    }
+
+    @Benchmark
+    public LogEntry parseLine() {
+        return new LogEntry(nextLine());
+    }
+
+    @Benchmark
+    public LogEntry parseLineReusingTokenizer() {
+        return new LogEntry(nextLine(), tokenizer, userAgents);
+    }
+}
@@ -0,0 +1,215 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Генератор синтетического access-лога с распределениями, близкими к реальным:
+ * адреса и страницы по закону Ципфа, смесь браузеров и ботов, редкие ошибки,
+ * монотонно растущее время с неравномерной нагрузкой по секундам.
+ * Запуск: java parser.LogGenerator [файл] [размер, например 100MB]
+ */
+public class LogGenerator {
+    private static final String[] MONTHS = {
+            "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    private static final String[] USER_AGENTS = {
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 Safari/537.36 Edg/105.0.1343.42",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:104.0) Gecko/20100101 Firefox/104.0",
+            "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/605.1.15 (KHTML, like Gecko) Version/15.6 Safari/605.1.15",
+            "Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/104.0.0.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 YaBrowser/22.9.0 Safari/537.36",
+            "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 Safari/537.36 OPR/90.0.4480.84",
+            "Mozilla/5.0 (Linux; Android 12; SM-G991B) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/105.0.0.0 Mobile Safari/537.36",
+            "Mozilla/5.0 (compatible; Googlebot/2.1; +http://www.google.com/bot.html)",
+            "Mozilla/5.0 (compatible; YandexBot/3.0; +http://yandex.com/bots)",
+            "Mozilla/5.0 (compatible; bingbot/2.0; +http://www.bing.com/bingbot.htm)",
+            "-"
+    };
+    // доли User-Agent в процентах; около 15% запросов приходится на ботов
+    private static final int[] USER_AGENT_WEIGHTS = {30, 12, 10, 9, 5, 8, 3, 7, 7, 5, 3, 1};
+
+    private static final String[] REFERERS = {
+            "-", "https://yandex.ru/search/?text=x", "https://www.google.com/", "https://instagram.com:443/p",
+            "https://vk.com/feed", "https://sn.ria.ru/x", "https://t.me/channel"
+    };
+    private static final int[] REFERER_WEIGHTS = {40, 20, 15, 8, 7, 6, 4};
+
+    private static final int[] STATUSES = {200, 301, 304, 404, 500, 503};
+    private static final int[] STATUS_WEIGHTS = {84, 4, 4, 6, 1, 1};
+
+    private static final int ADDRESSES = 200_000;
+    private static final int PAGES = 50_000;
+
+    private final Random random;
+    private final double[] addressCdf;
+    private final double[] pageCdf;
+    private final int[] userAgentTable;
+    private final int[] refererTable;
+    private final int[] statusTable;
+    private final StringBuilder line = new StringBuilder(320);
+    // время лога в секундах от начала суток 25/Sep/2022
+    private long second;
+
+    public LogGenerator(long seed) {
+        this.random = new Random(seed);
+        this.addressCdf = zipf(ADDRESSES, 1.1);
+        this.pageCdf = zipf(PAGES, 1.0);
+        this.userAgentTable = table(USER_AGENT_WEIGHTS);
+        this.refererTable = table(REFERER_WEIGHTS);
+        this.statusTable = table(STATUS_WEIGHTS);
+    }
+
+    public static void main(String[] args) throws IOException {
+        String outputPath = args.length > 0 ? args[0] : "synthetic.log";
+        long size = args.length > 1 ? parseSize(args[1]) : parseSize("100MB");
+        long start = System.nanoTime();
+        long lines = new LogGenerator(42).writeFile(new File(outputPath), size);
+        System.out.printf("Сгенерировано строк: %d в %s за %d мс%n",
+                lines, outputPath, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Размер в байтах из записи вида 1MB, 100MB, 1GB или просто числа
+     */
+    public static long parseSize(String value) {
+        String upper = value.trim().toUpperCase();
+        long multiplier = 1;
+        if (upper.endsWith("GB")) {
+            multiplier = 1L << 30;
+        } else if (upper.endsWith("MB")) {
+            multiplier = 1L << 20;
+        } else if (upper.endsWith("KB")) {
+            multiplier = 1L << 10;
+        }
+        String digits = multiplier == 1 ? upper : upper.substring(0, upper.length() - 2);
+        return Long.parseLong(digits) * multiplier;
+    }
+
+    /**
+     * Файл лога заданного размера; уже существующий файл нужного размера переиспользуется
+     * @return путь к файлу
+     */
+    public static File ensureFile(File file, long size) throws IOException {
+        if (file.length() >= size) {
+            return file;
+        }
+        new LogGenerator(42).writeFile(file, size);
+        return file;
+    }
+
+    /**
+     * Запись строк в файл, пока его размер не достигнет заданного
+     * @return количество записанных строк
+     */
+    public long writeFile(File file, long size) throws IOException {
+        long written = 0;
+        long lines = 0;
+        try (Writer writer = new BufferedWriter(
+                new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.US_ASCII), 1 << 20)) {
+            while (written < size) {
+                CharSequence next = nextLine();
+                writer.append(next).append('\n');
+                written += next.length() + 1;
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Следующая строка лога; возвращаемый буфер переиспользуется при следующем вызове
+     */
+    public CharSequence nextLine() {
+        // в среднем около 20 запросов в секунду, с редкими всплесками
+        if (random.nextInt(20) == 0) {
+            second += random.nextInt(100) == 0 ? 1 + random.nextInt(30) : 1;
+        }
+        line.setLength(0);
+
+        int address = index(addressCdf);
+        line.append((address >>> 16) + 11).append('.')
+                .append((address >>> 8) & 0xFF).append('.')
+                .append(address & 0xFF).append('.')
+                .append(1 + random.nextInt(254));
+        line.append(" - - [");
+        appendTime(second);
+        line.append("] \"").append(random.nextInt(10) == 0 ? "POST" : "GET").append(' ');
+
+        int page = index(pageCdf);
+        line.append("/news/").append(page).append('/').append((char) ('a' + page % 26));
+        line.append(" HTTP/1.").append(random.nextInt(4) == 0 ? '0' : '1').append("\" ");
+
+        int status = STATUSES[statusTable[random.nextInt(statusTable.length)]];
+        line.append(status).append(' ').append(status == 304 ? 0 : 200 + random.nextInt(200_000));
+        line.append(" \"").append(REFERERS[refererTable[random.nextInt(refererTable.length)]]).append("\" \"");
+        line.append(USER_AGENTS[userAgentTable[random.nextInt(userAgentTable.length)]]).append('"');
+        return line;
+    }
+
+    private void appendTime(long offset) {
+        long day = 25 + offset / 86_400;
+        int month = 8;
+        // сентябрь, затем октябрь и далее по 30 дней: для синтетики точный календарь не нужен
+        while (day > 30) {
+            day -= 30;
+            month = (month + 1) % 12;
+        }
+        long secondOfDay = offset % 86_400;
+        pad(day).append('/').append(MONTHS[month]).append("/2022:");
+        pad(secondOfDay / 3600).append(':');
+        pad(secondOfDay / 60 % 60).append(':');
+        pad(secondOfDay % 60).append(" +0300");
+    }
+
+    private StringBuilder pad(long value) {
+        if (value < 10) {
+            line.append('0');
+        }
+        return line.append(value);
+    }
+
+    private int index(double[] cdf) {
+        int found = Arrays.binarySearch(cdf, random.nextDouble());
+        return found >= 0 ? found : Math.min(-found - 1, cdf.length - 1);
+    }
+
+    // накопленное распределение Ципфа для рангов 1..n с показателем s
+    private static double[] zipf(int n, double s) {
+        double[] cdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1 / Math.pow(i + 1, s);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    // таблица выбора по весам: индекс значения повторяется столько раз, каков его вес
+    private static int[] table(int[] weights) {
+        int total = 0;
+        for (int weight : weights) {
+            total += weight;
+        }
+        int[] table = new int[total];
+        int position = 0;
+        for (int i = 0; i < weights.length; i++) {
+            for (int j = 0; j < weights[i]; j++) {
+                table[position++] = i;
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,120 @@
+package parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Запросы к колоночному хранилищу против полного повторного разбора того же файла
+ * и против загрузки файла в хранилище
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class LogStoreBenchmark {
+    @Param({"100MB"})
+    public String size;
+
+    private AnalysisOptions options;
+    private Path storePath;
+    private LogStore store;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        File input = LogGenerator.ensureFile(new File(directory, "parser-bench-" + size + ".log"),
+                LogGenerator.parseSize(size));
+        options = AnalysisOptions.of(input.getPath(), "");
+        options.setProgressIntervalSeconds(0);
+        // прогресс загрузки и анализа не должен попадать в вывод JMH
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        storePath = Files.createTempFile("parser-bench", ".store");
+        LogStore.ingest(options, storePath);
+        store = LogStore.open(storePath);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(storePath);
+        System.setOut(console);
+    }
+
+    // Запросы хранилища; границы времени и IP берутся из загруженных данных
+    @State(Scope.Benchmark)
+    public static class Query {
+        @Param({"all", "last-hour", "last-day-4xx-by-path", "one-ip", "by-hour"})
+        public String query;
+
+        private StoreQuery parsed;
+
+        @Setup(Level.Trial)
+        public void setUp(LogStoreBenchmark benchmark) {
+            LogStore store = benchmark.store;
+            long last = Long.MIN_VALUE;
+            for (LogStore.Block block : store.getBlocks()) {
+                last = Math.max(last, block.getMaxTime());
+            }
+            String ip = store.getAddresses().value(store.getAddresses().size() / 2);
+            switch (query) {
+                case "last-hour":
+                    parsed = StoreQuery.parse(new String[] {"--from=" + (last - 3600)});
+                    break;
+                case "last-day-4xx-by-path":
+                    parsed = StoreQuery.parse(new String[] {"--from=" + (last - 86400), "--status=4xx", "--group-by=path"});
+                    break;
+                case "one-ip":
+                    parsed = StoreQuery.parse(new String[] {"--ip=" + ip});
+                    break;
+                case "by-hour":
+                    parsed = StoreQuery.parse(new String[] {"--group-by=hour"});
+                    break;
+                default:
+                    parsed = StoreQuery.parse(new String[0]);
+            }
+        }
+    }
+
+    @Benchmark
+    public StoreQuery.Result query(Query query) throws IOException {
+        return query.parsed.run(store);
+    }
+
+    @Benchmark
+    public Statistics reparse() throws IOException {
+        return LogAnalyzer.analyze(options);
+    }
+
+    @Benchmark
+    public long ingest() throws IOException {
+        Path path = Files.createTempFile("parser-bench-ingest", ".store");
+        try {
+            return LogStore.ingest(options, path);
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
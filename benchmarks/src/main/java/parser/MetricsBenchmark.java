@@ -0,0 +1,76 @@
+package parser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Анализ файла с полным отчётом против узких: ленивая запись декодирует только поля выбранных групп показателей.
+ * Группы задаются как в --only; all - все показатели
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class MetricsBenchmark {
+    @Param({"100MB"})
+    public String size;
+
+    @Param({"all", "status", "status,pages", "traffic", "agents", "users,referers", "sessions"})
+    public String metrics;
+
+    private File input;
+    private AnalysisOptions options;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        input = LogGenerator.ensureFile(new File(directory, "parser-bench-" + size + ".log"),
+                LogGenerator.parseSize(size));
+        options = metrics.equals("all")
+                ? AnalysisOptions.of(input.getPath(), "")
+                : AnalysisOptions.parse(new String[] {input.getPath(), "", "--only=" + metrics});
+        options.setProgressIntervalSeconds(0);
+        // итоги анализа не должны попадать в вывод JMH
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(console);
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Processed {
+        public long bytes;
+    }
+
+    @Benchmark
+    public Statistics analyze(Processed processed) throws IOException {
+        Statistics stats = LogAnalyzer.analyze(options);
+        processed.bytes += input.length();
+        return stats;
+    }
+}
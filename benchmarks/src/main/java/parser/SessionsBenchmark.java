@@ -0,0 +1,87 @@
+package parser;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Учёт запроса в сессиях по заранее разобранным ключам и времени. Вспомогательные счётчики:
+ * наибольшее число одновременно открытых сессий и число всех пользователей, которых пришлось бы
+ * помнить без завершения по тайм-ауту
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SessionsBenchmark {
+    // запросов реальных пользователей за один проход
+    private static final int REQUESTS = 1 << 18;
+
+    @Param({"60", "1800"})
+    public int timeout;
+
+    private final long[] keys = new long[REQUESTS];
+    private final long[] times = new long[REQUESTS];
+    private int users;
+    private int peak;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        LogGenerator generator = new LogGenerator(42);
+        UserAgentCache userAgents = new UserAgentCache();
+        LineRecord record = new LineRecord(new LogTokenizer(LogTokenizer.Mode.STRICT), userAgents);
+        LongIntHashMap distinct = new LongIntHashMap();
+        int count = 0;
+        while (count < REQUESTS) {
+            if (!record.parse(generator.nextLine().toString()) || record.getUserAgent().isBot()
+                    || record.getEpochSecond() == TimestampParser.INVALID) {
+                continue;
+            }
+            keys[count] = Sessions.key(record, record.getUserAgent());
+            times[count] = record.getEpochSecond();
+            distinct.addTo(keys[count], 1);
+            count++;
+        }
+        users = distinct.size();
+
+        Sessions sessions = new Sessions(timeout);
+        for (int i = 0; i < REQUESTS; i++) {
+            sessions.add(keys[i], times[i]);
+            peak = Math.max(peak, sessions.getActiveSessions());
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Open {
+        public long peakSessions;
+        public long users;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public long add(Open open) {
+        Sessions sessions = new Sessions(timeout);
+        for (int i = 0; i < REQUESTS; i++) {
+            sessions.add(keys[i], times[i]);
+        }
+        open.peakSessions = peak;
+        open.users = users;
+        return sessions.summary().getSessions();
+    }
+}
@@ -0,0 +1,69 @@
+package parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Накопление статистики по уже разобранным записям и построение отчёта по ней
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsBenchmark {
+    private static final int ENTRIES = 65_536;
+
+    private LogEntry[] entries;
+    private int next;
+    private Statistics stats;
+    // статистика по всем записям для замера методов отчёта
+    private Statistics filled;
+
+    @Setup
+    public void setUp() {
+        LogGenerator generator = new LogGenerator(42);
+        entries = new LogEntry[ENTRIES];
+        filled = new Statistics();
+        for (int i = 0; i < ENTRIES; i++) {
+            entries[i] = new LogEntry(generator.nextLine().toString());
+            filled.addEntry(entries[i]);
+        }
+    }
+
+    // новая статистика на каждую итерацию, чтобы карты не росли от итерации к итерации
+    @Setup(Level.Iteration)
+    public void resetStatistics() {
+        stats = new Statistics();
+    }
+
+    @Benchmark
+    public void addEntry() {
+        stats.addEntry(entries[next]);
+        next = (next + 1) & (ENTRIES - 1);
+    }
+
+    @Benchmark
+    public void report(Blackhole blackhole) {
+        blackhole.consume(filled.getTrafficRate());
+        blackhole.consume(filled.getOsStatistics());
+        blackhole.consume(filled.getBrowserStatistics());
+        blackhole.consume(filled.getExistingPages());
+        blackhole.consume(filled.getNotFoundPages());
+        blackhole.consume(filled.getAverageVisitsPerHour());
+        blackhole.consume(filled.getAverageErrorRequestsPerHour());
+        blackhole.consume(filled.getAverageVisitsPerUser());
+        blackhole.consume(filled.getPeakVisitsPerSecond());
+        blackhole.consume(filled.getRefererDomains());
+        blackhole.consume(filled.getMaxVisitsPerUser());
+    }
+}
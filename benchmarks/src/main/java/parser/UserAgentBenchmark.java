@@ -0,0 +1,57 @@
+package parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Классификация User-Agent: разбор строки каждый раз против обращения к кешу
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserAgentBenchmark {
+    private static final int LINES = 16_384;
+
+    private String[] userAgents;
+    private int next;
+    private UserAgentCache cache;
+
+    @Setup
+    public void setUp() {
+        LogGenerator generator = new LogGenerator(42);
+        LogTokenizer tokenizer = new LogTokenizer(LogTokenizer.Mode.STRICT);
+        userAgents = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            String line = generator.nextLine().toString();
+            tokenizer.tokenize(line);
+            // отдельный объект строки на каждую запись, как после разбора без пула строк
+            userAgents[i] = tokenizer.text(LogTokenizer.Field.USER_AGENT);
+        }
+        cache = new UserAgentCache(UserAgentCache.DEFAULT_CAPACITY, UserAgentCache.Policy.LRU);
+    }
+
+    private String nextUserAgent() {
+        String userAgent = userAgents[next];
+        next = (next + 1) & (LINES - 1);
+        return userAgent;
+    }
+
+    @Benchmark
+    public UserAgent parse() {
+        return new UserAgent(nextUserAgent());
+    }
+
+    @Benchmark
+    public UserAgent cached() {
+        return cache.get(nextUserAgent());
+    }
+}
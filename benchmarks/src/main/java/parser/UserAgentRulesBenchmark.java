@@ -0,0 +1,94 @@
+package parser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Классификация User-Agent по 10, 100 и 1000 правилам: один проход автомата Ахо-Корасик
+ * против поиска каждой подстроки по очереди. Сверх правил по умолчанию добавляются
+ * случайные подстроки ботов, которые в сгенерированном логе не встречаются
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserAgentRulesBenchmark {
+    private static final int LINES = 16_384;
+
+    @Param({"10", "100", "1000"})
+    private int rules;
+
+    private String[] userAgents;
+    private int next;
+    private UserAgentRules automaton;
+    private String[] patterns;
+
+    @Setup
+    public void setUp() {
+        LogGenerator generator = new LogGenerator(42);
+        LogTokenizer tokenizer = new LogTokenizer(LogTokenizer.Mode.STRICT);
+        userAgents = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            tokenizer.tokenize(generator.nextLine().toString());
+            userAgents[i] = tokenizer.text(LogTokenizer.Field.USER_AGENT);
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (String line : UserAgentRules.DEFAULT_RULES.split("\n")) {
+            if (!line.isBlank() && !line.startsWith("#") && lines.size() < rules) {
+                lines.add(line);
+            }
+        }
+        Random random = new Random(42);
+        while (lines.size() < rules) {
+            StringBuilder pattern = new StringBuilder();
+            for (int i = 6 + random.nextInt(6); i > 0; i--) {
+                pattern.append((char) ('a' + random.nextInt(26)));
+            }
+            lines.add(pattern + "bot; bot=Synthetic; device=BOT; priority=110");
+        }
+        automaton = UserAgentRules.parse(String.join("\n", lines), "benchmark");
+        patterns = new String[lines.size()];
+        for (int i = 0; i < patterns.length; i++) {
+            patterns[i] = lines.get(i).substring(0, lines.get(i).indexOf(';'));
+        }
+    }
+
+    private String nextUserAgent() {
+        String userAgent = userAgents[next];
+        next = (next + 1) & (LINES - 1);
+        return userAgent;
+    }
+
+    @Benchmark
+    public UserAgentRules.Match automaton() {
+        return automaton.classify(nextUserAgent());
+    }
+
+    // Прежний способ: копия строки в нижнем регистре и contains по каждому правилу
+    @Benchmark
+    public int containsChain() {
+        String userAgent = nextUserAgent().toLowerCase(Locale.ROOT);
+        int matched = 0;
+        for (String pattern : patterns) {
+            if (userAgent.contains(pattern)) {
+                matched++;
+            }
+        }
+        return matched;
+    }
+}
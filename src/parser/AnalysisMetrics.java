@@ -0,0 +1,506 @@
+package parser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Метрики одного запуска анализа: строки и байты, время разбора строки, отвергнутые
+ * и неразобранные строки, кеш User-Agent, сборка мусора и память статистики.
+ * Потоки разбора копят значения в собственных Recorder без синхронизации и сбрасывают их
+ * в общие LongAdder раз в FLUSH_LINES строк, поэтому на каждую строку приходится лишь
+ * несколько сложений полей. Время разбора замеряется у каждой PARSE_SAMPLE_RATE-й строки
+ * и копится в гистограмме с четырьмя интервалами на каждую степень двойки наносекунд.
+ */
+class AnalysisMetrics {
+    enum Format {JSON, PROMETHEUS}
+
+    private static final int FLUSH_LINES = 1024;
+    private static final int PARSE_SAMPLE_RATE = 16;
+    // интервалы гистограммы: значения 0..3 поштучно, дальше по четыре интервала на степень двойки
+    private static final int BUCKETS = 256;
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    private final long startNanos = System.nanoTime();
+    private final long gcCountAtStart = gcCount();
+    private final long gcMillisAtStart = gcMillis();
+
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder rejectedLines = new LongAdder();
+    private final LongAdder malformedLines = new LongAdder();
+    private final LongAdder[] skippedLines = newAdders(RejectedLines.Reason.values().length);
+    private final LongAdder invalidTimestamps = new LongAdder();
+    private final LongAdder userAgentCacheHits = new LongAdder();
+    private final LongAdder userAgentCacheMisses = new LongAdder();
+    private final LongAdder parseSamples = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final AtomicLongArray parseBuckets = new AtomicLongArray(BUCKETS);
+
+    // оценка памяти статистики, обновляемая владельцем Statistics; -1 - ещё не известна
+    private volatile long statisticsBytes = -1;
+    private volatile LogPipeline pipeline;
+
+    /**
+     * Накопитель одного потока разбора
+     * @param tokenizer разборщик потока, число отвергнутых им строк попадает в метрики
+     * @param userAgents кеш User-Agent потока
+     */
+    public Recorder recorder(LogTokenizer tokenizer, UserAgentCache userAgents) {
+        return new Recorder(tokenizer, userAgents);
+    }
+
+    public void setStatisticsBytes(long statisticsBytes) { this.statisticsBytes = statisticsBytes; }
+    public void setPipeline(LogPipeline pipeline) { this.pipeline = pipeline; }
+
+    public long getLines() { return lines.sum(); }
+    public long getBytes() { return bytes.sum(); }
+    public long getMalformedLines() { return malformedLines.sum(); }
+    public long getSkippedLines(RejectedLines.Reason reason) { return skippedLines[reason.ordinal()].sum(); }
+
+    public long getSkippedLines() {
+        long total = 0;
+        for (LongAdder skipped : skippedLines) {
+            total += skipped.sum();
+        }
+        return total;
+    }
+
+    private static LongAdder[] newAdders(int count) {
+        LongAdder[] adders = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+    public double getElapsedSeconds() { return (System.nanoTime() - startNanos) / 1e9; }
+
+    public double getUserAgentCacheHitRate() {
+        long hits = userAgentCacheHits.sum();
+        long total = hits + userAgentCacheMisses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Оценка квантиля времени разбора строки по верхней границе интервала гистограммы
+     * @param quantile квантиль от 0 до 1
+     * @return наносекунды; 0, если замеров нет
+     */
+    public long getParseNanosQuantile(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += parseBuckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += parseBuckets.get(i);
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(BUCKETS - 1);
+    }
+
+    public double getMeanParseNanos() {
+        long samples = parseSamples.sum();
+        return samples == 0 ? 0 : (double) parseNanos.sum() / samples;
+    }
+
+    static int bucketIndex(long nanos) {
+        if (nanos < 4) {
+            return (int) Math.max(0, nanos);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int mantissa = (int) (nanos >>> (exponent - 2)) & 3;
+        return Math.min(BUCKETS - 1, (exponent - 1) * 4 + mantissa);
+    }
+
+    // Верхняя граница интервала гистограммы, не включительно
+    static long bucketUpperBound(int index) {
+        if (index < 4) {
+            return index + 1;
+        }
+        int exponent = index / 4 + 1;
+        return (long) (5 + index % 4) << (exponent - 2);
+    }
+
+    /**
+     * Метрики в формате JSON
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        double elapsed = getElapsedSeconds();
+        json.append("{\n");
+        field(json, "elapsed_seconds", elapsed);
+        field(json, "lines_total", lines.sum());
+        field(json, "bytes_total", bytes.sum());
+        field(json, "lines_per_second", elapsed == 0 ? 0 : lines.sum() / elapsed);
+        field(json, "bytes_per_second", elapsed == 0 ? 0 : bytes.sum() / elapsed);
+        json.append("  \"parse_ns\": {");
+        json.append("\"samples\": ").append(parseSamples.sum());
+        json.append(", \"mean\": ").append(format(getMeanParseNanos()));
+        for (double quantile : QUANTILES) {
+            json.append(", \"p").append(Math.round(quantile * 100)).append("\": ")
+                    .append(getParseNanosQuantile(quantile));
+        }
+        json.append("},\n");
+        field(json, "rejected_lines_total", rejectedLines.sum());
+        field(json, "malformed_lines_total", malformedLines.sum());
+        for (RejectedLines.Reason reason : RejectedLines.Reason.values()) {
+            field(json, "skipped_" + reason.getId() + "_lines_total", getSkippedLines(reason));
+        }
+        field(json, "invalid_timestamps_total", invalidTimestamps.sum());
+        field(json, "ua_cache_hits_total", userAgentCacheHits.sum());
+        field(json, "ua_cache_misses_total", userAgentCacheMisses.sum());
+        field(json, "ua_cache_hit_rate", getUserAgentCacheHitRate());
+        field(json, "gc_count", gcCount() - gcCountAtStart);
+        field(json, "gc_time_ms", gcMillis() - gcMillisAtStart);
+        field(json, "heap_used_bytes", heapUsed());
+        field(json, "statistics_bytes", statisticsBytes);
+        LogPipeline current = pipeline;
+        if (current != null) {
+            json.append("  \"stages\": [");
+            String separator = "";
+            for (LogPipeline.Stage stage : current.getStages()) {
+                json.append(separator).append("{\"stage\": \"").append(stage.getId())
+                        .append("\", \"threads\": ").append(stage.getThreads())
+                        .append(", \"busy_ms\": ").append(stage.getBusyNanos() / 1_000_000)
+                        .append(", \"wait_ms\": ").append(stage.getWaitNanos() / 1_000_000)
+                        .append(", \"batches\": ").append(stage.getBatches()).append('}');
+                separator = ", ";
+            }
+            json.append("],\n");
+            field(json, "lines_queue_depth", current.getLinesQueueSize());
+            field(json, "records_queue_depth", current.getRecordsQueueSize());
+        }
+        // последняя запятая не нужна
+        json.setLength(json.length() - 2);
+        return json.append("\n}\n").toString();
+    }
+
+    private static void field(StringBuilder json, String name, long value) {
+        json.append("  \"").append(name).append("\": ").append(value).append(",\n");
+    }
+
+    private static void field(StringBuilder json, String name, double value) {
+        json.append("  \"").append(name).append("\": ").append(format(value)).append(",\n");
+    }
+
+    /**
+     * Метрики в текстовом формате Prometheus
+     */
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder(4096);
+        metric(text, "parser_elapsed_seconds", "gauge", "Время анализа", format(getElapsedSeconds()));
+        metric(text, "parser_lines_total", "counter", "Обработанные строки", lines.sum());
+        metric(text, "parser_bytes_total", "counter", "Обработанные байты", bytes.sum());
+        metric(text, "parser_rejected_lines_total", "counter",
+                "Строки, отвергнутые однопроходным разбором", rejectedLines.sum());
+        metric(text, "parser_malformed_lines_total", "counter",
+                "Строки, не разобранные ни одним способом", malformedLines.sum());
+        text.append("# HELP parser_skipped_lines_total Строки, пропущенные в терпимом режиме\n");
+        text.append("# TYPE parser_skipped_lines_total counter\n");
+        for (RejectedLines.Reason reason : RejectedLines.Reason.values()) {
+            text.append("parser_skipped_lines_total{reason=\"").append(reason.getId()).append("\"} ")
+                    .append(getSkippedLines(reason)).append('\n');
+        }
+        metric(text, "parser_invalid_timestamps_total", "counter", "Строки с неразобранной датой",
+                invalidTimestamps.sum());
+        metric(text, "parser_ua_cache_hits_total", "counter", "Попадания в кеш User-Agent", userAgentCacheHits.sum());
+        metric(text, "parser_ua_cache_misses_total", "counter", "Промахи кеша User-Agent", userAgentCacheMisses.sum());
+        metric(text, "parser_gc_collections_total", "counter", "Сборки мусора за время анализа",
+                gcCount() - gcCountAtStart);
+        metric(text, "parser_gc_seconds_total", "counter", "Время сборок мусора",
+                format((gcMillis() - gcMillisAtStart) / 1000.0));
+        metric(text, "parser_heap_used_bytes", "gauge", "Занятая куча", heapUsed());
+        metric(text, "parser_statistics_bytes", "gauge", "Оценка памяти статистики", statisticsBytes);
+
+        text.append("# HELP parser_parse_seconds Время разбора строки (выборка)\n");
+        text.append("# TYPE parser_parse_seconds histogram\n");
+        long cumulative = 0;
+        int last = BUCKETS - 1;
+        while (last > 0 && parseBuckets.get(last) == 0) {
+            last--;
+        }
+        int first = 0;
+        while (first < last && parseBuckets.get(first) == 0) {
+            first++;
+        }
+        for (int i = first; i <= last; i++) {
+            cumulative += parseBuckets.get(i);
+            text.append("parser_parse_seconds_bucket{le=\"").append(format(bucketUpperBound(i) / 1e9))
+                    .append("\"} ").append(cumulative).append('\n');
+        }
+        text.append("parser_parse_seconds_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+        text.append("parser_parse_seconds_sum ").append(format(parseNanos.sum() / 1e9)).append('\n');
+        text.append("parser_parse_seconds_count ").append(parseSamples.sum()).append('\n');
+
+        LogPipeline current = pipeline;
+        if (current != null) {
+            text.append("# HELP parser_stage_busy_seconds_total Время работы ступени конвейера\n");
+            text.append("# TYPE parser_stage_busy_seconds_total counter\n");
+            for (LogPipeline.Stage stage : current.getStages()) {
+                text.append("parser_stage_busy_seconds_total{stage=\"").append(stage.getId()).append("\"} ")
+                        .append(format(stage.getBusyNanos() / 1e9)).append('\n');
+            }
+            text.append("# HELP parser_stage_wait_seconds_total Время ожидания ступени на очередях\n");
+            text.append("# TYPE parser_stage_wait_seconds_total counter\n");
+            for (LogPipeline.Stage stage : current.getStages()) {
+                text.append("parser_stage_wait_seconds_total{stage=\"").append(stage.getId()).append("\"} ")
+                        .append(format(stage.getWaitNanos() / 1e9)).append('\n');
+            }
+            text.append("# HELP parser_queue_depth Пакеты в очереди конвейера\n");
+            text.append("# TYPE parser_queue_depth gauge\n");
+            text.append("parser_queue_depth{queue=\"lines\"} ").append(current.getLinesQueueSize()).append('\n');
+            text.append("parser_queue_depth{queue=\"records\"} ").append(current.getRecordsQueueSize()).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static void metric(StringBuilder text, String name, String type, String help, Object value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.6g", value);
+    }
+
+    /**
+     * Запись метрик в файл: сначала во временный, затем переименованием,
+     * чтобы внешний сборщик не прочитал файл наполовину
+     */
+    public void writeTo(Path path, Format format) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            writer.write(format == Format.JSON ? toJson() : toPrometheus());
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static long heapUsed() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Запуск фонового потока, который печатает прогресс и периодически пишет файл метрик
+     * @param options параметры анализа: периоды, файл и формат метрик
+     * @return запущенный отчёт; close() останавливает поток и пишет итоговые метрики
+     */
+    public Reporter startReporter(AnalysisOptions options) {
+        return new Reporter(options);
+    }
+
+    /**
+     * Накопитель метрик одного потока разбора. Не потокобезопасен.
+     */
+    final class Recorder {
+        private final LogTokenizer tokenizer;
+        private final UserAgentCache userAgents;
+        private final long[] buckets = new long[BUCKETS];
+        private final long[] skipped = new long[skippedLines.length];
+        private long lines;
+        private long bytes;
+        private long malformed;
+        private long invalidTimestamps;
+        private long samples;
+        private long nanos;
+        // значения счётчиков разборщика и кеша на момент прошлого сброса
+        private long flushedRejected;
+        private long flushedHits;
+        private long flushedMisses;
+
+        private Recorder(LogTokenizer tokenizer, UserAgentCache userAgents) {
+            this.tokenizer = tokenizer;
+            this.userAgents = userAgents;
+        }
+
+        // Замерять ли время разбора следующей строки
+        public boolean sampleParse() {
+            return lines % PARSE_SAMPLE_RATE == 0;
+        }
+
+        public void recordParse(long elapsedNanos) {
+            buckets[bucketIndex(elapsedNanos)]++;
+            samples++;
+            nanos += elapsedNanos;
+        }
+
+        /**
+         * Учёт разобранной строки
+         * @param lineBytes длина строки с переводом строки
+         * @param invalidTimestamp дата строки не разобрана; без статистики времени дата не разбирается и false
+         */
+        public void recordLine(int lineBytes, boolean invalidTimestamp) {
+            lines++;
+            bytes += lineBytes;
+            if (invalidTimestamp) {
+                invalidTimestamps++;
+            }
+            if (lines % FLUSH_LINES == 0) {
+                flush();
+            }
+        }
+
+        // Строка, которую не удалось разобрать ни одним способом
+        public void recordMalformed(int lineBytes) {
+            lines++;
+            bytes += lineBytes;
+            malformed++;
+        }
+
+        /**
+         * Строка, пропущенная в терпимом режиме; счётчики сразу переносятся в общие,
+         * чтобы доля пропущенных строк проверялась по свежим значениям
+         */
+        public void recordSkipped(RejectedLines.Reason reason, int lineBytes) {
+            lines++;
+            bytes += lineBytes;
+            if (reason == RejectedLines.Reason.BAD_FORMAT) {
+                malformed++;
+            }
+            skipped[reason.ordinal()]++;
+            flush();
+        }
+
+        // Перенос накопленного в общие счётчики
+        public void flush() {
+            AnalysisMetrics.this.lines.add(lines);
+            AnalysisMetrics.this.bytes.add(bytes);
+            malformedLines.add(malformed);
+            AnalysisMetrics.this.invalidTimestamps.add(invalidTimestamps);
+            lines = bytes = malformed = invalidTimestamps = 0;
+            for (int i = 0; i < skipped.length; i++) {
+                if (skipped[i] != 0) {
+                    skippedLines[i].add(skipped[i]);
+                    skipped[i] = 0;
+                }
+            }
+            if (samples > 0) {
+                parseSamples.add(samples);
+                parseNanos.add(nanos);
+                for (int i = 0; i < BUCKETS; i++) {
+                    if (buckets[i] != 0) {
+                        parseBuckets.addAndGet(i, buckets[i]);
+                        buckets[i] = 0;
+                    }
+                }
+                samples = nanos = 0;
+            }
+            rejectedLines.add(tokenizer.getRejectedLines() - flushedRejected);
+            flushedRejected = tokenizer.getRejectedLines();
+            userAgentCacheHits.add(userAgents.getHits() - flushedHits);
+            userAgentCacheMisses.add(userAgents.getMisses() - flushedMisses);
+            flushedHits = userAgents.getHits();
+            flushedMisses = userAgents.getMisses();
+        }
+
+        // Счётчики кеша обнулены владельцем после переноса в статистику
+        public void userAgentCountersReset() {
+            flushedHits = 0;
+            flushedMisses = 0;
+        }
+    }
+
+    /**
+     * Фоновый поток прогресса и периодической записи метрик
+     */
+    final class Reporter implements AutoCloseable {
+        private final Path path;
+        private final Format format;
+        private final ScheduledExecutorService scheduler;
+        private long lastLines;
+        private long lastBytes;
+        private long lastNanos = System.nanoTime();
+
+        private Reporter(AnalysisOptions options) {
+            this.path = options.getMetricsPath() == null ? null : Paths.get(options.getMetricsPath());
+            this.format = options.getMetricsFormat();
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "metrics-reporter");
+                thread.setDaemon(true);
+                return thread;
+            });
+            int progressSeconds = options.getProgressIntervalSeconds();
+            if (progressSeconds > 0) {
+                scheduler.scheduleAtFixedRate(this::printProgress, progressSeconds, progressSeconds, TimeUnit.SECONDS);
+            }
+            if (path != null) {
+                int metricsSeconds = options.getMetricsIntervalSeconds();
+                scheduler.scheduleAtFixedRate(this::writeQuietly, metricsSeconds, metricsSeconds, TimeUnit.SECONDS);
+            }
+        }
+
+        private void printProgress() {
+            long now = System.nanoTime();
+            long currentLines = lines.sum();
+            long currentBytes = bytes.sum();
+            if (currentLines == lastLines) {
+                return;
+            }
+            double seconds = (now - lastNanos) / 1e9;
+            System.out.printf("Обработано строк: %d (%.0f строк/с, %.1f МБ/с)%n", currentLines,
+                    (currentLines - lastLines) / seconds, (currentBytes - lastBytes) / seconds / (1 << 20));
+            lastLines = currentLines;
+            lastBytes = currentBytes;
+            lastNanos = now;
+        }
+
+        private void writeQuietly() {
+            try {
+                writeTo(path, format);
+            } catch (IOException e) {
+                System.err.println("Не удалось записать метрики: " + e.getMessage());
+            }
+        }
+
+        // Остановка отчёта и запись итоговых метрик
+        @Override
+        public void close() throws IOException {
+            scheduler.shutdownNow();
+            try {
+                // запись файла, начатая по расписанию, должна закончиться раньше итоговой
+                scheduler.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (path != null) {
+                writeTo(path, format);
+                System.out.println("Метрики сохранены в: " + path);
+            }
+        }
+    }
+}
@@ -0,0 +1,483 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Параметры запуска анализа из командной строки.
+ * Позиционные аргументы: [входной файл] [файл результата]; остальные задаются как --имя=значение.
+ */
+class AnalysisOptions {
+    private String inputPath = "access.log";
+    private String outputPath = "analysis_result.txt";
+    private int workers = 1;
+    private LogTokenizer.Mode parseMode = LogTokenizer.Mode.STRICT;
+    private boolean memoryMapped;
+    private long memoryBudget = Long.MAX_VALUE;
+    private int userAgentCacheSize = UserAgentCache.DEFAULT_CAPACITY;
+    private UserAgentCache.Policy userAgentCachePolicy = UserAgentCache.Policy.LRU;
+    private UserAgentRules userAgentRules = UserAgentRules.defaults();
+    private boolean follow;
+    private int reportIntervalSeconds = 10;
+    private String checkpointPath;
+    private int checkpointIntervalSeconds = 60;
+    private boolean pipeline;
+    private int batchSize = 1000;
+    private int queueDepth = 16;
+    private int progressIntervalSeconds = 5;
+    private String metricsPath;
+    private AnalysisMetrics.Format metricsFormat = AnalysisMetrics.Format.JSON;
+    private int metricsIntervalSeconds = 10;
+    private boolean tolerant;
+    private double maxRejectRate = 0.05;
+    private String rejectSamplePath;
+    private int rejectSampleSize = 100;
+    private String seriesPath;
+    private TimeSeries.Step seriesStep = TimeSeries.Step.MINUTE;
+    private int topSize = 10;
+    private boolean fullLists;
+    private String storePath;
+    private Set<Statistics.Metric> selectedMetrics;
+    private int tcpPort;
+    private int udpPort;
+    private int httpPort;
+    private String bindAddress = "0.0.0.0";
+    // окно времени [from, to) в секундах эпохи
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private int skewSeconds = 60;
+    private int sessionTimeoutSeconds = Sessions.DEFAULT_TIMEOUT_SECONDS;
+    // счётчики текущего запуска, общие для всех потоков разбора
+    private final AnalysisMetrics metrics = new AnalysisMetrics();
+    // пропущенные строки текущего запуска; создаются при первом обращении по уже разобранным параметрам
+    private RejectedLines rejectedLines;
+
+    /**
+     * Разбор аргументов командной строки
+     * @param args аргументы main
+     * @return параметры анализа
+     * @throws IllegalArgumentException при неизвестном параметре или неверном значении
+     */
+    public static AnalysisOptions parse(String[] args) {
+        AnalysisOptions options = new AnalysisOptions();
+        int positional = 0;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                if (positional == 0) {
+                    options.inputPath = arg;
+                } else if (positional == 1) {
+                    options.outputPath = arg;
+                } else {
+                    throw new IllegalArgumentException("Лишний аргумент: " + arg);
+                }
+                positional++;
+                continue;
+            }
+
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq < 0 ? null : arg.substring(eq + 1);
+            switch (name) {
+                case "workers":
+                    options.setWorkers(parseInt(name, value));
+                    break;
+                case "lenient":
+                    options.parseMode = LogTokenizer.Mode.LENIENT;
+                    break;
+                case "mmap":
+                    options.memoryMapped = true;
+                    break;
+                case "memory-budget":
+                    options.memoryBudget = parseSize(name, value);
+                    break;
+                case "ua-cache":
+                    options.userAgentCacheSize = Math.max(0, parseInt(name, value));
+                    break;
+                case "ua-cache-policy":
+                    options.userAgentCachePolicy = parsePolicy(name, value);
+                    break;
+                case "ua-rules":
+                    options.userAgentRules = parseRules(name, value);
+                    break;
+                case "follow":
+                    options.follow = true;
+                    break;
+                case "report-interval":
+                    options.reportIntervalSeconds = Math.max(1, parseInt(name, value));
+                    break;
+                case "checkpoint":
+                    options.checkpointPath = value;
+                    break;
+                case "checkpoint-interval":
+                    options.checkpointIntervalSeconds = Math.max(1, parseInt(name, value));
+                    break;
+                case "pipeline":
+                    options.pipeline = true;
+                    break;
+                case "batch-size":
+                    options.batchSize = Math.max(1, parseInt(name, value));
+                    break;
+                case "queue-depth":
+                    options.queueDepth = Math.max(1, parseInt(name, value));
+                    break;
+                case "progress-interval":
+                    options.progressIntervalSeconds = Math.max(0, parseInt(name, value));
+                    break;
+                case "metrics":
+                    options.metricsPath = value;
+                    break;
+                case "metrics-format":
+                    options.metricsFormat = parseMetricsFormat(name, value);
+                    break;
+                case "metrics-interval":
+                    options.metricsIntervalSeconds = Math.max(1, parseInt(name, value));
+                    break;
+                case "tolerant":
+                    options.tolerant = true;
+                    break;
+                case "max-reject-rate":
+                    options.maxRejectRate = parsePercent(name, value);
+                    break;
+                case "reject-sample":
+                    options.rejectSamplePath = value;
+                    break;
+                case "reject-sample-size":
+                    options.rejectSampleSize = Math.max(0, parseInt(name, value));
+                    break;
+                case "series":
+                    options.seriesPath = value;
+                    break;
+                case "series-step":
+                    options.seriesStep = parseSeriesStep(name, value);
+                    break;
+                case "top":
+                    options.topSize = Math.max(0, Math.min(Statistics.TOP_CAPACITY, parseInt(name, value)));
+                    break;
+                case "full-lists":
+                    options.fullLists = true;
+                    break;
+                case "store":
+                    options.storePath = value;
+                    break;
+                case "only":
+                    options.selectedMetrics = parseMetrics(name, value);
+                    break;
+                case "listen":
+                    options.tcpPort = parsePort(name, value);
+                    break;
+                case "udp":
+                    options.udpPort = parsePort(name, value);
+                    break;
+                case "http":
+                    options.httpPort = parsePort(name, value);
+                    break;
+                case "bind":
+                    options.bindAddress = value;
+                    break;
+                case "from":
+                    options.from = parseTime(name, value);
+                    break;
+                case "to":
+                    options.to = parseTime(name, value);
+                    break;
+                case "skew":
+                    options.skewSeconds = Math.max(0, parseInt(name, value));
+                    break;
+                case "session-timeout":
+                    options.sessionTimeoutSeconds = Math.max(1, parseInt(name, value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+            }
+        }
+        if (options.from >= options.to) {
+            throw new IllegalArgumentException("Параметр --from должен быть раньше --to, получено: --from="
+                    + Instant.ofEpochSecond(options.from) + " --to=" + Instant.ofEpochSecond(options.to));
+        }
+        return options;
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр --" + name + " ожидает целое число, получено: " + value);
+        }
+    }
+
+    /**
+     * Разбор момента времени
+     * @param value время вида 2024-01-01T00:00:00Z, 2024-01-01T03:00:00+03:00 или секунды эпохи
+     * @return секунды эпохи
+     */
+    static long parseTime(String name, String value) {
+        try {
+            if (value != null && !value.isEmpty() && value.chars().allMatch(Character::isDigit)) {
+                return Long.parseLong(value);
+            }
+            return Instant.parse(value).getEpochSecond();
+        } catch (DateTimeParseException | NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр --" + name
+                    + " ожидает время вида 2024-01-01T00:00:00Z или секунды эпохи, получено: " + value);
+        }
+    }
+
+    private static UserAgentCache.Policy parsePolicy(String name, String value) {
+        for (UserAgentCache.Policy policy : UserAgentCache.Policy.values()) {
+            if (policy.name().equalsIgnoreCase(value)) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Параметр --" + name + " ожидает lru или fifo, получено: " + value);
+    }
+
+    // Правила User-Agent из файла; ошибки в правилах сообщаются с номером строки
+    private static UserAgentRules parseRules(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Параметр --" + name + " ожидает файл правил User-Agent");
+        }
+        try {
+            return UserAgentRules.load(Path.of(value));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Параметр --" + name + ": не удалось прочитать файл правил: " + e, e);
+        }
+    }
+
+    /**
+     * Разбор доли в процентах, например 5 или 0.5%
+     * @return доля от 0 до 1
+     */
+    private static double parsePercent(String name, String value) {
+        String digits = value != null && value.endsWith("%") ? value.substring(0, value.length() - 1) : value;
+        try {
+            double percent = Double.parseDouble(digits);
+            if (percent >= 0 && percent <= 100) {
+                return percent / 100;
+            }
+        } catch (NumberFormatException | NullPointerException ignored) {
+        }
+        throw new IllegalArgumentException("Параметр --" + name + " ожидает процент от 0 до 100, получено: " + value);
+    }
+
+    private static AnalysisMetrics.Format parseMetricsFormat(String name, String value) {
+        for (AnalysisMetrics.Format format : AnalysisMetrics.Format.values()) {
+            if (format.name().equalsIgnoreCase(value)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Параметр --" + name + " ожидает json или prometheus, получено: " + value);
+    }
+
+    private static int parsePort(String name, String value) {
+        int port = parseInt(name, value);
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Параметр --" + name + " ожидает порт от 1 до 65535, получено: " + value);
+        }
+        return port;
+    }
+
+    // Список групп показателей через запятую, например status,pages
+    private static Set<Statistics.Metric> parseMetrics(String name, String value) {
+        Set<Statistics.Metric> metrics = EnumSet.noneOf(Statistics.Metric.class);
+        for (String item : value == null ? new String[] {""} : value.split(",")) {
+            Statistics.Metric found = null;
+            for (Statistics.Metric metric : Statistics.Metric.values()) {
+                if (metric.name().equalsIgnoreCase(item.trim())) {
+                    found = metric;
+                }
+            }
+            if (found == null) {
+                throw new IllegalArgumentException("Параметр --" + name
+                        + " ожидает через запятую time, traffic, status, agents, users, pages, referers или sessions, получено: " + value);
+            }
+            metrics.add(found);
+        }
+        return metrics;
+    }
+
+    private static TimeSeries.Step parseSeriesStep(String name, String value) {
+        for (TimeSeries.Step step : TimeSeries.Step.values()) {
+            if (step.name().equalsIgnoreCase(value)) {
+                return step;
+            }
+        }
+        throw new IllegalArgumentException("Параметр --" + name + " ожидает second, minute или hour, получено: " + value);
+    }
+
+    /**
+     * Разбор размера в байтах с необязательным суффиксом k, m или g
+     * @param name имя параметра для сообщения об ошибке
+     * @param value значение, например 64m
+     * @return размер в байтах
+     */
+    static long parseSize(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Параметр --" + name + " ожидает размер, например 64m");
+        }
+        long multiplier = 1;
+        char suffix = Character.toLowerCase(value.charAt(value.length() - 1));
+        if (suffix == 'k' || suffix == 'm' || suffix == 'g') {
+            multiplier = suffix == 'k' ? 1L << 10 : suffix == 'm' ? 1L << 20 : 1L << 30;
+            value = value.substring(0, value.length() - 1);
+        }
+        try {
+            return Long.parseLong(value) * multiplier;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр --" + name + " ожидает размер, например 64m");
+        }
+    }
+
+    public static AnalysisOptions of(String inputPath, String outputPath) {
+        AnalysisOptions options = new AnalysisOptions();
+        options.inputPath = inputPath;
+        options.outputPath = outputPath;
+        return options;
+    }
+
+    /**
+     * Задаёт число потоков разбора
+     * @param workers число потоков; 0 или меньше - по числу процессоров
+     */
+    public void setWorkers(int workers) {
+        this.workers = workers > 0 ? workers : Runtime.getRuntime().availableProcessors();
+    }
+
+    public void setParseMode(LogTokenizer.Mode parseMode) { this.parseMode = parseMode; }
+    public void setMemoryMapped(boolean memoryMapped) { this.memoryMapped = memoryMapped; }
+    public void setMemoryBudget(long memoryBudget) { this.memoryBudget = memoryBudget; }
+    public void setUserAgentCacheSize(int userAgentCacheSize) { this.userAgentCacheSize = userAgentCacheSize; }
+    public void setUserAgentCachePolicy(UserAgentCache.Policy policy) { this.userAgentCachePolicy = policy; }
+    public void setUserAgentRules(UserAgentRules userAgentRules) { this.userAgentRules = userAgentRules; }
+    public void setFollow(boolean follow) { this.follow = follow; }
+    public void setReportIntervalSeconds(int reportIntervalSeconds) { this.reportIntervalSeconds = reportIntervalSeconds; }
+    public void setCheckpointPath(String checkpointPath) { this.checkpointPath = checkpointPath; }
+    public void setCheckpointIntervalSeconds(int seconds) { this.checkpointIntervalSeconds = seconds; }
+    public void setPipeline(boolean pipeline) { this.pipeline = pipeline; }
+    public void setBatchSize(int batchSize) { this.batchSize = batchSize; }
+    public void setQueueDepth(int queueDepth) { this.queueDepth = queueDepth; }
+    public void setProgressIntervalSeconds(int seconds) { this.progressIntervalSeconds = seconds; }
+    public void setMetricsPath(String metricsPath) { this.metricsPath = metricsPath; }
+    public void setMetricsFormat(AnalysisMetrics.Format metricsFormat) { this.metricsFormat = metricsFormat; }
+    public void setMetricsIntervalSeconds(int seconds) { this.metricsIntervalSeconds = seconds; }
+    public void setTolerant(boolean tolerant) { this.tolerant = tolerant; }
+    public void setMaxRejectRate(double maxRejectRate) { this.maxRejectRate = maxRejectRate; }
+    public void setRejectSamplePath(String rejectSamplePath) { this.rejectSamplePath = rejectSamplePath; }
+    public void setRejectSampleSize(int rejectSampleSize) { this.rejectSampleSize = rejectSampleSize; }
+    public void setSeriesPath(String seriesPath) { this.seriesPath = seriesPath; }
+    public void setSeriesStep(TimeSeries.Step seriesStep) { this.seriesStep = seriesStep; }
+    public void setTopSize(int topSize) { this.topSize = topSize; }
+    public void setFullLists(boolean fullLists) { this.fullLists = fullLists; }
+    public void setStorePath(String storePath) { this.storePath = storePath; }
+    public void setSelectedMetrics(Set<Statistics.Metric> selectedMetrics) { this.selectedMetrics = selectedMetrics; }
+    public void setTcpPort(int tcpPort) { this.tcpPort = tcpPort; }
+    public void setUdpPort(int udpPort) { this.udpPort = udpPort; }
+    public void setHttpPort(int httpPort) { this.httpPort = httpPort; }
+    public void setBindAddress(String bindAddress) { this.bindAddress = bindAddress; }
+
+    /**
+     * Задаёт окно времени анализа
+     * @param from начало в секундах эпохи, включительно; Long.MIN_VALUE - без начала
+     * @param to конец в секундах эпохи, не включая; Long.MAX_VALUE - без конца
+     */
+    public void setTimeRange(long from, long to) {
+        this.from = from;
+        this.to = to;
+    }
+
+    public void setSkewSeconds(int skewSeconds) { this.skewSeconds = skewSeconds; }
+    public void setSessionTimeoutSeconds(int sessionTimeoutSeconds) { this.sessionTimeoutSeconds = sessionTimeoutSeconds; }
+
+    // Геттеры
+    public String getInputPath() { return inputPath; }
+    public String getOutputPath() { return outputPath; }
+    public int getWorkers() { return workers; }
+    public LogTokenizer.Mode getParseMode() { return parseMode; }
+    // чтение через отображение файла в память вместо BufferedReader
+    public boolean isMemoryMapped() { return memoryMapped; }
+    // бюджет памяти на каждую структуру Statistics; Long.MAX_VALUE - без ограничения
+    public long getMemoryBudget() { return memoryBudget; }
+    // число различных User-Agent в кеше каждого потока разбора; 0 - без кеша
+    public int getUserAgentCacheSize() { return userAgentCacheSize; }
+    public UserAgentCache.Policy getUserAgentCachePolicy() { return userAgentCachePolicy; }
+    public UserAgentRules getUserAgentRules() { return userAgentRules; }
+    // слежение за дописываемым файлом вместо однократного анализа
+    public boolean isFollow() { return follow; }
+    // период перезаписи отчёта в режиме слежения
+    public int getReportIntervalSeconds() { return reportIntervalSeconds; }
+    // файл контрольной точки; null - без контрольных точек
+    public String getCheckpointPath() { return checkpointPath; }
+    public int getCheckpointIntervalSeconds() { return checkpointIntervalSeconds; }
+    // конвейер чтение - разбор - агрегирование вместо разбора по фрагментам файла
+    public boolean isPipeline() { return pipeline; }
+    // строк в пакете и пакетов в каждой очереди конвейера
+    public int getBatchSize() { return batchSize; }
+    public int getQueueDepth() { return queueDepth; }
+    // период печати прогресса; 0 - без прогресса
+    public int getProgressIntervalSeconds() { return progressIntervalSeconds; }
+    // файл метрик, перезаписываемый во время анализа и по его окончании; null - без файла
+    public String getMetricsPath() { return metricsPath; }
+    public AnalysisMetrics.Format getMetricsFormat() { return metricsFormat; }
+    public int getMetricsIntervalSeconds() { return metricsIntervalSeconds; }
+    public AnalysisMetrics getMetrics() { return metrics; }
+    // пропуск слишком длинных и неразобранных строк вместо прерывания анализа
+    public boolean isTolerant() { return tolerant; }
+    // доля пропущенных строк, при превышении которой анализ прерывается
+    public double getMaxRejectRate() { return maxRejectRate; }
+    // файл выборки пропущенных строк; null - файл отчёта с суффиксом .rejected.txt
+    public String getRejectSamplePath() { return rejectSamplePath; }
+    public int getRejectSampleSize() { return rejectSampleSize; }
+    // файл CSV с рядом запросов по времени; null - без ряда
+    public String getSeriesPath() { return seriesPath; }
+    public TimeSeries.Step getSeriesStep() { return seriesStep; }
+    // число строк в каждом топе отчёта
+    public int getTopSize() { return topSize; }
+    // полные списки страниц и рефереров в отчёте вдобавок к топам
+    public boolean isFullLists() { return fullLists; }
+    // файл колоночного хранилища для StoreQuery: вход загружается в него вместо записи отчёта; null - без хранилища
+    public String getStorePath() { return storePath; }
+    // группы показателей, заданные --only; null - не заданы
+    public Set<Statistics.Metric> getSelectedMetrics() { return selectedMetrics; }
+
+    // порты приёма строк по TCP и UDP; 0 - без приёма. Хотя бы один порт включает режим сервера
+    public int getTcpPort() { return tcpPort; }
+    public int getUdpPort() { return udpPort; }
+    public boolean isServer() { return tcpPort != 0 || udpPort != 0; }
+    // порт HTTP с текущим отчётом, только на локальном адресе; 0 - без HTTP
+    public int getHttpPort() { return httpPort; }
+    // адрес, на котором принимаются строки
+    public String getBindAddress() { return bindAddress; }
+
+    public long getFrom() { return from; }
+    public long getTo() { return to; }
+    public boolean hasTimeRange() { return from != Long.MIN_VALUE || to != Long.MAX_VALUE; }
+    // насколько строки лога могут отставать по времени от предыдущих
+    public int getSkewSeconds() { return skewSeconds; }
+    // наибольший перерыв между запросами одной сессии
+    public int getSessionTimeoutSeconds() { return sessionTimeoutSeconds; }
+
+    // группы показателей, которые собирает статистика: заданные или все
+    public Set<Statistics.Metric> getCollectedMetrics() {
+        return selectedMetrics != null ? selectedMetrics : EnumSet.allOf(Statistics.Metric.class);
+    }
+
+    // пустая статистика с бюджетом памяти, группами показателей и тайм-аутом сессий этого запуска
+    public Statistics newStatistics() {
+        return new Statistics(memoryBudget, getCollectedMetrics(), sessionTimeoutSeconds);
+    }
+
+    // кеш классификации User-Agent потока разбора с размером, порядком вытеснения и правилами этого запуска
+    public UserAgentCache newUserAgentCache() {
+        return new UserAgentCache(userAgentCacheSize, userAgentCachePolicy, userAgentRules);
+    }
+
+    public synchronized RejectedLines getRejectedLines() {
+        if (rejectedLines == null) {
+            rejectedLines = new RejectedLines(this);
+        }
+        return rejectedLines;
+    }
+}
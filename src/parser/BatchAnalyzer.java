@@ -0,0 +1,315 @@
+package parser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Анализ набора лог-файлов после ротации: access.log, access.log.1, access.log.2.gz и т.д.
+ * Файлы разбираются параллельно пулом из --workers потоков, каждый в свою Statistics,
+ * и объединяются в порядке списка: файлы одной ротации - от старого к новому
+ * (access.log.2.gz, access.log.1, access.log), иначе сессии на стыках файлов склеивались бы
+ * в обратном времени. Сжатые файлы распаковываются в отдельных потоках и передаются разбору
+ * блоками через ограниченную очередь, так что распаковка идёт одновременно с разбором.
+ */
+class BatchAnalyzer {
+    // Размер блока распакованных данных и число блоков, которые распаковка может опередить разбор
+    private static final int BLOCK_BYTES = 1 << 20;
+    private static final int PIPELINE_DEPTH = 4;
+
+    // Имя файла ротации: базовое имя, необязательный номер и необязательное сжатие
+    private static final Pattern ROTATED = Pattern.compile("(.*?)(?:\\.(\\d{1,9}))?(?:\\.gz)?");
+    // Порядок ротации: по базовому имени, затем от старого (больший номер) к новому (без номера)
+    private static final Comparator<File> ROTATION_ORDER = Comparator
+            .comparing((File file) -> rotationBase(file.getName()))
+            .thenComparing(Comparator.comparingInt((File file) -> rotationNumber(file.getName())).reversed())
+            .thenComparing(File::getName);
+
+    private final AnalysisOptions options;
+
+    BatchAnalyzer(AnalysisOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Файлы, заданные входным путём
+     * @param spec файл, каталог, шаблон вида logs/access.log* или несколько таких путей
+     *             через разделитель путей системы (':' в Linux, ';' в Windows)
+     * @return файлы в порядке ротации внутри каждого каталога или шаблона: по базовому имени,
+     *         в одной ротации - по убыванию номера (access.log.10 раньше access.log.2), без номера - последним;
+     *         явно перечисленные файлы - в заданном порядке
+     */
+    static List<File> resolveInputs(String spec) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String part : spec.split(File.pathSeparator)) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            File file = new File(part);
+            if (file.isDirectory()) {
+                files.addAll(listFiles(file, name -> !name.startsWith(".")));
+            } else if (isGlob(part)) {
+                File directory = file.getParentFile() == null ? new File(".") : file.getParentFile();
+                PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + file.getName());
+                List<File> matched = listFiles(directory, name -> matcher.matches(Paths.get(name)));
+                if (matched.isEmpty()) {
+                    throw new IOException("Нет файлов по шаблону: " + part);
+                }
+                files.addAll(matched);
+            } else {
+                files.add(file);
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IOException("Не задано ни одного входного файла: " + spec);
+        }
+        return files;
+    }
+
+    private interface NameFilter {
+        boolean accept(String name);
+    }
+
+    private static List<File> listFiles(File directory, NameFilter filter) throws IOException {
+        File[] children = directory.listFiles(child -> child.isFile() && filter.accept(child.getName()));
+        if (children == null) {
+            throw new IOException("Не удалось прочитать каталог: " + directory);
+        }
+        Arrays.sort(children, ROTATION_ORDER);
+        return Arrays.asList(children);
+    }
+
+    private static String rotationBase(String name) {
+        Matcher matcher = ROTATED.matcher(name);
+        return matcher.matches() ? matcher.group(1) : name;
+    }
+
+    private static int rotationNumber(String name) {
+        Matcher matcher = ROTATED.matcher(name);
+        return matcher.matches() && matcher.group(2) != null ? Integer.parseInt(matcher.group(2)) : 0;
+    }
+
+    private static boolean isGlob(String path) {
+        for (char c : "*?[{".toCharArray()) {
+            if (path.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isGzip(File file) {
+        return file.getName().endsWith(".gz");
+    }
+
+    /**
+     * Разбор всех файлов и объединение их статистики
+     * @param files входные файлы
+     * @return статистика по всем файлам
+     */
+    public Statistics analyze(List<File> files) throws IOException {
+        int workers = Math.min(options.getWorkers(), files.size());
+        System.out.println("Файлов: " + files.size() + ", потоков разбора: " + workers);
+        ExecutorService parsers = Executors.newFixedThreadPool(workers);
+        ExecutorService decompressors = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        try {
+            List<Future<FileResult>> futures = new ArrayList<>();
+            for (File file : files) {
+                // файлы после первого объединяются с предыдущими: их первые сессии нужны до объединения
+                boolean continuation = !futures.isEmpty();
+                futures.add(parsers.submit(() -> analyzeFile(file, continuation, decompressors)));
+            }
+
+            // объединение строго в порядке списка, то есть по времени внутри ротации
+            Statistics total = null;
+            List<FileResult> results = new ArrayList<>();
+            for (Future<FileResult> future : futures) {
+                FileResult result = await(future);
+                results.add(result);
+                if (total == null) {
+                    total = result.stats;
+                } else {
+                    total.merge(result.stats);
+                }
+            }
+            printTimings(results, System.nanoTime() - start);
+            return total;
+        } finally {
+            parsers.shutdownNow();
+            decompressors.shutdownNow();
+        }
+    }
+
+    private FileResult analyzeFile(File file, boolean continuation, ExecutorService decompressors) throws IOException {
+        long start = System.nanoTime();
+        try {
+            if (!isGzip(file)) {
+                Statistics stats = LogAnalyzer.analyzeSequential(file, options, continuation);
+                return new FileResult(file, stats, file.length(), System.nanoTime() - start);
+            }
+            PipelinedInputStream input = new PipelinedInputStream(
+                    new GZIPInputStream(new FileInputStream(file), 1 << 16), decompressors);
+            Statistics stats = LogAnalyzer.analyzeStream(input, file.getPath(), options, continuation);
+            return new FileResult(file, stats, input.getBytesRead(), System.nanoTime() - start);
+        } catch (LineTooLongException e) {
+            throw new IOException("Файл " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static FileResult await(Future<FileResult> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Анализ прерван", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // Время и скорость разбора каждого файла
+    private static void printTimings(List<FileResult> results, long totalNanos) {
+        long totalBytes = 0;
+        long totalLines = 0;
+        for (FileResult result : results) {
+            totalBytes += result.bytes;
+            totalLines += result.lines;
+            System.out.printf("  %s: %d строк, %.1f МБ данных (%.1f МБ на диске) за %.2f с, %.1f МБ/с%n",
+                    result.file.getName(), result.lines, megabytes(result.bytes),
+                    megabytes(result.file.length()), result.nanos / 1e9, megabytes(result.bytes) / (result.nanos / 1e9));
+        }
+        System.out.printf("Всего: %d строк, %.1f МБ за %.2f с, %.1f МБ/с%n",
+                totalLines, megabytes(totalBytes), totalNanos / 1e9, megabytes(totalBytes) / (totalNanos / 1e9));
+    }
+
+    private static double megabytes(long bytes) {
+        return bytes / (1024.0 * 1024.0);
+    }
+
+    // Статистика одного файла и время его разбора; число строк запоминается до объединения
+    private static class FileResult {
+        private final File file;
+        private final Statistics stats;
+        private final long lines;
+        private final long bytes;
+        private final long nanos;
+
+        FileResult(File file, Statistics stats, long bytes, long nanos) {
+            this.file = file;
+            this.stats = stats;
+            this.lines = stats.getTotalLines();
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Поток, который читает источник в отдельной задаче на несколько блоков вперёд.
+     * Пока разбор обрабатывает текущий блок, следующие уже распаковываются.
+     */
+    static class PipelinedInputStream extends InputStream {
+        private static final byte[] END = new byte[0];
+
+        private final InputStream source;
+        private final BlockingQueue<byte[]> blocks = new ArrayBlockingQueue<>(PIPELINE_DEPTH);
+        private final Future<?> pump;
+        private volatile IOException failure;
+        private byte[] current = new byte[0];
+        private int position;
+        private long bytesRead;
+
+        PipelinedInputStream(InputStream source, ExecutorService executor) {
+            this.source = source;
+            this.pump = executor.submit(this::pump);
+        }
+
+        private void pump() {
+            try (InputStream in = source) {
+                while (true) {
+                    byte[] block = new byte[BLOCK_BYTES];
+                    int read = in.readNBytes(block, 0, block.length);
+                    if (read == 0) {
+                        break;
+                    }
+                    blocks.put(read == block.length ? block : Arrays.copyOf(block, read));
+                }
+            } catch (IOException e) {
+                failure = e;
+            } catch (InterruptedException e) {
+                // чтение закрыто раньше конца источника
+                return;
+            }
+            try {
+                blocks.put(END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (current == END) {
+                return -1;
+            }
+            if (position == current.length) {
+                try {
+                    current = blocks.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Чтение прервано", e);
+                }
+                position = 0;
+                if (current == END) {
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    return -1;
+                }
+            }
+            int count = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, count);
+            position += count;
+            bytesRead += count;
+            return count;
+        }
+
+        @Override
+        public void close() {
+            pump.cancel(true);
+        }
+
+        // Число байтов, отданных читателю
+        public long getBytesRead() { return bytesRead; }
+    }
+}
@@ -0,0 +1,214 @@
+package parser;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.ToIntFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Замеры пропускной способности разбора на реальном логе.
+ * Запуск: java Benchmarks [сценарий] [файл лога] [количество строк]
+ */
+public class Benchmarks {
+    // Выражение прежнего конструктора LogEntry
+    private static final String LOG_REGEX =
+            "^(\\S+) - - \\[(.+?)] \"(\\S+) (\\S+) HTTP/\\d\\.\\d\" (\\d+) (\\d+) \"([^\"]*)\" \"([^\"]*)\"$";
+
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    // результат замеров, чтобы JIT не выбросил вычисления
+    private static volatile int sink;
+
+    public static void main(String[] args) throws IOException {
+        String scenario = args.length > 0 ? args[0] : "tokenizer";
+        String inputPath = args.length > 1 ? args[1] : "access.log";
+        int maxLines = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        List<String> lines = readLines(inputPath, maxLines);
+        System.out.println("Строк для замера: " + lines.size() + " из " + inputPath);
+
+        switch (scenario) {
+            case "tokenizer":
+                benchmarkTokenizer(lines);
+                break;
+            case "allocation":
+                benchmarkAllocation(lines);
+                break;
+            case "useragent":
+                benchmarkUserAgent(lines);
+                break;
+            case "timestamp":
+                benchmarkTimestamp(lines);
+                break;
+            default:
+                System.out.println("Неизвестный сценарий: " + scenario);
+        }
+    }
+
+    // Разбор полей: регулярное выражение против LogTokenizer
+    private static void benchmarkTokenizer(List<String> lines) {
+        Pattern compiled = Pattern.compile(LOG_REGEX);
+        LogTokenizer strict = new LogTokenizer(LogTokenizer.Mode.STRICT);
+        LogTokenizer lenient = new LogTokenizer(LogTokenizer.Mode.LENIENT);
+
+        measure("поля: regex, Pattern.compile на строку", lines,
+                line -> regexFields(Pattern.compile(LOG_REGEX).matcher(line)));
+        measure("поля: regex, скомпилирован заранее", lines,
+                line -> regexFields(compiled.matcher(line)));
+        measure("поля: LogTokenizer STRICT", lines, line -> tokenizerFields(strict, line));
+        measure("поля: LogTokenizer LENIENT", lines, line -> tokenizerFields(lenient, line));
+
+        measure("new LogEntry: только regex", lines,
+                line -> new LogEntry(line, null).getResponseCode());
+        measure("new LogEntry: LogTokenizer STRICT", lines,
+                line -> new LogEntry(line, strict).getResponseCode());
+    }
+
+    // Классификация User-Agent: каждая строка заново против кеша по исходной строке
+    private static void benchmarkUserAgent(List<String> lines) {
+        LogTokenizer tokenizer = new LogTokenizer(LogTokenizer.Mode.STRICT);
+        List<String> userAgents = new ArrayList<>();
+        for (String line : lines) {
+            if (tokenizer.tokenize(line)) {
+                userAgents.add(tokenizer.text(LogTokenizer.Field.USER_AGENT));
+            }
+        }
+        UserAgentCache lru = new UserAgentCache(UserAgentCache.DEFAULT_CAPACITY, UserAgentCache.Policy.LRU);
+        UserAgentCache fifo = new UserAgentCache(UserAgentCache.DEFAULT_CAPACITY, UserAgentCache.Policy.FIFO);
+
+        measure("UserAgent: без кеша", userAgents, ua -> new UserAgent(ua).getOs().ordinal());
+        measure("UserAgent: кеш LRU", userAgents, ua -> lru.get(ua).getOs().ordinal());
+        measure("UserAgent: кеш FIFO", userAgents, ua -> fifo.get(ua).getOs().ordinal());
+        System.out.printf("Попадания в кеш LRU: %.2f%%, различных строк в кеше: %d%n",
+                100 * lru.getHitRate(), lru.size());
+    }
+
+    // Разбор времени: прежний DateTimeFormatter на строку против TimestampParser
+    private static void benchmarkTimestamp(List<String> lines) {
+        LogTokenizer tokenizer = new LogTokenizer(LogTokenizer.Mode.STRICT);
+        List<String> timestamps = new ArrayList<>();
+        for (String line : lines) {
+            if (tokenizer.tokenize(line)) {
+                timestamps.add(tokenizer.text(LogTokenizer.Field.TIMESTAMP));
+            }
+        }
+        TimestampParser memo = new TimestampParser();
+
+        measure("время: DateTimeFormatter.ofPattern на строку", timestamps, timestamp -> LocalDateTime.parse(
+                timestamp.split(" ")[0], DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss", Locale.ENGLISH))
+                .getSecond());
+        measure("время: TimestampParser без запоминания", timestamps,
+                timestamp -> (int) TimestampParser.decode(timestamp, 0, timestamp.length()));
+        measure("время: TimestampParser с запоминанием", timestamps,
+                timestamp -> (int) memo.parse(timestamp, 0, timestamp.length()));
+    }
+
+    // Выделение памяти на строку: только Statistics.addEntry и полный путь строки
+    private static void benchmarkAllocation(List<String> lines) {
+        List<LogEntry> entries = new ArrayList<>();
+        for (String line : lines) {
+            entries.add(new LogEntry(line));
+        }
+        AnalysisOptions options = AnalysisOptions.of("", "");
+
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            Statistics warmup = new Statistics();
+            entries.forEach(warmup::addEntry);
+            LineProcessor processor = new LineProcessor(new Statistics(), options);
+            lines.forEach(processor::process);
+        }
+
+        long before = allocatedBytes();
+        Statistics stats = new Statistics();
+        for (LogEntry entry : entries) {
+            stats.addEntry(entry);
+        }
+        long statisticsBytes = allocatedBytes() - before;
+
+        before = allocatedBytes();
+        LineProcessor processor = new LineProcessor(new Statistics(), options);
+        for (String line : lines) {
+            processor.process(line);
+        }
+        long lineBytes = allocatedBytes() - before;
+
+        System.out.printf("%-45s %10.1f байт/строку%n", "Statistics.addEntry", (double) statisticsBytes / lines.size());
+        System.out.printf("%-45s %10.1f байт/строку%n", "разбор и addEntry (LineProcessor)", (double) lineBytes / lines.size());
+    }
+
+    // Байты, выделенные текущим потоком с момента его запуска
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().threadId());
+    }
+
+    private static int regexFields(Matcher matcher) {
+        if (!matcher.find()) {
+            return 0;
+        }
+        int hash = matcher.group(1).length() + matcher.group(2).length() + matcher.group(3).length()
+                + matcher.group(4).length() + matcher.group(7).length() + matcher.group(8).length();
+        return hash + Integer.parseInt(matcher.group(5)) + Integer.parseInt(matcher.group(6));
+    }
+
+    private static int tokenizerFields(LogTokenizer tokenizer, String line) {
+        if (!tokenizer.tokenize(line)) {
+            return 0;
+        }
+        int hash = tokenizer.text(LogTokenizer.Field.IP).length()
+                + tokenizer.text(LogTokenizer.Field.TIMESTAMP).length()
+                + tokenizer.method().ordinal()
+                + tokenizer.text(LogTokenizer.Field.PATH).length()
+                + tokenizer.text(LogTokenizer.Field.REFERER).length()
+                + tokenizer.text(LogTokenizer.Field.USER_AGENT).length();
+        return hash + tokenizer.getResponseCode() + tokenizer.getDataSize();
+    }
+
+    /**
+     * Прогоняет функцию по всем строкам несколько раз и печатает лучшую пропускную способность
+     * @param name название замера
+     * @param lines строки лога
+     * @param work обработка одной строки
+     */
+    static void measure(String name, List<String> lines, ToIntFunction<String> work) {
+        long chars = 0;
+        for (String line : lines) {
+            chars += line.length() + 1;
+        }
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+            long start = System.nanoTime();
+            int acc = 0;
+            for (String line : lines) {
+                acc += work.applyAsInt(line);
+            }
+            long elapsed = System.nanoTime() - start;
+            sink += acc;
+            if (round >= WARMUP_ROUNDS) {
+                best = Math.min(best, elapsed);
+            }
+        }
+        double seconds = best / 1e9;
+        System.out.printf("%-45s %12.0f строк/с %8.1f МБ/с %8.1f нс/строку%n",
+                name, lines.size() / seconds, chars / seconds / (1024 * 1024), (double) best / lines.size());
+    }
+
+    static List<String> readLines(String inputPath, int maxLines) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(inputPath))) {
+            String line;
+            while (lines.size() < maxLines && (line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,189 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Счётчики по примитивным ключам с ограничением памяти.
+ * Пока число ключей укладывается в бюджет, счёт точный и хранится в примитивной хеш-таблице;
+ * после превышения накопленные счётчики переходят в Space-Saving, число ячеек которого
+ * укладывается в тот же бюджет.
+ */
+class BoundedCounter {
+    // Оценка памяти на ключ: ячейки таблиц с учётом заполнения и удвоения при росте
+    static final int INT_KEY_ENTRY_BYTES = 16;
+    static final int LONG_KEY_ENTRY_BYTES = 24;
+    // Оценка памяти на счётчик Space-Saving: объект счётчика, Long, узел HashMap и ячейка кучи
+    private static final int SKETCH_ENTRY_BYTES = 120;
+
+    private final long budgetBytes;
+    private final int entryBytes;
+    private final KeyCounts exact;
+    private SpaceSaving<Long> sketch;
+
+    private BoundedCounter(long budgetBytes, int entryBytes, KeyCounts exact) {
+        this.budgetBytes = budgetBytes;
+        this.entryBytes = entryBytes;
+        this.exact = exact;
+    }
+
+    // Счётчики по 32-битным ключам, например IPv4-адресам
+    public static BoundedCounter withIntKeys(long budgetBytes) {
+        return new BoundedCounter(budgetBytes, INT_KEY_ENTRY_BYTES, new IntIntHashMap());
+    }
+
+    // Счётчики по 64-битным ключам, например секундам
+    public static BoundedCounter withLongKeys(long budgetBytes) {
+        return new BoundedCounter(budgetBytes, LONG_KEY_ENTRY_BYTES, new LongIntHashMap());
+    }
+
+    public void increment(long key) {
+        add(key, 1);
+    }
+
+    private void add(long key, int count) {
+        if (sketch != null) {
+            sketch.add(key, count);
+            return;
+        }
+        exact.addTo(key, count);
+        if ((long) exact.size() * entryBytes > budgetBytes) {
+            switchToSketch();
+        }
+    }
+
+    private void switchToSketch() {
+        sketch = new SpaceSaving<>((int) Math.min(Integer.MAX_VALUE, budgetBytes / SKETCH_ENTRY_BYTES));
+        exact.forEach((key, count) -> sketch.add(key, count));
+        exact.clear();
+    }
+
+    /**
+     * Объединение со счётчиками другого фрагмента
+     * @param other счётчики, учтённые после текущих
+     */
+    public void merge(BoundedCounter other) {
+        if (other.sketch != null) {
+            if (sketch == null) {
+                switchToSketch();
+            }
+            sketch.merge(other.sketch);
+            return;
+        }
+        exact.ensureCapacity((int) Math.min(Integer.MAX_VALUE,
+                Math.min((long) exact.size() + other.exact.size(), budgetBytes / entryBytes + 1)));
+        other.exact.forEach(this::add);
+    }
+
+    /**
+     * Наибольший счёт среди ключей
+     * @return точное значение или оценка сверху с завышением не более errorBound()
+     */
+    public int max() {
+        if (sketch != null) {
+            return (int) sketch.maxCount();
+        }
+        return exact.max();
+    }
+
+    /**
+     * Ключи с наибольшим счётом; при равном счёте точной таблицы первым идёт меньший ключ
+     * @param limit сколько ключей вернуть
+     * @return счётчики по убыванию счёта; у точного счёта завышение 0
+     */
+    public List<SpaceSaving.Counter<Long>> top(int limit) {
+        if (sketch != null) {
+            return sketch.top(limit);
+        }
+        Comparator<SpaceSaving.Counter<Long>> order = Comparator.<SpaceSaving.Counter<Long>>comparingLong(
+                SpaceSaving.Counter::getCount).reversed().thenComparing(SpaceSaving.Counter::getKey);
+        // в куче лежит limit лучших ключей, в вершине - худший из них
+        PriorityQueue<SpaceSaving.Counter<Long>> heap = new PriorityQueue<>(limit + 1, order.reversed());
+        exact.forEach((key, count) -> {
+            if (limit <= 0) {
+                return;
+            }
+            if (heap.size() == limit) {
+                SpaceSaving.Counter<Long> worst = heap.peek();
+                if (count < worst.getCount() || count == worst.getCount() && key > worst.getKey()) {
+                    return;
+                }
+            }
+            heap.offer(new SpaceSaving.Counter<>(key, count, 0));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        });
+        List<SpaceSaving.Counter<Long>> result = new ArrayList<>(heap);
+        result.sort(order);
+        return result;
+    }
+
+    /**
+     * Запись в снимок статистики: пары ключ-счёт точной таблицы или счётчики Space-Saving
+     * @param out поток снимка
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        boolean intKeys = entryBytes == INT_KEY_ENTRY_BYTES;
+        out.writeBoolean(sketch != null);
+        if (sketch != null) {
+            sketch.writeTo(out, (stream, key) -> stream.writeLong(key));
+            return;
+        }
+        out.writeInt(exact.size());
+        try {
+            exact.forEach((key, count) -> {
+                try {
+                    if (intKeys) {
+                        out.writeInt((int) key);
+                    } else {
+                        out.writeLong(key);
+                    }
+                    out.writeInt(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Чтение счётчиков, записанных writeTo, в уже созданный пустой BoundedCounter того же вида
+     * @param in поток снимка
+     */
+    public void readFrom(DataInput in) throws IOException {
+        boolean intKeys = entryBytes == INT_KEY_ENTRY_BYTES;
+        if (in.readBoolean()) {
+            sketch = SpaceSaving.readFrom(in, DataInput::readLong);
+            return;
+        }
+        int size = in.readInt();
+        exact.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            long key = intKeys ? in.readInt() & 0xFFFFFFFFL : in.readLong();
+            exact.addTo(key, in.readInt());
+        }
+    }
+
+    public boolean isExact() {
+        return sketch == null;
+    }
+
+    // Оценка занятой памяти по числу ключей точной таблицы или ячеек Space-Saving
+    public long estimatedBytes() {
+        return sketch == null ? (long) exact.size() * entryBytes : (long) sketch.size() * SKETCH_ENTRY_BYTES;
+    }
+
+    // Максимальное завышение оценок; 0 для точного счёта
+    public long errorBound() {
+        return sketch == null ? 0 : sketch.errorBound();
+    }
+}
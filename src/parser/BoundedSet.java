@@ -0,0 +1,199 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.AbstractSet;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Множество строк с ограничением памяти.
+ * Значения кодируются номерами словаря, который может быть общим для нескольких множеств,
+ * а само множество - битовый набор номеров. Пока оценка занятой памяти укладывается в бюджет,
+ * множество точное. После превышения уже собранные значения остаются как образец для отчёта,
+ * а число различных значений дальше оценивается через HyperLogLog.
+ */
+class BoundedSet {
+    // Смешивание адреса IPv4 перед HyperLogLog, чтобы адрес 0 не давал нулевой хеш
+    private static final long IPV4_HASH_SALT = 0x9E3779B97F4A7C15L;
+
+    private final long budgetBytes;
+    private final Dictionary dictionary;
+    private final BitSet ids = new BitSet();
+    private int size;
+    private long usedBytes;
+    private HyperLogLog sketch;
+
+    public BoundedSet(long budgetBytes) {
+        this(budgetBytes, new Dictionary());
+    }
+
+    /**
+     * @param budgetBytes бюджет памяти в байтах
+     * @param dictionary словарь значений, общий с другими множествами той же статистики
+     */
+    public BoundedSet(long budgetBytes, Dictionary dictionary) {
+        this.budgetBytes = budgetBytes;
+        this.dictionary = dictionary;
+    }
+
+    public void add(String value) {
+        if (sketch != null) {
+            sketch.offer(hash(value));
+            return;
+        }
+        addId(dictionary.id(value));
+    }
+
+    /**
+     * Добавление адреса IPv4, уже разобранного в число, без строки
+     * @param ipv4 адрес как беззнаковое 32-битное число
+     */
+    public void addIPv4(long ipv4) {
+        if (sketch != null) {
+            sketch.offer(hashIPv4(ipv4));
+            return;
+        }
+        addId(dictionary.idOfIPv4(ipv4));
+    }
+
+    private void addId(int id) {
+        if (ids.get(id)) {
+            return;
+        }
+        ids.set(id);
+        size++;
+        usedBytes += dictionary.entryBytes(id);
+        if (usedBytes > budgetBytes) {
+            switchToSketch();
+        }
+    }
+
+    private void switchToSketch() {
+        sketch = new HyperLogLog();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            sketch.offer(hash(id));
+        }
+    }
+
+    // Хеш значения для HyperLogLog: адрес IPv4 хешируется как число, как бы он ни был добавлен
+    private long hash(int id) {
+        long ipv4 = dictionary.ipv4(id);
+        return ipv4 >= 0 ? hashIPv4(ipv4) : HyperLogLog.hash(dictionary.value(id));
+    }
+
+    private static long hash(String value) {
+        long ipv4 = LogRecord.parseIPv4(value, 0, value.length());
+        return ipv4 >= 0 ? hashIPv4(ipv4) : HyperLogLog.hash(value);
+    }
+
+    private static long hashIPv4(long ipv4) {
+        return HyperLogLog.mix(ipv4 ^ IPV4_HASH_SALT);
+    }
+
+    /**
+     * Объединение с множеством другого фрагмента
+     * @param other множество, значения которого добавляются после текущих
+     * @param translation перевод номеров словаря другого множества в номера словаря этого, см. Dictionary.translate
+     */
+    public void merge(BoundedSet other, int[] translation) {
+        if (other.sketch != null) {
+            if (sketch == null) {
+                switchToSketch();
+            }
+            sketch.merge(other.sketch);
+            return;
+        }
+        for (int id = other.ids.nextSetBit(0); id >= 0; id = other.ids.nextSetBit(id + 1)) {
+            if (sketch != null) {
+                sketch.offer(other.hash(id));
+            } else {
+                addId(translation[id]);
+            }
+        }
+    }
+
+    /**
+     * Запись в снимок статистики: номера значений и оценка HyperLogLog, если она есть.
+     * Сам словарь записывается статистикой один раз для всех множеств.
+     * @param out поток снимка
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(usedBytes);
+        out.writeInt(size);
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            out.writeInt(id);
+        }
+        out.writeBoolean(sketch != null);
+        if (sketch != null) {
+            sketch.writeTo(out);
+        }
+    }
+
+    // Чтение множества, записанного writeTo, в пустое множество над уже прочитанным словарём
+    public void readFrom(DataInput in) throws IOException {
+        usedBytes = in.readLong();
+        size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            ids.set(in.readInt());
+        }
+        if (in.readBoolean()) {
+            sketch = HyperLogLog.readFrom(in);
+        }
+    }
+
+    // Число различных значений: точное или оценка
+    public long count() {
+        if (sketch == null) {
+            return size;
+        }
+        return Math.max(sketch.estimate(), size);
+    }
+
+    public boolean isExact() {
+        return sketch == null;
+    }
+
+    // Оценка занятой памяти: значения в словаре, битовый набор и регистры HyperLogLog после перехода на оценку
+    public long estimatedBytes() {
+        return usedBytes + ids.size() / 8 + (sketch == null ? 0 : HyperLogLog.sizeInBytes());
+    }
+
+    /**
+     * Собранные значения: все, если множество точное, иначе образец, накопленный до превышения бюджета.
+     * Представление без копирования в порядке первого появления; текст восстанавливается из словаря при обходе.
+     */
+    public Set<String> values() {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Iterator<String>() {
+                    private int next = ids.nextSetBit(0);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next >= 0;
+                    }
+
+                    @Override
+                    public String next() {
+                        if (next < 0) {
+                            throw new NoSuchElementException();
+                        }
+                        String value = dictionary.value(next);
+                        next = ids.nextSetBit(next + 1);
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+}
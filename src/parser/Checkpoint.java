@@ -0,0 +1,107 @@
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Контрольная точка анализа: двоичный снимок Statistics и позиция во входном файле,
+ * до которой строки уже учтены, вместе с ключом файла (на Linux - устройство и inode).
+ * Снимок пишется во временный файл и заменяет прежний одним переименованием,
+ * так что прерванная запись не портит последнюю удачную контрольную точку.
+ */
+class Checkpoint {
+    private static final int MAGIC = 0x4C4F4753; // "LOGS"
+    private static final int VERSION = 8;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    // Состояние, прочитанное из контрольной точки
+    static class State {
+        private final Statistics statistics;
+        private final long offset;
+        private final String fileKey;
+
+        State(Statistics statistics, long offset, String fileKey) {
+            this.statistics = statistics;
+            this.offset = offset;
+            this.fileKey = fileKey;
+        }
+
+        public Statistics getStatistics() { return statistics; }
+        public long getOffset() { return offset; }
+        public String getFileKey() { return fileKey; }
+
+        /**
+         * Позиция, с которой продолжать чтение файла
+         * @param fileKey ключ текущего файла
+         * @param size текущий размер файла
+         * @return сохранённая позиция или 0, если это другой файл или он усечён
+         */
+        public long resumeOffset(Object fileKey, long size) {
+            if (!this.fileKey.equals(String.valueOf(fileKey)) || size < offset) {
+                System.out.println("Файл изменился после контрольной точки, чтение с начала");
+                return 0;
+            }
+            System.out.println("Продолжение с позиции " + offset + " из " + size + " байт");
+            return offset;
+        }
+    }
+
+    private final Path path;
+
+    public Checkpoint(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Сохранение контрольной точки
+     * @param stats накопленная статистика
+     * @param offset позиция после последней учтённой строки
+     * @param fileKey ключ входного файла
+     */
+    public void save(Statistics stats, long offset, Object fileKey) throws IOException {
+        long start = System.nanoTime();
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporary), BUFFER_BYTES))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(offset);
+            out.writeUTF(String.valueOf(fileKey));
+            stats.writeTo(out);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.printf("Контрольная точка сохранена: %d байт за %.1f мс, позиция %d%n",
+                Files.size(path), (System.nanoTime() - start) / 1e6, offset);
+    }
+
+    /**
+     * Чтение контрольной точки
+     * @return сохранённое состояние или null, если контрольной точки ещё нет
+     * @throws IOException если файл не является контрольной точкой этой версии
+     */
+    public State load() throws IOException {
+        long start = System.nanoTime();
+        State state;
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path), BUFFER_BYTES))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Файл не является контрольной точкой этой версии: " + path);
+            }
+            long offset = in.readLong();
+            String fileKey = in.readUTF();
+            state = new State(Statistics.readFrom(in), offset, fileKey);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        System.out.printf("Контрольная точка загружена: %d байт за %.1f мс, строк: %d%n",
+                Files.size(path), (System.nanoTime() - start) / 1e6, state.getStatistics().getTotalLines());
+        return state;
+    }
+}
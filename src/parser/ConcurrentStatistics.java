@@ -0,0 +1,210 @@
+package parser;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Статистика, которую пополняют несколько потоков без общей блокировки.
+ * Данные разбиты на фиксированное число фрагментов - обычных Statistics со своими словарями,
+ * множествами и счётчиками по IP, страницам и секундам, - каждый под своей блокировкой.
+ * Поток всегда пишет в фрагмент по своему номеру, так что платформенные потоки, которых
+ * не больше фрагментов, не мешают друг другу, а тысячи виртуальных потоков соединений
+ * делят ограниченное число фрагментов. Итоги, нужные во время работы (строки и записи),
+ * ведутся в LongAdder и читаются без снимка.
+ * Сессии делятся иначе - по ключу IP и User-Agent, под блокировками своих фрагментов: все запросы
+ * пользователя должны попасть в одни Sessions, из каких бы соединений они ни пришли.
+ * Снимок блокирует все фрагменты сразу и объединяет их через Statistics.merge, поэтому
+ * без бюджета памяти его показатели совпадают с последовательным проходом по тем же строкам;
+ * с бюджетом оценки топов и множеств зависят от того, как строки разошлись по фрагментам.
+ * Порядок первого появления в полных списках зависит от того, какой поток какие строки разобрал.
+ */
+class ConcurrentStatistics {
+    private final long memoryBudget;
+    private final Set<Statistics.Metric> metrics;
+    private final int sessionTimeoutSeconds;
+    // снимок блокирует фрагменты по порядку номеров
+    private final Shard[] shards;
+    // фрагменты сессий по ключу; пусто, если сессии не собираются
+    private final SessionShard[] sessionShards;
+    private final LongAdder lines = new LongAdder();
+    private final LongAdder entries = new LongAdder();
+
+    // Фрагмент данных со своей блокировкой
+    private static final class Shard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Statistics stats;
+
+        Shard(Statistics stats) {
+            this.stats = stats;
+        }
+    }
+
+    // Сессии части ключей со своей блокировкой
+    private static final class SessionShard {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Sessions sessions;
+
+        SessionShard(Sessions sessions) {
+            this.sessions = sessions;
+        }
+    }
+
+    public ConcurrentStatistics() {
+        this(Long.MAX_VALUE, EnumSet.allOf(Statistics.Metric.class), defaultShards());
+    }
+
+    /**
+     * @param memoryBudget бюджет памяти каждой структуры каждого фрагмента, как у Statistics
+     * @param metrics собираемые группы показателей
+     * @param shardCount число фрагментов
+     */
+    public ConcurrentStatistics(long memoryBudget, Set<Statistics.Metric> metrics, int shardCount) {
+        this(memoryBudget, metrics, shardCount, Sessions.DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * @param sessionTimeoutSeconds наибольший перерыв между запросами одной сессии
+     */
+    public ConcurrentStatistics(long memoryBudget, Set<Statistics.Metric> metrics, int shardCount,
+                                int sessionTimeoutSeconds) {
+        this.memoryBudget = memoryBudget;
+        this.metrics = Statistics.Metric.withDependencies(metrics);
+        this.sessionTimeoutSeconds = sessionTimeoutSeconds;
+        // фрагменты по потокам сессий не ведут
+        Set<Statistics.Metric> sharded = EnumSet.copyOf(this.metrics);
+        sharded.remove(Statistics.Metric.SESSIONS);
+        this.shards = new Shard[Math.max(1, shardCount)];
+        for (int i = 0; i < shards.length; i++) {
+            shards[i] = new Shard(new Statistics(memoryBudget, sharded));
+        }
+        this.sessionShards = new SessionShard[this.metrics.contains(Statistics.Metric.SESSIONS) ? shards.length : 0];
+        for (int i = 0; i < sessionShards.length; i++) {
+            sessionShards[i] = new SessionShard(new Sessions(sessionTimeoutSeconds));
+        }
+    }
+
+    // По два фрагмента на процессор: столкновения потоков на одном фрагменте редки
+    static int defaultShards() {
+        return Runtime.getRuntime().availableProcessors() * 2;
+    }
+
+    private Shard ownShard() {
+        return shards[(int) (Thread.currentThread().threadId() % shards.length)];
+    }
+
+    public void addEntry(LogRecord entry) {
+        Shard shard = ownShard();
+        shard.lock.lock();
+        try {
+            shard.stats.addEntry(entry);
+        } finally {
+            shard.lock.unlock();
+        }
+        addSession(entry);
+        entries.increment();
+    }
+
+    // Запрос реального пользователя со временем - в сессии фрагмента по его ключу
+    private void addSession(LogRecord entry) {
+        if (sessionShards.length == 0) {
+            return;
+        }
+        long epochSecond = entry.getEpochSecond();
+        UserAgent userAgent = entry.getUserAgent();
+        if (epochSecond == TimestampParser.INVALID || userAgent.isBot()) {
+            return;
+        }
+        long key = Sessions.key(entry, userAgent);
+        SessionShard shard = sessionShards[(int) Long.remainderUnsigned(key, sessionShards.length)];
+        shard.lock.lock();
+        try {
+            shard.sessions.add(key, epochSecond);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Учёт строки и её записи за одну блокировку
+     * @param entry запись или null, если строку не удалось разобрать
+     */
+    public void addLine(LogRecord entry) {
+        Shard shard = ownShard();
+        shard.lock.lock();
+        try {
+            shard.stats.countLine();
+            if (entry != null) {
+                shard.stats.addEntry(entry);
+            }
+        } finally {
+            shard.lock.unlock();
+        }
+        lines.increment();
+        if (entry != null) {
+            addSession(entry);
+            entries.increment();
+        }
+    }
+
+    // Учёт прочитанной строки лога, в том числе ещё не разобранной
+    public void countLine() {
+        Shard shard = ownShard();
+        shard.lock.lock();
+        try {
+            shard.stats.countLine();
+        } finally {
+            shard.lock.unlock();
+        }
+        lines.increment();
+    }
+
+    // Учёт попаданий и промахов кеша User-Agent, которым пользовался поток разбора
+    public void countUserAgentCache(UserAgentCache cache) {
+        Shard shard = ownShard();
+        shard.lock.lock();
+        try {
+            shard.stats.countUserAgentCache(cache);
+        } finally {
+            shard.lock.unlock();
+        }
+    }
+
+    /**
+     * Согласованный снимок: все фрагменты блокируются на время объединения,
+     * так что ни одна запись не учитывается частично
+     * @return новая статистика, не связанная с фрагментами
+     */
+    public Statistics snapshot() {
+        Statistics total = new Statistics(memoryBudget, metrics, sessionTimeoutSeconds);
+        for (Shard shard : shards) {
+            shard.lock.lock();
+        }
+        for (SessionShard shard : sessionShards) {
+            shard.lock.lock();
+        }
+        try {
+            for (Shard shard : shards) {
+                total.merge(shard.stats);
+            }
+            // ключи фрагментов сессий не пересекаются, так что продолжений сессий между ними нет
+            for (SessionShard shard : sessionShards) {
+                total.getSessions().merge(shard.sessions);
+            }
+        } finally {
+            for (SessionShard shard : sessionShards) {
+                shard.lock.unlock();
+            }
+            for (Shard shard : shards) {
+                shard.lock.unlock();
+            }
+        }
+        return total;
+    }
+
+    // Итоги без снимка: прочитанные строки и добавленные записи
+    public long getLines() { return lines.sum(); }
+    public long getEntries() { return entries.sum(); }
+    public int getShardCount() { return shards.length; }
+}
@@ -0,0 +1,215 @@
+package parser;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Индекс разделителей полей в сырых байтах лога: позиции переводов строки и других пробельных символов,
+ * кавычек, квадратных скобок и обратной косой черты. Индекс строится сразу для порции из многих строк,
+ * после чего строки выделяются по позициям '\n', а LogTokenizer переходит от разделителя к разделителю,
+ * не просматривая байты внутри полей.
+ * Позиции ищет векторный DelimiterScanner. Без Vector API индекс не строится: побайтовый поиск
+ * разделителей дороже, чем экономия на разборе по нему, поэтому строки и поля ищутся по байтам, как раньше.
+ * Экземпляр переиспользуется между порциями и не потокобезопасен.
+ */
+class DelimiterIndex {
+    // Наибольшая порция байтов, по которой строится индекс
+    static final int CHUNK_BYTES = 1 << 16;
+
+    // null - индекс не строится
+    private final DelimiterScanner scanner;
+    // позиции разделителей текущей порции по возрастанию; за последней - Integer.MAX_VALUE
+    private final int[] positions = new int[CHUNK_BYTES + 1];
+    private int count;
+    // номер первой позиции, не меньшей последнего запроса next
+    private int cursor;
+
+    public DelimiterIndex() {
+        this(DelimiterScanner.vector());
+    }
+
+    /**
+     * @param scanner поиск разделителей или null, чтобы передавать строки без индекса
+     */
+    public DelimiterIndex(DelimiterScanner scanner) {
+        this.scanner = scanner;
+    }
+
+    /**
+     * Построение индекса по байтам [from, to) массива
+     * @param to не дальше from + CHUNK_BYTES
+     */
+    public void build(byte[] bytes, int from, int to) {
+        count = scanner.scan(bytes, from, to, positions);
+        positions[count] = Integer.MAX_VALUE;
+        cursor = 0;
+    }
+
+    /**
+     * Ближайший разделитель начиная с позиции
+     * @param from позиция в массиве, по которому построен индекс
+     * @return позиция разделителя или Integer.MAX_VALUE, если до конца порции разделителей нет
+     */
+    public int next(int from) {
+        if (cursor > 0 && positions[cursor - 1] >= from) {
+            // возврат назад, например к началу строки запроса после поиска закрывающей кавычки
+            int found = Arrays.binarySearch(positions, 0, cursor, from);
+            cursor = found >= 0 ? found : -found - 1;
+        }
+        while (positions[cursor] < from) {
+            cursor++;
+        }
+        return positions[cursor];
+    }
+
+    /**
+     * Передаёт обработчику все целые строки из buffer[from, to) вместе с индексом разделителей
+     * @param buffer обёртка массива без смещения, например ByteBuffer.wrap или ByteBuffer.allocate
+     * @param includeTail передать и последнюю строку без перевода строки
+     * @param processor обработчик строк
+     * @return позиция после последней переданной строки
+     */
+    public int processLines(ByteBuffer buffer, int from, int to, boolean includeTail, LineProcessor processor) {
+        byte[] bytes = buffer.array();
+        int lineStart = from;
+        if (scanner == null) {
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == '\n') {
+                    processor.process(buffer, lineStart, trimCarriageReturn(bytes, lineStart, i), null);
+                    lineStart = i + 1;
+                }
+            }
+        } else {
+            lineStart = processIndexed(buffer, bytes, from, to, processor);
+        }
+        if (includeTail && lineStart < to) {
+            processor.process(buffer, lineStart, trimCarriageReturn(bytes, lineStart, to), null);
+            lineStart = to;
+        }
+        return lineStart;
+    }
+
+    private int processIndexed(ByteBuffer buffer, byte[] bytes, int from, int to, LineProcessor processor) {
+        int lineStart = from;
+        while (lineStart < to) {
+            int chunkStart = lineStart;
+            int chunkEnd = Math.min(to, chunkStart + CHUNK_BYTES);
+            build(bytes, chunkStart, chunkEnd);
+            int lineFirst = 0;
+            for (int k = 0; k < count; k++) {
+                int p = positions[k];
+                if (bytes[p] == '\n') {
+                    cursor = lineFirst;
+                    processor.process(buffer, lineStart, trimCarriageReturn(bytes, lineStart, p), this);
+                    lineStart = p + 1;
+                    lineFirst = k + 1;
+                }
+            }
+            if (chunkEnd == to) {
+                break;
+            }
+            if (lineStart == chunkStart) {
+                // перевода строки нет на всю порцию: строку заведомо отвергнет проверка длины,
+                // поэтому её конец ищется без индекса
+                int newline = indexOf(bytes, (byte) '\n', chunkEnd, to);
+                if (newline < 0) {
+                    break;
+                }
+                processor.process(buffer, lineStart, trimCarriageReturn(bytes, lineStart, newline), null);
+                lineStart = newline + 1;
+            }
+        }
+        return lineStart;
+    }
+
+    private static int indexOf(byte[] bytes, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Конец строки без завершающего '\r', как у BufferedReader.readLine
+    private static int trimCarriageReturn(byte[] bytes, int start, int end) {
+        return end > start && bytes[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    public DelimiterScanner getScanner() { return scanner; }
+    public int getCount() { return count; }
+}
+
+/**
+ * Поиск позиций разделителей в массиве байтов.
+ * Разделители - байты не больше 0x20 (все пробельные символы, в том числе '\n' и '\r'),
+ * '"', '[', '\\', ']' и 0x85: в представлении байтов как символов Latin-1 это символ NEL,
+ * который регулярные выражения считают концом строки, и строгий разбор времени его проверяет.
+ */
+abstract class DelimiterScanner {
+    private static final DelimiterScanner SCALAR = new ScalarDelimiterScanner();
+    private static final DelimiterScanner VECTOR = loadVector();
+
+    /**
+     * Запись позиций разделителей из bytes[from, to) по возрастанию
+     * @param positions массив не короче to - from
+     * @return число найденных позиций
+     */
+    abstract int scan(byte[] bytes, int from, int to, int[] positions);
+
+    // Название для вывода замеров
+    abstract String name();
+
+    static boolean isDelimiter(byte b) {
+        // '[' (0x5B), '\\' (0x5C) и ']' (0x5D) идут подряд и проверяются одним сравнением
+        return (b & 0xFF) <= 0x20 || b == '"' || ((b - '[') & 0xFF) <= 2 || b == (byte) 0x85;
+    }
+
+    // Побайтовый поиск
+    static DelimiterScanner scalar() {
+        return SCALAR;
+    }
+
+    // Векторный поиск, если JVM запущена с --add-modules jdk.incubator.vector и процессор
+    // обрабатывает хотя бы 16 байт за команду, иначе null
+    static DelimiterScanner vector() {
+        return VECTOR;
+    }
+
+    private static DelimiterScanner loadVector() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            // класс загружается по имени: без модуля Vector API ссылка на него не разрешится
+            DelimiterScanner vector = (DelimiterScanner) Class.forName("parser.VectorDelimiterScanner")
+                    .getDeclaredConstructor().newInstance();
+            return vector.isSupported() ? vector : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    boolean isSupported() {
+        return true;
+    }
+}
+
+// Побайтовый поиск: образец для проверки векторного и для замеров
+class ScalarDelimiterScanner extends DelimiterScanner {
+    @Override
+    int scan(byte[] bytes, int from, int to, int[] positions) {
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            if (isDelimiter(bytes[i])) {
+                positions[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    String name() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,196 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Словарное кодирование значений: каждому различному пути, домену или IP - плотный номер с нуля
+ * в порядке первого появления. Строка хранится один раз, адрес в каноническом виде IPv4 -
+ * только как 32-битное число, без строки. Множества статистики хранят номера в битовых наборах,
+ * а текст восстанавливается лишь при записи отчёта.
+ * Не потокобезопасен: у каждой Statistics свои словари, при объединении номера переводятся через translate.
+ */
+class Dictionary {
+    private static final int INITIAL_CAPACITY = 1024;
+    // Оценка памяти на значение: ячейки таблицы и массивов по номерам, заголовки String и его массива байтов
+    private static final int STRING_ENTRY_BYTES = 64;
+    // ячейки таблицы адресов и массивов по номерам
+    private static final int IPV4_ENTRY_BYTES = 24;
+
+    // открытая адресация по строкам: номер + 1, 0 - пустая ячейка
+    private int[] table = new int[INITIAL_CAPACITY];
+    // адрес IPv4 -> номер + 1
+    private final IntIntHashMap ipv4Ids = new IntIntHashMap();
+    // по номеру: строка (null для IPv4), адрес IPv4 и хеш строки
+    private String[] values = new String[INITIAL_CAPACITY];
+    private int[] ipv4s = new int[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size;
+    private int strings;
+
+    /**
+     * Номер значения; новое значение получает следующий свободный номер
+     * @param value строка; адрес в каноническом виде IPv4 кодируется как число
+     */
+    public int id(String value) {
+        long ipv4 = LogRecord.parseIPv4(value, 0, value.length());
+        return ipv4 >= 0 ? idOfIPv4(ipv4) : idOfString(value);
+    }
+
+    /**
+     * Номер адреса IPv4, уже разобранного в число
+     * @param ipv4 адрес как беззнаковое 32-битное число
+     */
+    public int idOfIPv4(long ipv4) {
+        int found = ipv4Ids.get((int) ipv4);
+        if (found != 0) {
+            return found - 1;
+        }
+        int id = append(null, (int) ipv4, 0);
+        ipv4Ids.addTo(ipv4, id + 1);
+        return id;
+    }
+
+    /**
+     * Номер уже известного значения без добавления нового
+     * @param value строка или адрес IPv4
+     * @return номер или -1, если значения в словаре нет
+     */
+    public int find(String value) {
+        long ipv4 = LogRecord.parseIPv4(value, 0, value.length());
+        if (ipv4 >= 0) {
+            return ipv4Ids.get((int) ipv4) - 1;
+        }
+        int hash = value.hashCode();
+        hash ^= hash >>> 16;
+        int mask = table.length - 1;
+        int entry;
+        for (int slot = hash & mask; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (hashes[entry - 1] == hash && values[entry - 1].equals(value)) {
+                return entry - 1;
+            }
+        }
+        return -1;
+    }
+
+    private int idOfString(String value) {
+        int hash = value.hashCode();
+        hash ^= hash >>> 16;
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        int entry;
+        while ((entry = table[slot]) != 0) {
+            if (hashes[entry - 1] == hash && values[entry - 1].equals(value)) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int id = append(value, 0, hash);
+        table[slot] = id + 1;
+        if (++strings > table.length * 3 / 4) {
+            rehash(table.length * 2);
+        }
+        return id;
+    }
+
+    private int append(String value, int ipv4, int hash) {
+        if (size == values.length) {
+            int capacity = size * 2;
+            values = Arrays.copyOf(values, capacity);
+            ipv4s = Arrays.copyOf(ipv4s, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        values[size] = value;
+        ipv4s[size] = ipv4;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            if (values[id] == null) {
+                continue;
+            }
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Текст значения по номеру
+     */
+    public String value(int id) {
+        String value = values[id];
+        return value != null ? value : formatIPv4(ipv4s[id] & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Адрес IPv4 по номеру
+     * @return адрес как беззнаковое число или -1, если значение - строка
+     */
+    public long ipv4(int id) {
+        return values[id] == null ? ipv4s[id] & 0xFFFFFFFFL : -1;
+    }
+
+    static String formatIPv4(long ipv4) {
+        return (ipv4 >>> 24) + "." + ((ipv4 >>> 16) & 0xFF) + "." + ((ipv4 >>> 8) & 0xFF) + "." + (ipv4 & 0xFF);
+    }
+
+    /**
+     * Перевод номеров другого словаря в номера этого: значения другого словаря добавляются
+     * в порядке их номеров, поэтому после объединения фрагментов по порядку номера идут
+     * в порядке первого появления во всём файле
+     * @param other словарь следующего фрагмента
+     * @return номер в этом словаре по номеру в другом
+     */
+    public int[] translate(Dictionary other) {
+        int[] translation = new int[other.size];
+        for (int id = 0; id < other.size; id++) {
+            String value = other.values[id];
+            translation[id] = value != null ? idOfString(value) : idOfIPv4(other.ipv4s[id] & 0xFFFFFFFFL);
+        }
+        return translation;
+    }
+
+    // Оценка памяти, которую значение занимает в словаре
+    public long entryBytes(int id) {
+        return values[id] != null ? STRING_ENTRY_BYTES + values[id].length() : IPV4_ENTRY_BYTES;
+    }
+
+    public int size() { return size; }
+
+    /**
+     * Запись в снимок статистики: значения в порядке номеров
+     * @param out поток снимка
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(size);
+        for (int id = 0; id < size; id++) {
+            out.writeBoolean(values[id] == null);
+            if (values[id] == null) {
+                out.writeInt(ipv4s[id]);
+            } else {
+                out.writeUTF(values[id]);
+            }
+        }
+    }
+
+    // Чтение значений, записанных writeTo, в пустой словарь с теми же номерами
+    public void readFrom(DataInput in) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            if (in.readBoolean()) {
+                idOfIPv4(in.readInt() & 0xFFFFFFFFL);
+            } else {
+                idOfString(in.readUTF());
+            }
+        }
+    }
+}
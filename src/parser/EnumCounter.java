@@ -0,0 +1,102 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Счётчики по значениям перечисления в массиве, индексированном ordinal().
+ * Запоминает порядок первого появления значений: карты для отчёта заполняются в этом порядке
+ * и обходятся так же, как HashMap, который пополнялся бы по ходу разбора.
+ */
+class EnumCounter<E extends Enum<E>> {
+    private final E[] constants;
+    private final int[] counts;
+    private final int[] firstSeen;
+    private int seen;
+
+    public EnumCounter(Class<E> type) {
+        this.constants = type.getEnumConstants();
+        this.counts = new int[constants.length];
+        this.firstSeen = new int[constants.length];
+    }
+
+    public void increment(E value) {
+        add(value.ordinal(), 1);
+    }
+
+    private void add(int index, int count) {
+        if (counts[index] == 0) {
+            firstSeen[seen++] = index;
+        }
+        counts[index] += count;
+    }
+
+    // Объединение со счётчиками следующего фрагмента
+    public void merge(EnumCounter<E> other) {
+        for (int i = 0; i < other.seen; i++) {
+            int index = other.firstSeen[i];
+            add(index, other.counts[index]);
+        }
+    }
+
+    // Запись в снимок статистики: значения в порядке первого появления
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(seen);
+        for (int i = 0; i < seen; i++) {
+            out.writeInt(firstSeen[i]);
+            out.writeInt(counts[firstSeen[i]]);
+        }
+    }
+
+    // Чтение счётчиков, записанных writeTo, в пустой EnumCounter
+    public void readFrom(DataInput in) throws IOException {
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            int index = in.readInt();
+            if (index < 0 || index >= constants.length) {
+                throw new IOException("Неизвестное значение перечисления в снимке: " + index);
+            }
+            add(index, in.readInt());
+        }
+    }
+
+    public int get(E value) {
+        return counts[value.ordinal()];
+    }
+
+    public int total() {
+        int total = 0;
+        for (int count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Счётчики в виде карты
+     * @return Map<String, Integer> где ключ - название значения, значение - количество
+     */
+    public Map<String, Integer> toMap() {
+        Map<String, Integer> map = new HashMap<>();
+        for (int i = 0; i < seen; i++) {
+            map.put(constants[firstSeen[i]].toString(), counts[firstSeen[i]]);
+        }
+        return map;
+    }
+
+    /**
+     * Доли значений
+     * @return Map<String, Double> где ключ - название значения, значение - доля от общего количества
+     */
+    public Map<String, Double> toShares() {
+        Map<String, Double> shares = new HashMap<>();
+        int total = total();
+        for (int i = 0; i < seen; i++) {
+            shares.put(constants[firstSeen[i]].toString(), (double) counts[firstSeen[i]] / total);
+        }
+        return shares;
+    }
+}
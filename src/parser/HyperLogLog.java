@@ -0,0 +1,110 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Оценка числа различных значений алгоритмом HyperLogLog.
+ * Занимает 2^PRECISION байт независимо от числа значений;
+ * стандартная относительная ошибка 1.04 / sqrt(2^PRECISION), около 0.8%.
+ */
+class HyperLogLog {
+    private static final int PRECISION = 14;
+    private static final int REGISTER_COUNT = 1 << PRECISION;
+
+    private final byte[] registers = new byte[REGISTER_COUNT];
+
+    public void add(String value) {
+        offer(hash(value));
+    }
+
+    /**
+     * Учитывает значение по его 64-битному хешу
+     * @param hash хорошо перемешанный хеш значения
+     */
+    public void offer(long hash) {
+        int index = (int) (hash >>> (64 - PRECISION));
+        // страховочный бит ограничивает ранг, если оставшиеся биты нулевые
+        long remaining = (hash << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(remaining) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Оценка числа различных учтённых значений
+     * @return приблизительное количество
+     */
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / REGISTER_COUNT);
+        double estimate = alpha * REGISTER_COUNT * REGISTER_COUNT / sum;
+        // на малых количествах точнее линейный подсчёт пустых регистров
+        if (estimate <= 2.5 * REGISTER_COUNT && zeros > 0) {
+            estimate = REGISTER_COUNT * Math.log((double) REGISTER_COUNT / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    // Объединение с оценкой другого множества значений
+    public void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTER_COUNT; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    // Запись регистров в снимок статистики
+    public void writeTo(DataOutput out) throws IOException {
+        out.write(registers);
+    }
+
+    // Чтение регистров, записанных writeTo
+    public static HyperLogLog readFrom(DataInput in) throws IOException {
+        HyperLogLog sketch = new HyperLogLog();
+        in.readFully(sketch.registers);
+        return sketch;
+    }
+
+    // Стандартная относительная ошибка оценки
+    public static double standardError() {
+        return 1.04 / Math.sqrt(REGISTER_COUNT);
+    }
+
+    // Объём памяти регистров в байтах
+    public static int sizeInBytes() {
+        return REGISTER_COUNT;
+    }
+
+    /**
+     * 64-битный хеш строки: FNV-1a по символам и финальное перемешивание MurmurHash3
+     * @param value строка
+     * @return хеш
+     */
+    static long hash(CharSequence value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
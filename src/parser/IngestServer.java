@@ -0,0 +1,380 @@
+package parser;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Приём строк лога по сети и анализ в реальном времени.
+ * По TCP каждое соединение - поток строк, разделённых переводом строки; по UDP каждая датаграмма -
+ * одна или несколько строк. Заголовок syslog вида "&lt;134&gt;Oct 11 22:14:15 web1 nginx: " отбрасывается.
+ * Каждое соединение обслуживает свой виртуальный поток со своим токенизатором и кешем User-Agent,
+ * а разобранные строки попадают в общую ConcurrentStatistics. Строки, которые не удалось разобрать,
+ * и слишком длинные строки пропускаются: один отправитель не должен останавливать приём от остальных.
+ * Текущий отчёт и счётчики приёма отдаются по HTTP на локальном адресе (/report и /status),
+ * файл отчёта перезаписывается раз в период отчёта и при остановке.
+ */
+class IngestServer {
+    // Наибольшая датаграмма UDP
+    private static final int MAX_DATAGRAM_BYTES = 65_507;
+
+    private final AnalysisOptions options;
+    private final ConcurrentStatistics stats;
+    private final long startNanos = System.nanoTime();
+    private final LongAdder rejectedLines = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder datagrams = new LongAdder();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder connections = new LongAdder();
+    private final ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+    private ServerSocket tcpSocket;
+    private DatagramSocket udpSocket;
+    private HttpServer httpServer;
+
+    public IngestServer(AnalysisOptions options) {
+        this.options = options;
+        this.stats = new ConcurrentStatistics(options.getMemoryBudget(), options.getCollectedMetrics(),
+                ConcurrentStatistics.defaultShards(), options.getSessionTimeoutSeconds());
+    }
+
+    /**
+     * Открытие портов и запуск приёма; возвращается сразу, приём идёт в виртуальных потоках
+     */
+    public void start() throws IOException {
+        InetAddress bind = InetAddress.getByName(options.getBindAddress());
+        if (options.getTcpPort() != 0) {
+            tcpSocket = new ServerSocket(options.getTcpPort(), 1024, bind);
+            Thread.ofVirtual().name("ingest-tcp-accept").start(this::acceptConnections);
+            System.out.println("Приём строк по TCP: " + bind.getHostAddress() + ":" + tcpSocket.getLocalPort());
+        }
+        if (options.getUdpPort() != 0) {
+            udpSocket = new DatagramSocket(new InetSocketAddress(bind, options.getUdpPort()));
+            udpSocket.setReceiveBufferSize(4 << 20);
+            Thread.ofVirtual().name("ingest-udp").start(this::receiveDatagrams);
+            System.out.println("Приём строк по UDP: " + bind.getHostAddress() + ":" + udpSocket.getLocalPort());
+        }
+        if (options.getHttpPort() != 0) {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.getHttpPort()), 0);
+            httpServer.setExecutor(handlers);
+            httpServer.createContext("/report", this::serveReport);
+            httpServer.createContext("/status", this::serveStatus);
+            httpServer.start();
+            System.out.println("Отчёт: http://localhost:" + options.getHttpPort() + "/report, счётчики: /status");
+        }
+    }
+
+    /**
+     * Работа до прерывания потока: файл отчёта перезаписывается раз в период отчёта,
+     * если пришли новые строки, и ещё раз при остановке
+     */
+    public void run() throws IOException {
+        System.out.println("Сервер приёма запущен, отчёт обновляется раз в "
+                + options.getReportIntervalSeconds() + " с; остановка - Ctrl+C");
+        Thread main = Thread.currentThread();
+        Thread hook = new Thread(() -> {
+            main.interrupt();
+            try {
+                main.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runtime.getRuntime().addShutdownHook(hook);
+        long reportedLines = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(options.getReportIntervalSeconds() * 1000L);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                long lines = stats.getLines();
+                if (lines != reportedLines) {
+                    writeReportFile();
+                    reportedLines = lines;
+                }
+            }
+        } finally {
+            close();
+            writeReportFile();
+            System.out.println("Приём остановлен, строк: " + stats.getLines() + ", отчёт сохранён в: " + options.getOutputPath());
+        }
+    }
+
+    public void close() {
+        if (tcpSocket != null) {
+            try {
+                tcpSocket.close();
+            } catch (IOException ignored) {
+            }
+        }
+        if (udpSocket != null) {
+            udpSocket.close();
+        }
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+        handlers.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!tcpSocket.isClosed()) {
+            try {
+                Socket socket = tcpSocket.accept();
+                handlers.execute(() -> handleConnection(socket));
+            } catch (SocketException e) {
+                // сокет закрыт при остановке
+                return;
+            } catch (IOException e) {
+                System.err.println("Ошибка приёма соединения: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        openConnections.incrementAndGet();
+        connections.increment();
+        Receiver receiver = new Receiver();
+        try (socket) {
+            LineInput input = new LineInput(socket.getInputStream(), receivedBytes);
+            String line;
+            while ((line = input.readLine()) != null) {
+                if (input.isTooLong()) {
+                    stats.countLine();
+                    rejectedLines.increment();
+                } else {
+                    receiver.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            // отправитель оборвал соединение: принятое остаётся в статистике
+        } finally {
+            receiver.finish();
+            openConnections.decrementAndGet();
+        }
+    }
+
+    private void receiveDatagrams() {
+        Receiver receiver = new Receiver();
+        byte[] buffer = new byte[MAX_DATAGRAM_BYTES];
+        DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        try {
+            while (!udpSocket.isClosed()) {
+                packet.setLength(buffer.length);
+                udpSocket.receive(packet);
+                datagrams.increment();
+                receivedBytes.add(packet.getLength());
+                int start = 0;
+                int end = packet.getLength();
+                for (int i = 0; i <= end; i++) {
+                    if (i == end || buffer[i] == '\n') {
+                        int lineEnd = i > start && buffer[i - 1] == '\r' ? i - 1 : i;
+                        if (lineEnd > start) {
+                            receiver.accept(new String(buffer, start, lineEnd - start, StandardCharsets.UTF_8));
+                        }
+                        start = i + 1;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // сокет закрыт при остановке
+        } finally {
+            receiver.finish();
+        }
+    }
+
+    // Разбор строк одного соединения или приёмника UDP
+    private final class Receiver {
+        private final LogTokenizer tokenizer = new LogTokenizer(options.getParseMode());
+        private final UserAgentCache userAgents = options.newUserAgentCache();
+        private final LineRecord record = new LineRecord(tokenizer, userAgents);
+
+        void accept(String line) {
+            line = stripSyslogHeader(line);
+            if (line.length() > LineProcessor.MAX_LINE_LENGTH) {
+                stats.countLine();
+                rejectedLines.increment();
+                return;
+            }
+            LogRecord parsed = record.parse(line) ? record : LogEntry.tryParse(line, null, userAgents);
+            stats.addLine(parsed);
+            if (parsed == null) {
+                rejectedLines.increment();
+            }
+        }
+
+        void finish() {
+            stats.countUserAgentCache(userAgents);
+        }
+    }
+
+    /**
+     * Отбрасывание заголовка syslog: приоритета в угловых скобках и, если он есть,
+     * времени, узла и тега до первого ": " перед началом строки лога
+     * @param line принятая строка
+     * @return строка лога без заголовка или исходная строка, если заголовка нет
+     */
+    static String stripSyslogHeader(String line) {
+        if (line.isEmpty() || line.charAt(0) != '<') {
+            return line;
+        }
+        int close = line.indexOf('>');
+        if (close < 2 || close > 4) {
+            return line;
+        }
+        for (int i = 1; i < close; i++) {
+            if (line.charAt(i) < '0' || line.charAt(i) > '9') {
+                return line;
+            }
+        }
+        // тег заканчивается ": " раньше, чем начинается время строки лога в квадратных скобках
+        int bracket = line.indexOf('[', close);
+        int tag = line.indexOf(": ", close);
+        int start = tag >= 0 && (bracket < 0 || tag < bracket) ? tag + 2 : close + 1;
+        return line.substring(start);
+    }
+
+    // Перезапись файла отчёта по снимку статистики
+    private void writeReportFile() throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(options.getOutputPath()))) {
+            OS.writeReport(stats.snapshot(), options, describeSource(), writer);
+        }
+    }
+
+    private String describeSource() {
+        StringBuilder source = new StringBuilder();
+        if (tcpSocket != null) {
+            source.append("tcp:").append(tcpSocket.getLocalPort());
+        }
+        if (udpSocket != null) {
+            source.append(source.length() > 0 ? ", " : "").append("udp:").append(udpSocket.getLocalPort());
+        }
+        return source.toString();
+    }
+
+    private void serveReport(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8))) {
+            OS.writeReport(stats.snapshot(), options, describeSource(), writer);
+        }
+        respond(exchange, "text/plain; charset=utf-8", body.toByteArray());
+    }
+
+    private void serveStatus(HttpExchange exchange) throws IOException {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long lines = stats.getLines();
+        String json = String.format(Locale.ROOT, "{%n"
+                        + "  \"uptime_seconds\": %.3f,%n"
+                        + "  \"lines_total\": %d,%n"
+                        + "  \"entries_total\": %d,%n"
+                        + "  \"rejected_lines_total\": %d,%n"
+                        + "  \"received_bytes_total\": %d,%n"
+                        + "  \"datagrams_total\": %d,%n"
+                        + "  \"connections_total\": %d,%n"
+                        + "  \"connections_open\": %d,%n"
+                        + "  \"lines_per_second\": %.1f%n"
+                        + "}%n",
+                seconds, lines, stats.getEntries(), rejectedLines.sum(), receivedBytes.sum(), datagrams.sum(),
+                connections.sum(), openConnections.get(), lines / Math.max(seconds, 1e-9));
+        respond(exchange, "application/json", json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    public ConcurrentStatistics getStatistics() { return stats; }
+
+    /**
+     * Чтение строк из потока байтов с ограничением длины: слишком длинная строка
+     * пропускается целиком и не копится в памяти
+     */
+    static final class LineInput {
+        private final InputStream in;
+        // счётчик принятых байтов: пополняется при каждом чтении, поэтому оборванное соединение тоже учтено
+        private final LongAdder received;
+        private final byte[] buffer = new byte[1 << 16];
+        private int position;
+        private int limit;
+        // с какого места искать перевод строки: начало текущей строки уже просмотрено
+        private int scanned;
+        private boolean tooLong;
+
+        LineInput(InputStream in, LongAdder received) {
+            this.in = in;
+            this.received = received;
+        }
+
+        /**
+         * Следующая строка без перевода строки
+         * @return строка, "" для слишком длинной строки (см. isTooLong) или null в конце потока
+         */
+        public String readLine() throws IOException {
+            boolean skipping = false;
+            while (true) {
+                for (int i = scanned; i < limit; i++) {
+                    if (buffer[i] == '\n') {
+                        int end = i > position && buffer[i - 1] == '\r' ? i - 1 : i;
+                        String line = skipping ? "" : new String(buffer, position, end - position, StandardCharsets.UTF_8);
+                        position = i + 1;
+                        scanned = position;
+                        tooLong = skipping;
+                        return line;
+                    }
+                }
+                if (limit - position > LineProcessor.MAX_LINE_LENGTH) {
+                    // перевода строки нет в пределах допустимой длины: остаток строки отбрасывается
+                    skipping = true;
+                    position = limit;
+                }
+                if (position > 0) {
+                    System.arraycopy(buffer, position, buffer, 0, limit - position);
+                    limit -= position;
+                    position = 0;
+                }
+                scanned = limit;
+                int read = in.read(buffer, limit, buffer.length - limit);
+                if (read < 0) {
+                    if (limit == 0 && !skipping) {
+                        return null;
+                    }
+                    // последняя строка без перевода строки
+                    String line = skipping ? "" : new String(buffer, 0, limit, StandardCharsets.UTF_8);
+                    limit = 0;
+                    scanned = 0;
+                    tooLong = skipping;
+                    return line;
+                }
+                received.add(read);
+                limit += read;
+            }
+        }
+
+        // Последняя строка была слишком длинной и пропущена
+        public boolean isTooLong() { return tooLong; }
+    }
+}
@@ -0,0 +1,132 @@
+package parser;
+
+/**
+ * Счётчики по ключам int на открытой адресации, например по IPv4-адресам, упакованным в int.
+ * Ключи long из интерфейса KeyCounts усекаются до int.
+ */
+class IntIntHashMap implements KeyCounts {
+    // Ключ, которым помечены свободные ячейки; сам он хранится отдельно
+    private static final int FREE = 0;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private int size;
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+
+    @Override
+    public void addTo(long longKey, int delta) {
+        int key = (int) longKey;
+        if (key == FREE) {
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue += delta;
+            return;
+        }
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                values[slot] += delta;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = delta;
+        if (++size > keys.length * 3 / 4) {
+            resize(keys.length * 2);
+        }
+    }
+
+    public int get(int key) {
+        if (key == FREE) {
+            return hasFreeKey ? freeKeyValue : 0;
+        }
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != FREE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return 0;
+    }
+
+    @Override
+    public int max() {
+        int max = hasFreeKey ? freeKeyValue : 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE && values[i] > max) {
+                max = values[i];
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    // Ключи передаются как беззнаковые значения
+    @Override
+    public void forEach(Visitor visitor) {
+        if (hasFreeKey) {
+            visitor.visit(FREE, freeKeyValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                visitor.visit(Integer.toUnsignedLong(keys[i]), values[i]);
+            }
+        }
+    }
+
+    @Override
+    public void ensureCapacity(int expectedSize) {
+        int capacity = keys.length;
+        while (expectedSize > capacity * 3 / 4) {
+            capacity *= 2;
+        }
+        if (capacity > keys.length) {
+            resize(capacity);
+        }
+    }
+
+    @Override
+    public void clear() {
+        keys = new int[INITIAL_CAPACITY];
+        values = new int[INITIAL_CAPACITY];
+        size = 0;
+        hasFreeKey = false;
+        freeKeyValue = 0;
+    }
+
+    private static int slot(int key, int mask) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == FREE) {
+                continue;
+            }
+            int slot = slot(oldKeys[i], mask);
+            while (keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package parser;
+
+/**
+ * Счётчики по примитивным ключам без упаковки в Long/Integer.
+ */
+interface KeyCounts {
+
+    // Обход пар ключ-счёт
+    interface Visitor {
+        void visit(long key, int count);
+    }
+
+    void addTo(long key, int delta);
+
+    // Наибольший счёт; 0, если ключей нет
+    int max();
+
+    int size();
+
+    void forEach(Visitor visitor);
+
+    /**
+     * Заранее увеличивает таблицу под ожидаемое число ключей. Ключи, добавляемые в порядке обхода
+     * другой такой же таблицы, в таблице меньшего размера собираются в длинные цепочки пробирования,
+     * поэтому перед объединением и чтением снимка таблица увеличивается до итогового размера.
+     * @param expectedSize ожидаемое число ключей
+     */
+    void ensureCapacity(int expectedSize);
+
+    void clear();
+}
@@ -0,0 +1,583 @@
+package parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Чтение лог-файла и накопление статистики: последовательно или параллельно по фрагментам.
+ * Параллельный режим делит файл на диапазоны байтов по границам строк, разбирает каждый
+ * в своём потоке с собственной Statistics и объединяет их в порядке следования фрагментов,
+ * поэтому без бюджета памяти результат совпадает с последовательным проходом.
+ */
+class LogAnalyzer {
+    // Меньше этого фрагменты не делятся: накладные расходы потока съедят выигрыш
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+
+    /**
+     * Анализ файла с учётом параметров запуска
+     * @param inputFile входной файл
+     * @param options параметры анализа
+     * @return накопленная статистика
+     */
+    public static Statistics analyze(File inputFile, AnalysisOptions options) throws IOException {
+        if (options.hasTimeRange() && (options.getCheckpointPath() != null || options.isPipeline())) {
+            throw new IllegalArgumentException("Окно времени --from/--to не поддерживается вместе с --checkpoint и --pipeline");
+        }
+        if (options.getCheckpointPath() != null) {
+            return analyzeResumable(inputFile, options);
+        }
+        if (options.isPipeline()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(inputFile))) {
+                return new LogPipeline(options).analyze(reader);
+            }
+        }
+        if (options.getWorkers() <= 1) {
+            return analyzeSequential(inputFile, options, false);
+        }
+        return analyzeParallel(inputFile, options);
+    }
+
+    /**
+     * Анализ входа из параметров запуска: одного файла, каталога, шаблона или списка файлов
+     * @param options параметры анализа
+     * @return накопленная статистика, объединённая по всем файлам
+     */
+    public static Statistics analyze(AnalysisOptions options) throws IOException {
+        AnalysisMetrics metrics = options.getMetrics();
+        AnalysisMetrics.Reporter reporter = metrics.startReporter(options);
+        try {
+            Statistics stats = analyzeInputs(options);
+            metrics.setStatisticsBytes(stats.estimatedBytes());
+            if (options.isTolerant()) {
+                options.getRejectedLines().finish();
+            }
+            return stats;
+        } catch (TooManyRejectedLinesException e) {
+            // к этому моменту известны номера строк всех фрагментов до прерванного включительно
+            options.getRejectedLines().writeSample();
+            throw e;
+        } finally {
+            reporter.close();
+        }
+    }
+
+    private static Statistics analyzeInputs(AnalysisOptions options) throws IOException {
+        List<File> files = BatchAnalyzer.resolveInputs(options.getInputPath());
+        if (files.size() == 1 && !BatchAnalyzer.isGzip(files.get(0))) {
+            return analyze(files.get(0), options);
+        }
+        if (options.getCheckpointPath() != null) {
+            throw new IllegalArgumentException("Контрольные точки поддерживаются только для одного несжатого файла");
+        }
+        return new BatchAnalyzer(options).analyze(files);
+    }
+
+    /**
+     * Однопоточный анализ несжатого файла
+     * @param continuation файл продолжает уже разобранные и будет объединён с ними, см. newStatistics
+     */
+    static Statistics analyzeSequential(File inputFile, AnalysisOptions options, boolean continuation) throws IOException {
+        if (options.hasTimeRange()) {
+            long[] range = seekTimeRange(inputFile, options);
+            return analyzeRange(inputFile, range[0], range[1], options,
+                    new LineSource(inputFile.getPath(), range[0], 0), continuation);
+        }
+        LineSource source = new LineSource(inputFile.getPath(), 0);
+        if (options.isMemoryMapped()) {
+            return analyzeMapped(inputFile, 0, inputFile.length(), options, source, continuation);
+        }
+        Statistics stats = newStatistics(options, continuation);
+        LineProcessor processor = new LineProcessor(stats, options, source);
+        try (
+                FileReader fileReader = new FileReader(inputFile);
+                BufferedReader reader = new BufferedReader(fileReader)
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                processor.process(line);
+            }
+        }
+        processor.finish();
+        return stats;
+    }
+
+    /**
+     * Однопоточный анализ потока, например распакованного gzip
+     * @param input поток байтов лога в кодировке по умолчанию
+     * @param name имя файла, из которого читается поток, для выборки пропущенных строк
+     * @param continuation поток продолжает уже разобранные файлы и будет объединён с ними, см. newStatistics
+     */
+    static Statistics analyzeStream(InputStream input, String name, AnalysisOptions options,
+                                    boolean continuation) throws IOException {
+        Statistics stats = newStatistics(options, continuation);
+        LineProcessor processor = new LineProcessor(stats, options, new LineSource(name, 0));
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, Charset.defaultCharset()))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                processor.process(line);
+            }
+        }
+        processor.finish();
+        return stats;
+    }
+
+    /**
+     * Последовательный анализ с контрольными точками: продолжает с сохранённой позиции
+     * и периодически сохраняет статистику вместе с позицией после последней учтённой строки
+     */
+    private static Statistics analyzeResumable(File inputFile, AnalysisOptions options) throws IOException {
+        Checkpoint checkpoint = new Checkpoint(Paths.get(options.getCheckpointPath()));
+        Checkpoint.State state = checkpoint.load();
+        long intervalNanos = options.getCheckpointIntervalSeconds() * 1_000_000_000L;
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            Object fileKey = Files.readAttributes(inputFile.toPath(), BasicFileAttributes.class).fileKey();
+            Statistics stats = state == null ? options.newStatistics() : state.getStatistics();
+            long offset = state == null ? 0 : state.resumeOffset(fileKey, channel.size());
+
+            LineProcessor processor = new LineProcessor(stats, options, new LineSource(inputFile.getPath(), 0));
+            OffsetLineReader reader = new OffsetLineReader(processor);
+            long lastSave = System.nanoTime();
+            long next;
+            while ((next = reader.read(channel, offset, true)) != offset) {
+                offset = next;
+                if (System.nanoTime() - lastSave >= intervalNanos) {
+                    processor.finish();
+                    checkpoint.save(stats, offset, fileKey);
+                    lastSave = System.nanoTime();
+                }
+            }
+            processor.finish();
+            checkpoint.save(stats, offset, fileKey);
+            return stats;
+        }
+    }
+
+    /**
+     * Диапазон байтов файла, в котором лежат строки окна времени из параметров, с запасом на отставание строк.
+     * Строки диапазона вне самого окна отбрасывает LineProcessor.
+     * @return пара [начало, конец)
+     */
+    static long[] seekTimeRange(File inputFile, AnalysisOptions options) throws IOException {
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            LogSeeker seeker = new LogSeeker(channel);
+            long skew = options.getSkewSeconds();
+            long from = options.getFrom() == Long.MIN_VALUE ? 0 : seeker.lineStartAtOrAfter(options.getFrom() - skew);
+            long to = options.getTo() == Long.MAX_VALUE ? seeker.getSize()
+                    : Math.max(from, seeker.lineStartAtOrAfter(options.getTo() + skew));
+            System.out.printf("Окно времени: байты %d-%d из %d, чтений при поиске: %d, %.1f мс%n",
+                    from, to, seeker.getSize(), seeker.getReads(), (System.nanoTime() - start) / 1e6);
+            return new long[] {from, to};
+        }
+    }
+
+    private static Statistics analyzeParallel(File inputFile, AnalysisOptions options) throws IOException {
+        long[] bounds = options.hasTimeRange() ? seekTimeRange(inputFile, options) : new long[] {0, inputFile.length()};
+        List<long[]> ranges = splitIntoRanges(inputFile, bounds[0], bounds[1], options.getWorkers());
+        System.out.println("Потоков разбора: " + ranges.size());
+
+        ExecutorService pool = Executors.newFixedThreadPool(ranges.size());
+        try {
+            // номер строки перед фрагментом становится известен, когда разобраны все предыдущие;
+            // при окне времени строки считаются от его начала
+            List<LineSource> sources = new ArrayList<>();
+            List<Future<Statistics>> futures = new ArrayList<>();
+            for (long[] range : ranges) {
+                boolean continuation = !sources.isEmpty();
+                LineSource source = new LineSource(inputFile.getPath(), bounds[0], continuation ? LineSource.UNKNOWN : 0);
+                sources.add(source);
+                futures.add(pool.submit(() -> analyzeRange(inputFile, range[0], range[1], options, source, continuation)));
+            }
+
+            // объединение строго в порядке фрагментов
+            Statistics total = null;
+            long linesBefore = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                sources.get(i).setLinesBefore(linesBefore);
+                Statistics part = await(futures.get(i), linesBefore);
+                // строки вне окна времени не попадают в статистику, но входят в нумерацию
+                linesBefore += sources.get(i).getLines();
+                System.out.println("Фрагмент " + (i + 1) + " из " + futures.size() + ": " + part.getTotalLines() + " строк");
+                if (total == null) {
+                    total = part;
+                } else {
+                    total.merge(part);
+                }
+            }
+            return total != null ? total : options.newStatistics();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Ожидает результат фрагмента и пробрасывает его ошибку с номером строки относительно начала файла
+     * @param future задача разбора фрагмента
+     * @param linesBefore число строк в предыдущих фрагментах
+     */
+    private static Statistics await(Future<Statistics> future, long linesBefore) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Анализ прерван", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LineTooLongException) {
+                throw ((LineTooLongException) cause).shiftedBy(linesBefore);
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private static Statistics analyzeRange(File inputFile, long start, long end, AnalysisOptions options,
+                                           LineSource source, boolean continuation) throws IOException {
+        if (options.isMemoryMapped()) {
+            return analyzeMapped(inputFile, start, end, options, source, continuation);
+        }
+        Statistics stats = newStatistics(options, continuation);
+        LineProcessor processor = new LineProcessor(stats, options, source);
+        try (
+                FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ);
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new RangeInputStream(channel, start, end), Charset.defaultCharset()))
+        ) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                processor.process(line);
+            }
+        }
+        processor.finish();
+        return stats;
+    }
+
+    private static Statistics analyzeMapped(File inputFile, long start, long end, AnalysisOptions options,
+                                            LineSource source, boolean continuation) throws IOException {
+        Statistics stats = newStatistics(options, continuation);
+        LineProcessor processor = new LineProcessor(stats, options, source);
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            new MappedLogReader(channel).read(start, end, processor);
+        }
+        processor.finish();
+        return stats;
+    }
+
+    /**
+     * Статистика фрагмента. Фрагмент-продолжение объединяется с предыдущими фрагментами по порядку,
+     * и его первые сессии хранятся до объединения: они могут продолжать сессии предыдущего фрагмента
+     * @param continuation фрагмент не первый
+     */
+    private static Statistics newStatistics(AnalysisOptions options, boolean continuation) {
+        Statistics stats = options.newStatistics();
+        if (continuation) {
+            stats.getSessions().keepHeads();
+        }
+        return stats;
+    }
+
+    /**
+     * Делит диапазон байтов файла на части, каждая из которых заканчивается сразу после '\n'
+     * @param inputFile входной файл
+     * @param from начало диапазона, совпадающее с началом строки
+     * @param to конец диапазона
+     * @param workers желаемое число фрагментов
+     * @return список пар [начало, конец)
+     */
+    static List<long[]> splitIntoRanges(File inputFile, long from, long to, int workers) throws IOException {
+        List<long[]> ranges = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(inputFile.toPath(), StandardOpenOption.READ)) {
+            long size = to - from;
+            int parts = (int) Math.max(1, Math.min(workers, size / MIN_CHUNK_BYTES));
+            long start = from;
+            for (int i = 1; i <= parts && start < to; i++) {
+                long end = i == parts ? to : nextLineStart(channel, Math.max(start, from + size * i / parts), to);
+                if (end > start) {
+                    ranges.add(new long[] {start, end});
+                }
+                start = end;
+            }
+        }
+        return ranges;
+    }
+
+    // Позиция сразу после ближайшего '\n', начиная с from
+    private static long nextLineStart(FileChannel channel, long from, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        long position = from;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // Поток байтов из диапазона [start, end) файла, читаемый позиционно
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            int toRead = (int) Math.min(len, end - position);
+            int read = channel.read(ByteBuffer.wrap(b, off, toRead), position);
+            if (read > 0) {
+                position += read;
+            }
+            return read;
+        }
+    }
+}
+
+// Обработка строк в одном потоке: проверка длины, разбор и добавление в статистику.
+// В терпимом режиме слишком длинные и неразобранные строки пропускаются без исключений.
+// При заданном окне времени строки вне окна и строки без времени не учитываются вовсе.
+class LineProcessor {
+    static final int MAX_LINE_LENGTH = 1024;
+
+    private final Statistics stats;
+    private final LogTokenizer tokenizer;
+    private final UserAgentCache userAgents;
+    private final MappedLogRecord mappedRecord;
+    private final LineRecord lineRecord;
+    // дата разбирается только для статистики времени, в том числе для счётчика неразобранных дат
+    private final boolean collectsTime;
+    private final AnalysisMetrics.Recorder metrics;
+    // null, если строки с ошибками прерывают анализ
+    private final RejectedLines rejected;
+    // файл или фрагмент, из которого идут строки; номера строк в выборке считаются от его начала
+    private final LineSource source;
+    // номер последней прочитанной строки, считая строки вне окна времени, которых нет в статистике
+    private long lines;
+    private final boolean timeFiltered;
+    private final long from;
+    private final long to;
+
+    LineProcessor(Statistics stats, AnalysisOptions options) {
+        this(stats, options, new LineSource(options.getInputPath(), 0));
+    }
+
+    LineProcessor(Statistics stats, AnalysisOptions options, LineSource source) {
+        this.stats = stats;
+        this.tokenizer = new LogTokenizer(options.getParseMode());
+        this.userAgents = options.newUserAgentCache();
+        this.mappedRecord = new MappedLogRecord(tokenizer, new StringPool(), userAgents);
+        this.lineRecord = new LineRecord(tokenizer, userAgents);
+        this.collectsTime = stats.collects(Statistics.Metric.TIME);
+        this.metrics = options.getMetrics().recorder(tokenizer, userAgents);
+        this.rejected = options.isTolerant() ? options.getRejectedLines() : null;
+        this.source = source;
+        this.lines = stats.getTotalLines();
+        this.timeFiltered = options.hasTimeRange();
+        this.from = options.getFrom();
+        this.to = options.getTo();
+    }
+
+    public void process(String line) {
+        lines++;
+        if (!checkLength(line.length())) {
+            skip(RejectedLines.Reason.TOO_LONG, line, line.length());
+            return;
+        }
+        boolean timed = metrics.sampleParse();
+        long start = timed ? System.nanoTime() : 0;
+        // строку, принятую LogTokenizer, читаем через ленивое представление, остальные - регулярным выражением
+        LogRecord record = lineRecord.parse(line) ? lineRecord : parseRejected(line);
+        if (record == null) {
+            stats.countLine();
+            skip(RejectedLines.Reason.BAD_FORMAT, line, line.length());
+            return;
+        }
+        if (timed) {
+            metrics.recordParse(System.nanoTime() - start);
+        }
+        if (outsideTimeRange(record)) {
+            return;
+        }
+        stats.countLine();
+        stats.addEntry(record);
+        metrics.recordLine(line.length() + 1, hasInvalidTimestamp(record));
+    }
+
+    private boolean outsideTimeRange(LogRecord record) {
+        if (!timeFiltered) {
+            return false;
+        }
+        long time = record.getEpochSecond();
+        return time == TimestampParser.INVALID || time < from || time >= to;
+    }
+
+    private boolean hasInvalidTimestamp(LogRecord record) {
+        return collectsTime && record.getEpochSecond() == TimestampParser.INVALID;
+    }
+
+    /**
+     * Обработка строки прямо в байтах буфера; длина проверяется по байтам
+     * @param buffer буфер с содержимым файла
+     * @param start начало строки
+     * @param end конец строки без перевода строки
+     */
+    public void process(ByteBuffer buffer, int start, int end) {
+        process(buffer, start, end, null);
+    }
+
+    /**
+     * Обработка строки в байтах буфера с индексом разделителей порции, в которой она лежит
+     * @param index индекс, построенный по тому же массиву, или null
+     */
+    public void process(ByteBuffer buffer, int start, int end, DelimiterIndex index) {
+        lines++;
+        if (!checkLength(end - start)) {
+            skip(RejectedLines.Reason.TOO_LONG, new ByteCharSequence().wrap(buffer, start, end - start), end - start);
+            return;
+        }
+        boolean timed = metrics.sampleParse();
+        long parseStart = timed ? System.nanoTime() : 0;
+        LogRecord record;
+        if (mappedRecord.parse(buffer, start, end, index)) {
+            record = mappedRecord;
+        } else {
+            // строку не принял LogTokenizer - разбираем регулярным выражением
+            String line = mappedRecord.line().toString();
+            record = parseRejected(line);
+            if (record == null) {
+                stats.countLine();
+                skip(RejectedLines.Reason.BAD_FORMAT, line, end - start);
+                return;
+            }
+        }
+        if (timed) {
+            metrics.recordParse(System.nanoTime() - parseStart);
+        }
+        if (outsideTimeRange(record)) {
+            return;
+        }
+        stats.countLine();
+        stats.addEntry(record);
+        metrics.recordLine(end - start + 1, hasInvalidTimestamp(record));
+    }
+
+    // Разбор регулярным выражением строки, которую не принял токенизатор;
+    // null - строка пропускается в терпимом режиме
+    private LogEntry parseRejected(String line) {
+        if (rejected != null) {
+            return LogEntry.tryParse(line, null, userAgents);
+        }
+        try {
+            return new LogEntry(line, null, userAgents);
+        } catch (IllegalArgumentException e) {
+            metrics.recordMalformed(line.length() + 1);
+            throw e;
+        }
+    }
+
+    // Завершение порции строк: накопленные счётчики кеша User-Agent переходят в статистику
+    public void finish() {
+        source.setLines(lines);
+        metrics.flush();
+        stats.countUserAgentCache(userAgents);
+        userAgents.resetCounters();
+        metrics.userAgentCountersReset();
+    }
+
+    /**
+     * Проверка длины строки; слишком длинная строка учитывается сразу, остальные - после разбора,
+     * когда известно, попадают ли они в окно времени
+     * @return false, если строка слишком длинная и пропущена в терпимом режиме
+     */
+    private boolean checkLength(int length) {
+        if (length <= MAX_LINE_LENGTH) {
+            return true;
+        }
+        stats.countLine();
+        if (rejected == null) {
+            throw new LineTooLongException(lines, source.getOrigin(), length);
+        }
+        return false;
+    }
+
+    private void skip(RejectedLines.Reason reason, CharSequence line, int length) {
+        metrics.recordSkipped(reason, length + 1);
+        rejected.reject(reason, source, lines, line);
+    }
+}
+
+// Файл или фрагмент файла, строки которого разбирает один LineProcessor, и число строк файла перед ним.
+// У фрагментов параллельного разбора это число известно только после разбора предыдущих фрагментов.
+// При окне --from/--to файл читается с начала окна, и строки считаются от него, а не от начала файла
+class LineSource {
+    // Число строк перед фрагментом ещё не известно
+    static final long UNKNOWN = -1;
+
+    private final String file;
+    // байт файла, от которого считаются строки
+    private final long origin;
+    private volatile long linesBefore;
+    // строк во фрагменте по завершении его разбора
+    private long lines;
+
+    LineSource(String file, long linesBefore) {
+        this(file, 0, linesBefore);
+    }
+
+    LineSource(String file, long origin, long linesBefore) {
+        this.file = file;
+        this.origin = origin;
+        this.linesBefore = linesBefore;
+    }
+
+    public void setLinesBefore(long linesBefore) { this.linesBefore = linesBefore; }
+    public void setLines(long lines) { this.lines = lines; }
+
+    public String getFile() { return file; }
+    public long getOrigin() { return origin; }
+    public long getLinesBefore() { return linesBefore; }
+    public long getLines() { return lines; }
+}
@@ -0,0 +1,159 @@
+package parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+
+/**
+ * Слежение за дописываемым лог-файлом, как tail -F.
+ * Файл остаётся открытым, запоминается позиция после последней целой строки, и при каждом опросе
+ * в ту же Statistics добавляются только новые строки. Ротация (другой файл под тем же именем)
+ * и усечение (размер меньше позиции) обнаруживаются по ключу файла и размеру, после чего
+ * чтение начинается с начала нового файла. Отчёт перезаписывается не чаще заданного периода
+ * и только если появились новые строки; вместе с ним сохраняется контрольная точка, если она задана,
+ * и при следующем запуске слежение продолжается с сохранённой позиции.
+ */
+class LogFollower {
+    // Период опроса файла
+    private static final long POLL_MILLIS = 1000;
+
+    // Запись отчёта по текущей статистике
+    interface ReportWriter {
+        void write(Statistics stats) throws IOException;
+    }
+
+    private final Path path;
+    private final AnalysisOptions options;
+    private final long reportIntervalMillis;
+    private final Checkpoint checkpoint;
+    private final Statistics stats;
+    private final LineProcessor processor;
+    private final OffsetLineReader reader;
+    // состояние контрольной точки, позиция из которого применяется при первом открытии файла
+    private Checkpoint.State resumeState;
+
+    private FileChannel channel;
+    private Object fileKey;
+    private long offset;
+
+    public LogFollower(File inputFile, AnalysisOptions options) throws IOException {
+        this.path = inputFile.toPath();
+        this.options = options;
+        this.reportIntervalMillis = options.getReportIntervalSeconds() * 1000L;
+        this.checkpoint = options.getCheckpointPath() == null ? null : new Checkpoint(Paths.get(options.getCheckpointPath()));
+        this.resumeState = checkpoint == null ? null : checkpoint.load();
+        this.stats = resumeState == null ? options.newStatistics() : resumeState.getStatistics();
+        this.processor = new LineProcessor(stats, options);
+        this.reader = new OffsetLineReader(processor);
+    }
+
+    /**
+     * Следит за файлом до прерывания потока
+     * @param reportWriter запись отчёта
+     */
+    public void run(ReportWriter reportWriter) throws IOException, InterruptedException {
+        System.out.println("Слежение за файлом, отчёт обновляется раз в "
+                + reportIntervalMillis / 1000 + " с; остановка - Ctrl+C");
+        long lastReport = 0;
+        long pendingLines = 0;
+        long pendingBytes = 0;
+        long pendingParseNanos = 0;
+        AnalysisMetrics.Reporter metricsReporter = options.getMetrics().startReporter(options);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                long linesBefore = stats.getTotalLines();
+                long parseStart = System.nanoTime();
+                long bytes = poll();
+                pendingParseNanos += System.nanoTime() - parseStart;
+                pendingLines += stats.getTotalLines() - linesBefore;
+                pendingBytes += bytes;
+
+                long now = System.currentTimeMillis();
+                if (pendingLines > 0 && now - lastReport >= reportIntervalMillis) {
+                    long reportStart = System.nanoTime();
+                    reportWriter.write(stats);
+                    long reportNanos = System.nanoTime() - reportStart;
+                    options.getMetrics().setStatisticsBytes(stats.estimatedBytes());
+                    if (options.isTolerant()) {
+                        options.getRejectedLines().writeSample();
+                    }
+                    if (checkpoint != null) {
+                        checkpoint.save(stats, offset, fileKey);
+                    }
+                    System.out.printf("Новых строк: %d (%d байт), разбор %.1f мс, отчёт %.1f мс, всего строк: %d%n",
+                            pendingLines, pendingBytes, pendingParseNanos / 1e6, reportNanos / 1e6,
+                            stats.getTotalLines());
+                    lastReport = now;
+                    pendingLines = 0;
+                    pendingBytes = 0;
+                    pendingParseNanos = 0;
+                }
+                if (bytes == 0) {
+                    Thread.sleep(Math.min(POLL_MILLIS, reportIntervalMillis));
+                }
+            }
+        } finally {
+            metricsReporter.close();
+            close();
+        }
+    }
+
+    /**
+     * Один опрос: проверка ротации и разбор всех новых целых строк
+     * @return число прочитанных байтов
+     */
+    long poll() throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            // файл переименован, а новый ещё не создан - дочитываем старый
+            return channel == null ? 0 : readAvailable();
+        }
+
+        long bytes = 0;
+        if (channel != null && !Objects.equals(fileKey, attributes.fileKey())) {
+            // ротация: дочитываем то, что успели дописать в старый файл
+            bytes += readAvailable();
+            System.out.println("Файл заменён, чтение с начала нового файла");
+            close();
+        } else if (channel != null && attributes.size() < offset) {
+            System.out.println("Файл усечён, чтение с начала");
+            close();
+        }
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.READ);
+            fileKey = attributes.fileKey();
+            offset = resumeState == null ? 0 : resumeState.resumeOffset(fileKey, channel.size());
+            resumeState = null;
+        }
+        return bytes + readAvailable();
+    }
+
+    // Разбор целых строк от запомненной позиции до текущего конца файла;
+    // незаконченная последняя строка будет прочитана при следующем опросе
+    private long readAvailable() throws IOException {
+        long start = offset;
+        offset = reader.readAll(channel, offset, false);
+        processor.finish();
+        return offset - start;
+    }
+
+    private void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    // Геттеры
+    public Statistics getStatistics() { return stats; }
+    public long getOffset() { return offset; }
+}
@@ -0,0 +1,361 @@
+package parser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Конвейер анализа из трёх ступеней: поток чтения набирает пакеты строк, потоки разбора
+ * превращают их в записи LogEntry, вызывающий поток добавляет записи в статистику.
+ * Ступени связаны ограниченными очередями; число пакетов в работе ограничено семафором,
+ * поэтому медленная ступень притормаживает чтение, а не накапливает память.
+ * Пакеты агрегируются строго в порядке чтения, и результат совпадает с последовательным проходом.
+ */
+class LogPipeline {
+    // пакет-признак конца чтения; его номер равен общему числу пакетов
+    private static final int END = -1;
+    // пакет-признак ошибки в потоке чтения или разбора
+    private static final int FAILED = -2;
+
+    private final AnalysisOptions options;
+    private final int parsers;
+    private final int batchSize;
+    private final BlockingQueue<Batch> lines;
+    private final BlockingQueue<Batch> records;
+    private final Semaphore inFlight;
+
+    private final Stage reading = new Stage("read", "чтение", 1);
+    private final Stage parsing;
+    private final Stage aggregation = new Stage("aggregate", "агрегирование", 1);
+
+    private final List<UserAgentCache> userAgentCaches = new ArrayList<>();
+    // null, если строки с ошибками прерывают анализ
+    private final RejectedLines rejected;
+    private final LineSource source;
+    private volatile Throwable failure;
+
+    // заполненность очередей, замеренная агрегатором перед каждым пакетом
+    private long queueSamples;
+    private long linesQueueTotal;
+    private long recordsQueueTotal;
+    private int linesQueueMax;
+    private int recordsQueueMax;
+
+    LogPipeline(AnalysisOptions options) {
+        this.options = options;
+        this.parsers = Math.max(1, options.getWorkers());
+        this.batchSize = options.getBatchSize();
+        this.lines = new ArrayBlockingQueue<>(options.getQueueDepth());
+        this.records = new ArrayBlockingQueue<>(options.getQueueDepth());
+        // обе очереди заполнены целиком и у каждого потока разбора по пакету в руках
+        this.inFlight = new Semaphore(2 * options.getQueueDepth() + parsers);
+        this.parsing = new Stage("parse", "разбор", parsers);
+        this.rejected = options.isTolerant() ? options.getRejectedLines() : null;
+        this.source = new LineSource(options.getInputPath(), 0);
+    }
+
+    /**
+     * Анализ строк из читателя; читатель закрывается вызывающим
+     * @param reader источник строк лога
+     * @return накопленная статистика
+     */
+    public Statistics analyze(BufferedReader reader) throws IOException {
+        System.out.println("Конвейер: потоков разбора " + parsers + ", пакет " + batchSize
+                + " строк, очередь " + options.getQueueDepth() + " пакетов");
+        long start = System.nanoTime();
+        options.getMetrics().setPipeline(this);
+        Thread readerThread = new Thread(() -> read(reader), "log-reader");
+        readerThread.setDaemon(true);
+        ExecutorService pool = Executors.newFixedThreadPool(parsers);
+        try {
+            readerThread.start();
+            for (int i = 0; i < parsers; i++) {
+                UserAgentCache cache = options.newUserAgentCache();
+                userAgentCaches.add(cache);
+                pool.execute(() -> parse(cache));
+            }
+            Statistics stats = aggregate();
+            printStages(System.nanoTime() - start);
+            return stats;
+        } finally {
+            readerThread.interrupt();
+            pool.shutdownNow();
+        }
+    }
+
+    // Ступень чтения: пакеты по batchSize строк с номером пакета и номером первой строки
+    private void read(BufferedReader reader) {
+        long sequence = 0;
+        long lineNumber = 0;
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                inFlight.acquire();
+                long readStart = System.nanoTime();
+                String[] batchLines = new String[batchSize];
+                int count = 0;
+                String line;
+                while (count < batchSize && (line = reader.readLine()) != null) {
+                    batchLines[count++] = line;
+                }
+                long readEnd = System.nanoTime();
+                if (count == 0) {
+                    inFlight.release();
+                    reading.record(readEnd - readStart, readStart - waitStart);
+                    lines.put(new Batch(END, sequence, null, 0));
+                    return;
+                }
+                lines.put(new Batch(sequence++, lineNumber, batchLines, count));
+                lineNumber += count;
+                reading.record(readEnd - readStart, readStart - waitStart + System.nanoTime() - readEnd);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    // Ступень разбора: каждый поток со своим токенизатором и кешем User-Agent
+    private void parse(UserAgentCache userAgents) {
+        LogTokenizer tokenizer = new LogTokenizer(options.getParseMode());
+        LineRecord lineRecord = new LineRecord(tokenizer, userAgents);
+        // в пакет копируются только поля собираемых групп показателей
+        Set<Statistics.Metric> collected = Statistics.Metric.withDependencies(options.getCollectedMetrics());
+        boolean collectsTime = collected.contains(Statistics.Metric.TIME);
+        AnalysisMetrics.Recorder metrics = options.getMetrics().recorder(tokenizer, userAgents);
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                Batch batch = lines.take();
+                if (batch.sequence == END) {
+                    metrics.flush();
+                    // признак конца нужен и остальным потокам разбора, и агрегатору
+                    lines.put(batch);
+                    records.put(batch);
+                    return;
+                }
+                long parseStart = System.nanoTime();
+                LogEntry[] entries = new LogEntry[batch.size];
+                for (int i = 0; i < batch.size; i++) {
+                    String line = batch.lines[i];
+                    long lineNumber = batch.firstLine + i + 1;
+                    if (line.length() > LineProcessor.MAX_LINE_LENGTH) {
+                        if (rejected == null) {
+                            throw new LineTooLongException(lineNumber, line.length());
+                        }
+                        metrics.recordSkipped(RejectedLines.Reason.TOO_LONG, line.length() + 1);
+                        rejected.reject(RejectedLines.Reason.TOO_LONG, source, lineNumber, line);
+                        continue;
+                    }
+                    boolean timed = metrics.sampleParse();
+                    long lineStart = timed ? System.nanoTime() : 0;
+                    LogEntry entry;
+                    if (lineRecord.parse(line)) {
+                        entry = new LogEntry(lineRecord, collected);
+                    } else if (rejected != null) {
+                        entry = LogEntry.tryParse(line, null, userAgents);
+                        if (entry == null) {
+                            metrics.recordSkipped(RejectedLines.Reason.BAD_FORMAT, line.length() + 1);
+                            rejected.reject(RejectedLines.Reason.BAD_FORMAT, source, lineNumber, line);
+                            continue;
+                        }
+                    } else {
+                        try {
+                            entry = new LogEntry(line, null, userAgents);
+                        } catch (IllegalArgumentException e) {
+                            metrics.recordMalformed(line.length() + 1);
+                            metrics.flush();
+                            throw e;
+                        }
+                    }
+                    if (timed) {
+                        metrics.recordParse(System.nanoTime() - lineStart);
+                    }
+                    entries[i] = entry;
+                    metrics.recordLine(line.length() + 1,
+                            collectsTime && entry.getEpochSecond() == TimestampParser.INVALID);
+                }
+                batch.entries = entries;
+                batch.lines = null;
+                long parseEnd = System.nanoTime();
+                records.put(batch);
+                parsing.record(parseEnd - parseStart, parseStart - waitStart + System.nanoTime() - parseEnd);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    // Ступень агрегирования: пакеты, пришедшие раньше своей очереди, ждут в таблице по номеру
+    private Statistics aggregate() throws IOException {
+        Statistics stats = options.newStatistics();
+        Map<Long, Batch> pending = new HashMap<>();
+        long next = 0;
+        long total = Long.MAX_VALUE;
+        // признак конца от каждого потока разбора: после него его метрики уже сброшены
+        int finishedParsers = 0;
+        try {
+            while (next < total || finishedParsers < parsers) {
+                sampleQueues();
+                long waitStart = System.nanoTime();
+                // ожидание с таймаутом: признак ошибки мог не поместиться в заполненную очередь
+                Batch batch = records.poll(100, TimeUnit.MILLISECONDS);
+                long waited = System.nanoTime() - waitStart;
+                if (failure != null) {
+                    throw rethrow(failure);
+                }
+                if (batch == null) {
+                    aggregation.record(0, waited);
+                    continue;
+                }
+                if (batch.sequence == END) {
+                    total = batch.firstLine;
+                    finishedParsers++;
+                    continue;
+                }
+                pending.put(batch.sequence, batch);
+                long addStart = System.nanoTime();
+                while ((batch = pending.remove(next)) != null) {
+                    for (LogEntry entry : batch.entries) {
+                        stats.countLine();
+                        // пропущенные в терпимом режиме строки учитываются только в числе строк
+                        if (entry != null) {
+                            stats.addEntry(entry);
+                        }
+                    }
+                    inFlight.release();
+                    next++;
+                }
+                aggregation.record(System.nanoTime() - addStart, waited);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Анализ прерван", e);
+        }
+        for (UserAgentCache cache : userAgentCaches) {
+            stats.countUserAgentCache(cache);
+        }
+        return stats;
+    }
+
+    private void fail(Throwable e) {
+        failure = e;
+        // агрегатор мог уже ждать пакет, поэтому признак ошибки кладётся без ожидания места
+        records.clear();
+        records.offer(new Batch(FAILED, 0, null, 0));
+    }
+
+    private static IOException rethrow(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        return new IOException(cause);
+    }
+
+    private void sampleQueues() {
+        int linesSize = lines.size();
+        int recordsSize = records.size();
+        queueSamples++;
+        linesQueueTotal += linesSize;
+        recordsQueueTotal += recordsSize;
+        linesQueueMax = Math.max(linesQueueMax, linesSize);
+        recordsQueueMax = Math.max(recordsQueueMax, recordsSize);
+    }
+
+    /**
+     * Загрузка ступеней: доля времени работы от времени конвейера на каждый поток ступени.
+     * Ступень с загрузкой около 100% и пустой очередью после неё - узкое место.
+     */
+    private void printStages(long wallNanos) {
+        for (Stage stage : getStages()) {
+            System.out.printf("Ступень %s (%d): работа %d мс, ожидание %d мс, загрузка %.1f%%, пакетов %d%n",
+                    stage.getName(), stage.getThreads(), stage.getBusyNanos() / 1_000_000,
+                    stage.getWaitNanos() / 1_000_000, stage.getUtilization(wallNanos) * 100, stage.getBatches());
+        }
+        System.out.printf("Очередь строк: в среднем %.1f, максимум %d из %d%n",
+                getAverageLinesQueueDepth(), linesQueueMax, options.getQueueDepth());
+        System.out.printf("Очередь записей: в среднем %.1f, максимум %d из %d%n",
+                getAverageRecordsQueueDepth(), recordsQueueMax, options.getQueueDepth());
+    }
+
+    public List<Stage> getStages() { return List.of(reading, parsing, aggregation); }
+    public double getAverageLinesQueueDepth() { return queueSamples == 0 ? 0 : (double) linesQueueTotal / queueSamples; }
+    public double getAverageRecordsQueueDepth() { return queueSamples == 0 ? 0 : (double) recordsQueueTotal / queueSamples; }
+    public int getMaxLinesQueueDepth() { return linesQueueMax; }
+    public int getMaxRecordsQueueDepth() { return recordsQueueMax; }
+    // текущая заполненность очередей; безопасно читать из любого потока
+    public int getLinesQueueSize() { return lines.size(); }
+    public int getRecordsQueueSize() { return records.size(); }
+
+    // Пакет строк, после разбора - пакет записей
+    private static final class Batch {
+        final long sequence;
+        // номер первой строки пакета от начала входа; у признака конца - число пакетов
+        final long firstLine;
+        String[] lines;
+        final int size;
+        LogEntry[] entries;
+
+        Batch(long sequence, long firstLine, String[] lines, int size) {
+            this.sequence = sequence;
+            this.firstLine = firstLine;
+            this.lines = lines;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Время работы и ожидания на очередях одной ступени, суммарно по её потокам
+     */
+    static final class Stage {
+        // имя ступени в метриках
+        private final String id;
+        private final String name;
+        private final int threads;
+        private final LongAdder busyNanos = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder batches = new LongAdder();
+
+        Stage(String id, String name, int threads) {
+            this.id = id;
+            this.name = name;
+            this.threads = threads;
+        }
+
+        void record(long busy, long wait) {
+            busyNanos.add(busy);
+            waitNanos.add(wait);
+            if (busy > 0) {
+                batches.increment();
+            }
+        }
+
+        public double getUtilization(long wallNanos) {
+            return wallNanos <= 0 ? 0 : (double) busyNanos.sum() / wallNanos / threads;
+        }
+
+        public String getId() { return id; }
+        public String getName() { return name; }
+        public int getThreads() { return threads; }
+        public long getBusyNanos() { return busyNanos.sum(); }
+        public long getWaitNanos() { return waitNanos.sum(); }
+        public long getBatches() { return batches.sum(); }
+    }
+}
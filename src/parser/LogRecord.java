@@ -0,0 +1,131 @@
+package parser;
+
+/**
+ * Запись лога в том виде, в котором её потребляет Statistics.
+ * Реализуется как самостоятельным LogEntry, так и переиспользуемыми представлениями строки,
+ * которые декодируют поля только по запросу.
+ */
+interface LogRecord {
+    String getIpAddress();
+
+    /**
+     * Время запроса
+     * @return секунды эпохи UTC с учётом часового пояса строки или TimestampParser.INVALID
+     */
+    long getEpochSecond();
+
+    String getPath();
+    int getResponseCode();
+    int getDataSize();
+    String getReferer();
+    UserAgent getUserAgent();
+
+    /**
+     * IPv4-адрес клиента в виде 32-битного числа
+     * @return адрес как беззнаковое число или -1, если адрес не в каноническом виде IPv4
+     */
+    default long getIPv4() {
+        String ip = getIpAddress();
+        return parseIPv4(ip, 0, ip.length());
+    }
+
+    /**
+     * Домен сайта, с которого пришёл запрос
+     * @return доменное имя или null, если referer отсутствует
+     */
+    default String getRefererDomain() {
+        String referer = getReferer();
+        if (referer == null || referer.equals("-")) {
+            return null;
+        }
+        int start = domainStart(referer, 0, referer.length());
+        return referer.substring(start, domainEnd(referer, start, referer.length()));
+    }
+
+    /**
+     * Начало домена в referer: пропускаются протокол http(s):// и префикс www.
+     * @param referer текст, содержащий referer
+     * @param from начало referer
+     * @param to конец referer
+     * @return индекс первого символа домена
+     */
+    static int domainStart(CharSequence referer, int from, int to) {
+        int i = from;
+        if (startsWith(referer, i, to, "http://")) {
+            i += 7;
+        } else if (startsWith(referer, i, to, "https://")) {
+            i += 8;
+        }
+        if (startsWith(referer, i, to, "www.")) {
+            i += 4;
+        }
+        return i;
+    }
+
+    /**
+     * Конец домена в referer: до пути и номера порта
+     * @param referer текст, содержащий referer
+     * @param start начало домена
+     * @param to конец referer
+     * @return индекс после последнего символа домена
+     */
+    static int domainEnd(CharSequence referer, int start, int to) {
+        int end = to;
+        for (int i = start; i < to; i++) {
+            if (referer.charAt(i) == '/') {
+                end = i;
+                break;
+            }
+        }
+        for (int i = start; i < end; i++) {
+            if (referer.charAt(i) == ':') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Разбор IPv4-адреса вида a.b.c.d без ведущих нулей, так что каждому числу
+     * соответствует ровно одна строка
+     * @param s текст, содержащий адрес
+     * @param from начало адреса
+     * @param to конец адреса
+     * @return адрес как беззнаковое число или -1
+     */
+    static long parseIPv4(CharSequence s, int from, int to) {
+        long address = 0;
+        int i = from;
+        for (int octet = 0; octet < 4; octet++) {
+            if (octet > 0) {
+                if (i >= to || s.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+            int start = i;
+            int value = 0;
+            while (i < to && i - start < 3 && s.charAt(i) >= '0' && s.charAt(i) <= '9') {
+                value = value * 10 + (s.charAt(i) - '0');
+                i++;
+            }
+            if (i == start || value > 255 || (s.charAt(start) == '0' && i - start > 1)) {
+                return -1;
+            }
+            address = (address << 8) | value;
+        }
+        return i == to ? address : -1;
+    }
+
+    private static boolean startsWith(CharSequence s, int i, int to, String prefix) {
+        if (to - i < prefix.length()) {
+            return false;
+        }
+        for (int k = 0; k < prefix.length(); k++) {
+            if (s.charAt(i + k) != prefix.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,127 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Поиск в лог-файле, упорядоченном по времени, позиции первой строки не раньше заданного момента.
+ * Двоичный поиск идёт по байтовым позициям: от середины диапазона читается небольшое окно,
+ * начало выравнивается на следующую строку и берётся время [dd/MMM/yyyy:HH:mm:ss Z] первой строки,
+ * в которой оно разбирается. На файл в десятки гигабайт уходит несколько десятков коротких чтений.
+ * Строки без времени пропускаются. Строки могут идти не строго по порядку: если строка отстаёт
+ * от любой предыдущей не больше чем на skew секунд, поиск момента from - skew не пропустит
+ * ни одной строки со временем не раньше from.
+ */
+class LogSeeker {
+    // Размер окна одного чтения
+    private static final int PROBE_BYTES = 16 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final ByteBuffer window = ByteBuffer.allocate(PROBE_BYTES);
+    private final ByteCharSequence text = new ByteCharSequence();
+    private int reads;
+
+    LogSeeker(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /**
+     * Начало первой строки, время которой не меньше заданного
+     * @param epochSecond момент в секундах эпохи
+     * @return позиция начала строки или размер файла, если таких строк нет
+     */
+    public long lineStartAtOrAfter(long epochSecond) throws IOException {
+        // все строки со временем, начинающиеся до low, раньше искомого момента; low - начало строки
+        long low = 0;
+        long high = size;
+        while (high - low > PROBE_BYTES) {
+            long middle = low + (high - low) / 2;
+            long[] line = firstTimedLine(middle, high, Long.MIN_VALUE);
+            if (line == null || line[1] >= epochSecond) {
+                high = middle;
+            } else {
+                low = line[0];
+            }
+        }
+        long[] line = firstTimedLine(low, size, epochSecond);
+        return line == null ? size : line[0];
+    }
+
+    /**
+     * Первая строка с разбираемым временем не раньше minTime, начинающаяся с позиции from или после неё
+     * @param from позиция; если строка начинается раньше неё, поиск идёт со следующей строки
+     * @param limit строки, начинающиеся с этой позиции и дальше, не рассматриваются
+     * @param minTime строки с меньшим временем пропускаются
+     * @return пара {начало строки, время} или null
+     */
+    private long[] firstTimedLine(long from, long limit, long minTime) throws IOException {
+        // чтение начинается на байт раньше: если там перевод строки, с from начинается строка,
+        // иначе строка, начатая до from, пропускается до ближайшего перевода строки
+        boolean skipping = from > 0;
+        long position = skipping ? from - 1 : from;
+        long lineStart = position;
+        while (position < size && lineStart < limit) {
+            window.clear();
+            int read = channel.read(window, position);
+            reads++;
+            if (read <= 0) {
+                break;
+            }
+            int start = (int) (lineStart - position);
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) != '\n') {
+                    continue;
+                }
+                if (!skipping) {
+                    long time = timeOf(start, i);
+                    if (time != TimestampParser.INVALID && time >= minTime) {
+                        return new long[] {lineStart, time};
+                    }
+                }
+                skipping = false;
+                start = i + 1;
+                lineStart = position + start;
+                if (lineStart >= limit) {
+                    return null;
+                }
+            }
+            if (position + read >= size && !skipping && start < read) {
+                // последняя строка файла без перевода строки
+                long time = timeOf(start, read);
+                return time != TimestampParser.INVALID && time >= minTime ? new long[] {lineStart, time} : null;
+            }
+            // незаконченная строка перечитывается со своего начала; строка длиннее окна пропускается
+            if (start > 0) {
+                position += start;
+            } else {
+                position += read;
+                skipping = true;
+            }
+        }
+        return null;
+    }
+
+    // Время строки [start, end) окна по полю в квадратных скобках
+    private long timeOf(int start, int end) {
+        text.wrap(window, start, end - start);
+        int open = indexOf(text, '[', 0);
+        int close = open < 0 ? -1 : indexOf(text, ']', open + 1);
+        return close < 0 ? TimestampParser.INVALID : TimestampParser.decode(text, open + 1, close);
+    }
+
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Число чтений файла с начала работы
+    public int getReads() { return reads; }
+    public long getSize() { return size; }
+}
@@ -0,0 +1,422 @@
+package parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Колоночное хранилище разобранных строк лога для повторных запросов без повторного разбора.
+ * Строки пишутся блоками по BLOCK_ROWS; внутри блока каждое поле лежит отдельной колонкой:
+ * время, код ответа, размер, номера IP и пути в словарях, браузер, ОС и признак бота.
+ * После блоков идёт разреженный индекс: смещение каждого блока и минимумы и максимумы его колонок,
+ * по которым запрос пропускает блоки целиком, затем словари IP и путей и концевик со смещениями.
+ * Блоки читаются отображением файла в память, только те, что могут содержать подходящие строки.
+ */
+class LogStore implements AutoCloseable {
+    private static final int MAGIC = 0x4C475354; // "LGST"
+    private static final int VERSION = 1;
+    static final int BLOCK_ROWS = 16_384;
+    // байт на строку во всех колонках: время 8, код 2, размер 4, IP 4, путь 4, браузер, ОС и бот по 1
+    private static final int ROW_BYTES = 25;
+    // запись индекса: смещение, строки, границы времени, кода, размера, номеров IP и пути
+    private static final int INDEX_ENTRY_BYTES = 8 + 4 + 8 + 8 + 2 + 2 + 4 * 6;
+    // концевик: смещения индекса и словарей, число строк, блоков, строк в блоке, версия и сигнатура
+    private static final int TRAILER_BYTES = 8 + 8 + 8 + 4 + 4 + 4 + 4;
+
+    // Сводка блока: смещение, число строк и границы значений колонок
+    static final class Block {
+        private final long offset;
+        private final int rows;
+        private final long minTime;
+        private final long maxTime;
+        private final int minStatus;
+        private final int maxStatus;
+        private final int minSize;
+        private final int maxSize;
+        private final int minIp;
+        private final int maxIp;
+        private final int minPath;
+        private final int maxPath;
+
+        Block(long offset, int rows, long minTime, long maxTime, int minStatus, int maxStatus,
+              int minSize, int maxSize, int minIp, int maxIp, int minPath, int maxPath) {
+            this.offset = offset;
+            this.rows = rows;
+            this.minTime = minTime;
+            this.maxTime = maxTime;
+            this.minStatus = minStatus;
+            this.maxStatus = maxStatus;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.minIp = minIp;
+            this.maxIp = maxIp;
+            this.minPath = minPath;
+            this.maxPath = maxPath;
+        }
+
+        public int getRows() { return rows; }
+        // границы времени по строкам с разобранным временем; без них minTime > maxTime
+        public long getMinTime() { return minTime; }
+        public long getMaxTime() { return maxTime; }
+        public int getMinStatus() { return minStatus; }
+        public int getMaxStatus() { return maxStatus; }
+        public int getMinSize() { return minSize; }
+        public int getMaxSize() { return maxSize; }
+        public int getMinIp() { return minIp; }
+        public int getMaxIp() { return maxIp; }
+        public int getMinPath() { return minPath; }
+        public int getMaxPath() { return maxPath; }
+    }
+
+    // Колонки одного блока поверх отображённой в память области файла
+    static final class Columns {
+        private final MappedByteBuffer buffer;
+        private final int rows;
+
+        Columns(MappedByteBuffer buffer, int rows) {
+            this.buffer = buffer;
+            this.rows = rows;
+        }
+
+        public int rows() { return rows; }
+        public long time(int row) { return buffer.getLong(row * 8); }
+        public int status(int row) { return buffer.getShort(rows * 8 + row * 2); }
+        public int size(int row) { return buffer.getInt(rows * 10 + row * 4); }
+        public int ip(int row) { return buffer.getInt(rows * 14 + row * 4); }
+        public int path(int row) { return buffer.getInt(rows * 18 + row * 4); }
+        public int browser(int row) { return buffer.get(rows * 22 + row); }
+        public int os(int row) { return buffer.get(rows * 23 + row); }
+        public boolean bot(int row) { return buffer.get(rows * 24 + row) != 0; }
+    }
+
+    private final FileChannel channel;
+    private final List<Block> blocks;
+    private final Dictionary addresses;
+    private final Dictionary paths;
+    private final long rows;
+    // блоки идут по неубыванию времени, и первый подходящий блок ищется двоичным поиском
+    private final boolean sortedByTime;
+
+    private LogStore(FileChannel channel, List<Block> blocks, Dictionary addresses, Dictionary paths, long rows) {
+        this.channel = channel;
+        this.blocks = blocks;
+        this.addresses = addresses;
+        this.paths = paths;
+        this.rows = rows;
+        boolean sorted = true;
+        long previousMax = Long.MIN_VALUE;
+        for (Block block : blocks) {
+            if (block.minTime > block.maxTime) {
+                continue;
+            }
+            sorted &= block.minTime >= previousMax;
+            previousMax = block.maxTime;
+        }
+        this.sortedByTime = sorted;
+    }
+
+    /**
+     * Открытие хранилища: в память читаются только индекс и словари
+     * @param path файл хранилища
+     */
+    public static LogStore open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer trailer = ByteBuffer.allocate(TRAILER_BYTES);
+            if (size < TRAILER_BYTES + 8 || channel.read(trailer, size - TRAILER_BYTES) != TRAILER_BYTES) {
+                throw new IOException("Файл не является хранилищем лога: " + path);
+            }
+            trailer.flip();
+            long indexOffset = trailer.getLong();
+            long dictionariesOffset = trailer.getLong();
+            long rows = trailer.getLong();
+            int blockCount = trailer.getInt();
+            trailer.getInt(); // строк в блоке при записи
+            int version = trailer.getInt();
+            if (trailer.getInt() != MAGIC || version != VERSION) {
+                throw new IOException("Неподдерживаемый формат хранилища: " + path);
+            }
+
+            DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(indexOffset)), 1 << 16));
+            List<Block> blocks = new ArrayList<>(blockCount);
+            for (int i = 0; i < blockCount; i++) {
+                blocks.add(new Block(in.readLong(), in.readInt(), in.readLong(), in.readLong(),
+                        in.readShort(), in.readShort(), in.readInt(), in.readInt(),
+                        in.readInt(), in.readInt(), in.readInt(), in.readInt()));
+            }
+            in = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel.position(dictionariesOffset)), 1 << 16));
+            Dictionary addresses = new Dictionary();
+            addresses.readFrom(in);
+            Dictionary paths = new Dictionary();
+            paths.readFrom(in);
+            return new LogStore(channel, blocks, addresses, paths, rows);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Индексы блоков, которые могут содержать строки из диапазона времени [from, to)
+     * @param from начало, секунды эпохи; Long.MIN_VALUE - без нижней границы
+     * @param to конец, секунды эпохи; Long.MAX_VALUE - без верхней границы
+     */
+    public List<Integer> blocksInTimeRange(long from, long to) {
+        int first = 0;
+        if (sortedByTime && from != Long.MIN_VALUE) {
+            // первый блок, который кончается не раньше from; блоки без времени поиск не сдвигают
+            int low = 0;
+            int high = blocks.size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                Block block = blocks.get(middle);
+                if (block.minTime <= block.maxTime && block.maxTime < from) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            first = low;
+        }
+        List<Integer> result = new ArrayList<>();
+        for (int i = first; i < blocks.size(); i++) {
+            Block block = blocks.get(i);
+            if (block.minTime > block.maxTime || block.maxTime < from) {
+                continue;
+            }
+            if (block.minTime >= to) {
+                if (sortedByTime) {
+                    break;
+                }
+                continue;
+            }
+            result.add(i);
+        }
+        return result;
+    }
+
+    /**
+     * Колонки блока, отображённые в память
+     * @param index номер блока
+     */
+    public Columns columns(int index) throws IOException {
+        Block block = blocks.get(index);
+        return new Columns(channel.map(FileChannel.MapMode.READ_ONLY, block.offset, (long) block.rows * ROW_BYTES),
+                block.rows);
+    }
+
+    public List<Block> getBlocks() { return blocks; }
+    public Dictionary getAddresses() { return addresses; }
+    public Dictionary getPaths() { return paths; }
+    public long getRows() { return rows; }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Однократная загрузка входа из параметров запуска в хранилище: разбор всех файлов
+     * по порядку, в том числе сжатых gzip. Файл пишется рядом во временный и заменяет прежний
+     * одним переименованием.
+     * @param options параметры анализа: вход, режим разбора и терпимость к неразобранным строкам
+     * @param path файл хранилища
+     * @return число записанных строк
+     */
+    public static long ingest(AnalysisOptions options, Path path) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long rows;
+        try (Writer writer = new Writer(temporary)) {
+            LogTokenizer tokenizer = new LogTokenizer(options.getParseMode());
+            UserAgentCache userAgents = options.newUserAgentCache();
+            for (File file : BatchAnalyzer.resolveInputs(options.getInputPath())) {
+                InputStream input = BatchAnalyzer.isGzip(file)
+                        ? new GZIPInputStream(new FileInputStream(file), 1 << 16) : new FileInputStream(file);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, Charset.defaultCharset()))) {
+                    String line;
+                    long lineNumber = 0;
+                    while ((line = reader.readLine()) != null) {
+                        lineNumber++;
+                        if (line.length() > LineProcessor.MAX_LINE_LENGTH) {
+                            if (!options.isTolerant()) {
+                                throw new LineTooLongException(lineNumber, line.length());
+                            }
+                            writer.skipped++;
+                            continue;
+                        }
+                        LogEntry entry = options.isTolerant()
+                                ? LogEntry.tryParse(line, tokenizer, userAgents)
+                                : new LogEntry(line, tokenizer, userAgents);
+                        if (entry == null) {
+                            writer.skipped++;
+                            continue;
+                        }
+                        writer.add(entry);
+                    }
+                }
+            }
+            rows = writer.finish();
+            if (writer.skipped > 0) {
+                System.out.println("Пропущено строк: " + writer.skipped);
+            }
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows;
+    }
+
+    // Запись хранилища: строки копятся в колонках текущего блока и сбрасываются блоком целиком
+    static final class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private final Dictionary addresses = new Dictionary();
+        private final Dictionary paths = new Dictionary();
+        private final List<Block> blocks = new ArrayList<>();
+        private final long[] times = new long[BLOCK_ROWS];
+        private final short[] statuses = new short[BLOCK_ROWS];
+        private final int[] sizes = new int[BLOCK_ROWS];
+        private final int[] ips = new int[BLOCK_ROWS];
+        private final int[] pathIds = new int[BLOCK_ROWS];
+        private final byte[] browsers = new byte[BLOCK_ROWS];
+        private final byte[] systems = new byte[BLOCK_ROWS];
+        private final byte[] bots = new byte[BLOCK_ROWS];
+        private final ByteBuffer block = ByteBuffer.allocate(BLOCK_ROWS * ROW_BYTES);
+        private int filled;
+        private long position;
+        private long rows;
+        private long skipped;
+
+        Writer(Path path) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = 8;
+        }
+
+        public void add(LogRecord record) throws IOException {
+            long ipv4 = record.getIPv4();
+            times[filled] = record.getEpochSecond();
+            statuses[filled] = (short) record.getResponseCode();
+            sizes[filled] = record.getDataSize();
+            ips[filled] = ipv4 >= 0 ? addresses.idOfIPv4(ipv4) : addresses.id(record.getIpAddress());
+            pathIds[filled] = paths.id(record.getPath());
+            UserAgent userAgent = record.getUserAgent();
+            browsers[filled] = (byte) userAgent.getBrowserType().ordinal();
+            systems[filled] = (byte) userAgent.getOs().ordinal();
+            bots[filled] = (byte) (userAgent.isBot() ? 1 : 0);
+            if (++filled == BLOCK_ROWS) {
+                flushBlock();
+            }
+        }
+
+        private void flushBlock() throws IOException {
+            if (filled == 0) {
+                return;
+            }
+            long minTime = Long.MAX_VALUE;
+            long maxTime = Long.MIN_VALUE;
+            int minStatus = Integer.MAX_VALUE;
+            int maxStatus = Integer.MIN_VALUE;
+            int minSize = Integer.MAX_VALUE;
+            int maxSize = Integer.MIN_VALUE;
+            int minIp = Integer.MAX_VALUE;
+            int maxIp = Integer.MIN_VALUE;
+            int minPath = Integer.MAX_VALUE;
+            int maxPath = Integer.MIN_VALUE;
+            block.clear();
+            for (int i = 0; i < filled; i++) {
+                block.putLong(times[i]);
+                if (times[i] != TimestampParser.INVALID) {
+                    minTime = Math.min(minTime, times[i]);
+                    maxTime = Math.max(maxTime, times[i]);
+                }
+            }
+            for (int i = 0; i < filled; i++) {
+                block.putShort(statuses[i]);
+                minStatus = Math.min(minStatus, statuses[i]);
+                maxStatus = Math.max(maxStatus, statuses[i]);
+            }
+            for (int i = 0; i < filled; i++) {
+                block.putInt(sizes[i]);
+                minSize = Math.min(minSize, sizes[i]);
+                maxSize = Math.max(maxSize, sizes[i]);
+            }
+            for (int i = 0; i < filled; i++) {
+                block.putInt(ips[i]);
+                minIp = Math.min(minIp, ips[i]);
+                maxIp = Math.max(maxIp, ips[i]);
+            }
+            for (int i = 0; i < filled; i++) {
+                block.putInt(pathIds[i]);
+                minPath = Math.min(minPath, pathIds[i]);
+                maxPath = Math.max(maxPath, pathIds[i]);
+            }
+            block.put(browsers, 0, filled).put(systems, 0, filled).put(bots, 0, filled);
+            out.write(block.array(), 0, block.position());
+            blocks.add(new Block(position, filled, minTime, maxTime, minStatus, maxStatus,
+                    minSize, maxSize, minIp, maxIp, minPath, maxPath));
+            position += block.position();
+            rows += filled;
+            filled = 0;
+        }
+
+        /**
+         * Запись последнего блока, индекса, словарей и концевика
+         * @return число записанных строк
+         */
+        public long finish() throws IOException {
+            flushBlock();
+            long indexOffset = position;
+            for (Block summary : blocks) {
+                out.writeLong(summary.offset);
+                out.writeInt(summary.rows);
+                out.writeLong(summary.minTime);
+                out.writeLong(summary.maxTime);
+                out.writeShort(summary.minStatus);
+                out.writeShort(summary.maxStatus);
+                out.writeInt(summary.minSize);
+                out.writeInt(summary.maxSize);
+                out.writeInt(summary.minIp);
+                out.writeInt(summary.maxIp);
+                out.writeInt(summary.minPath);
+                out.writeInt(summary.maxPath);
+            }
+            long dictionariesOffset = indexOffset + (long) blocks.size() * INDEX_ENTRY_BYTES;
+            addresses.writeTo(out);
+            paths.writeTo(out);
+            out.writeLong(indexOffset);
+            out.writeLong(dictionariesOffset);
+            out.writeLong(rows);
+            out.writeInt(blocks.size());
+            out.writeInt(BLOCK_ROWS);
+            out.writeInt(VERSION);
+            out.writeInt(MAGIC);
+            return rows;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
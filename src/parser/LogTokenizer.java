@@ -0,0 +1,407 @@
+package parser;
+
+/**
+ * Однопроходный разбор строки лога в формате combined без регулярных выражений.
+ * Границы полей находятся по индексам, промежуточные строки не создаются:
+ * код ответа и размер сразу переводятся в числа, метод сравнивается посимвольно.
+ * Экземпляр хранит границы полей последней разобранной строки, поэтому
+ * переиспользуется между строками и не потокобезопасен.
+ */
+class LogTokenizer {
+
+    // Режим разбора
+    enum Mode {
+        // ровно тот формат, который принимает регулярное выражение LogEntry
+        STRICT,
+        // допускает произвольные ident/user, запрос без протокола, "-" вместо размера,
+        // экранированные кавычки, отсутствие referer/User-Agent и хвост после User-Agent
+        LENIENT
+    }
+
+    // Поля строки, границы которых запоминает разборщик
+    enum Field {
+        IP, TIMESTAMP, METHOD, PATH, REFERER, USER_AGENT
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final HttpMethod[] METHODS = HttpMethod.values();
+
+    private final Mode mode;
+    private final int[] starts = new int[FIELDS.length];
+    private final int[] ends = new int[FIELDS.length];
+    private final TimestampParser timestamps = new TimestampParser();
+    private CharSequence line;
+    // индекс разделителей порции, в которой лежит строка, и начало строки в порции; null - без индекса
+    private DelimiterIndex index;
+    private int base;
+    private int responseCode;
+    private int dataSize;
+    private int number;
+    // строки, не принятые разборщиком за всё время его работы
+    private long rejectedLines;
+
+    public LogTokenizer(Mode mode) {
+        this.mode = mode;
+    }
+
+    public Mode getMode() { return mode; }
+
+    /**
+     * Разбирает строку и запоминает границы полей
+     * @param line строка лога
+     * @return true, если строка соответствует формату текущего режима
+     */
+    public boolean tokenize(CharSequence line) {
+        return tokenize(line, null, 0);
+    }
+
+    /**
+     * Разбирает строку, переходя по индексу разделителей вместо просмотра каждого символа полей.
+     * Принимаются ровно те же строки и с теми же границами полей, что и без индекса.
+     * @param line строка лога
+     * @param index индекс порции, в которой лежит строка, или null
+     * @param base позиция начала строки в порции
+     * @return true, если строка соответствует формату текущего режима
+     */
+    public boolean tokenize(CharSequence line, DelimiterIndex index, int base) {
+        this.line = line;
+        this.index = index;
+        this.base = base;
+        boolean parsed = mode == Mode.STRICT ? tokenizeStrict(line) : tokenizeLenient(line);
+        if (!parsed) {
+            rejectedLines++;
+        }
+        return parsed;
+    }
+
+    private boolean tokenizeStrict(CharSequence s) {
+        int n = s.length();
+
+        // IP: непробельные символы до первого пробела, затем " - - ["
+        int i = skipNonWhitespace(s, 0, n);
+        if (i == 0 || !matches(s, i, n, " - - [")) {
+            return false;
+        }
+        mark(Field.IP, 0, i);
+        i += 6;
+
+        // Время: до первой ']', за которой идёт ' "'
+        int start = i;
+        while ((i = nextDelimiter(i, n)) < n && s.charAt(i) != ']') {
+            if (isLineTerminator(s.charAt(i))) {
+                return false;
+            }
+            i++;
+        }
+        if (i == start || !matches(s, i, n, "] \"")) {
+            return false;
+        }
+        mark(Field.TIMESTAMP, start, i);
+        i += 3;
+
+        // Метод и путь: непробельные токены, разделённые одним пробелом
+        start = i;
+        i = skipNonWhitespace(s, i, n);
+        if (i == start || i >= n || s.charAt(i) != ' ') {
+            return false;
+        }
+        mark(Field.METHOD, start, i);
+        start = ++i;
+        i = skipNonWhitespace(s, i, n);
+        if (i == start || !matches(s, i, n, " HTTP/")) {
+            return false;
+        }
+        mark(Field.PATH, start, i);
+        i += 6;
+
+        // Версия протокола: цифра '.' цифра
+        if (i + 5 > n || !isDigit(s.charAt(i)) || s.charAt(i + 1) != '.' || !isDigit(s.charAt(i + 2))
+                || s.charAt(i + 3) != '"' || s.charAt(i + 4) != ' ') {
+            return false;
+        }
+        i += 5;
+
+        // Код ответа и размер
+        i = parseNumber(s, i, n);
+        if (i < 0 || i >= n || s.charAt(i) != ' ') {
+            return false;
+        }
+        responseCode = number;
+        i = parseNumber(s, i + 1, n);
+        if (i < 0 || !matches(s, i, n, " \"")) {
+            return false;
+        }
+        dataSize = number;
+        i += 2;
+
+        // Referer и User-Agent: любые символы, кроме кавычек
+        start = i;
+        i = indexOf(s, '"', i, n);
+        if (i < 0 || !matches(s, i, n, "\" \"")) {
+            return false;
+        }
+        mark(Field.REFERER, start, i);
+        start = i + 3;
+        i = indexOf(s, '"', start, n);
+        if (i != n - 1) {
+            return false;
+        }
+        mark(Field.USER_AGENT, start, i);
+        return true;
+    }
+
+    private boolean tokenizeLenient(CharSequence s) {
+        int n = s.length();
+
+        // IP, ident и user: три токена через пробелы
+        int i = skipNonWhitespace(s, 0, n);
+        if (i == 0) {
+            return false;
+        }
+        mark(Field.IP, 0, i);
+        for (int token = 0; token < 2; token++) {
+            i = skipSpaces(s, i, n);
+            int start = i;
+            i = skipNonWhitespace(s, i, n);
+            if (i == start) {
+                return false;
+            }
+        }
+
+        // Время в квадратных скобках
+        i = skipSpaces(s, i, n);
+        if (i >= n || s.charAt(i) != '[') {
+            return false;
+        }
+        int start = ++i;
+        i = indexOf(s, ']', i, n);
+        if (i <= start) {
+            return false;
+        }
+        mark(Field.TIMESTAMP, start, i);
+        i = skipSpaces(s, i + 1, n);
+
+        // Строка запроса: метод, путь и необязательный протокол
+        if (i >= n || s.charAt(i) != '"') {
+            return false;
+        }
+        int requestEnd = closingQuote(s, i + 1, n);
+        if (requestEnd < 0) {
+            return false;
+        }
+        start = i + 1;
+        i = skipNonWhitespace(s, start, requestEnd);
+        if (i == start) {
+            return false;
+        }
+        mark(Field.METHOD, start, i);
+        start = skipSpaces(s, i, requestEnd);
+        i = skipNonWhitespace(s, start, requestEnd);
+        if (i == start) {
+            return false;
+        }
+        mark(Field.PATH, start, i);
+
+        // Код ответа и размер ("-" означает пустой ответ)
+        i = skipSpaces(s, requestEnd + 1, n);
+        i = parseNumber(s, i, n);
+        if (i < 0) {
+            return false;
+        }
+        responseCode = number;
+        i = skipSpaces(s, i, n);
+        if (i < n && s.charAt(i) == '-') {
+            dataSize = 0;
+            i++;
+        } else {
+            i = parseNumber(s, i, n);
+            if (i < 0) {
+                return false;
+            }
+            dataSize = number;
+        }
+
+        // Referer и User-Agent могут отсутствовать (common log format)
+        i = skipSpaces(s, i, n);
+        if (i >= n) {
+            // отсутствующий referer приравниваем к "-"
+            mark(Field.REFERER, -1, -1);
+            mark(Field.USER_AGENT, n, n);
+            return true;
+        }
+        i = quoted(Field.REFERER, s, i, n);
+        if (i < 0) {
+            return false;
+        }
+        i = skipSpaces(s, i, n);
+        if (i >= n) {
+            mark(Field.USER_AGENT, n, n);
+            return true;
+        }
+        return quoted(Field.USER_AGENT, s, i, n) >= 0;
+    }
+
+    /**
+     * Запоминает границы значения в кавычках, начинающегося с индекса i
+     * @return индекс после закрывающей кавычки или -1
+     */
+    private int quoted(Field field, CharSequence s, int i, int n) {
+        if (s.charAt(i) != '"') {
+            return -1;
+        }
+        int end = closingQuote(s, i + 1, n);
+        if (end < 0) {
+            return -1;
+        }
+        mark(field, i + 1, end);
+        return end + 1;
+    }
+
+    private void mark(Field field, int start, int end) {
+        starts[field.ordinal()] = start;
+        ends[field.ordinal()] = end;
+    }
+
+    /**
+     * Разбирает неотрицательное десятичное число в поле number
+     * @return индекс первого символа после числа или -1, если цифр нет или число не помещается в int
+     */
+    private int parseNumber(CharSequence s, int i, int n) {
+        int start = i;
+        long value = 0;
+        while (i < n && isDigit(s.charAt(i))) {
+            value = value * 10 + (s.charAt(i) - '0');
+            if (value > Integer.MAX_VALUE) {
+                return -1;
+            }
+            i++;
+        }
+        if (i == start) {
+            return -1;
+        }
+        number = (int) value;
+        return i;
+    }
+
+    private int closingQuote(CharSequence s, int i, int n) {
+        while ((i = nextDelimiter(i, n)) < n) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '"') {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    // Поиск символа, который входит в индекс разделителей: кавычки или ']'
+    private int indexOf(CharSequence s, char c, int i, int n) {
+        while ((i = nextDelimiter(i, n)) < n) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+            i++;
+        }
+        return -1;
+    }
+
+    private static boolean matches(CharSequence s, int i, int n, String expected) {
+        if (i + expected.length() > n) {
+            return false;
+        }
+        for (int k = 0; k < expected.length(); k++) {
+            if (s.charAt(i + k) != expected.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int skipNonWhitespace(CharSequence s, int i, int n) {
+        while ((i = nextDelimiter(i, n)) < n && !isWhitespace(s.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Ближайшая позиция, с которой может начаться искомый разделитель: без индекса - сама позиция,
+     * с индексом - следующий разделитель из индекса; символы между ними разделителями не являются
+     * @return позиция не дальше n
+     */
+    private int nextDelimiter(int i, int n) {
+        if (index == null || i >= n) {
+            return i;
+        }
+        return (int) Math.min((long) index.next(base + i) - base, n);
+    }
+
+    private static int skipSpaces(CharSequence s, int i, int n) {
+        while (i < n && s.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    // Пробельные символы в смысле \s регулярных выражений
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    // Символы, которые не совпадают с '.' в регулярных выражениях
+    private static boolean isLineTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // Границы полей последней строки
+    public int start(Field field) { return starts[field.ordinal()]; }
+    public int end(Field field) { return ends[field.ordinal()]; }
+
+    /**
+     * Возвращает текст поля последней разобранной строки
+     * @param field поле строки
+     * @return значение поля; для отсутствующего referer - "-"
+     */
+    public String text(Field field) {
+        int start = starts[field.ordinal()];
+        if (start < 0) {
+            return "-";
+        }
+        return line.subSequence(start, ends[field.ordinal()]).toString();
+    }
+
+    /**
+     * Определяет метод запроса без выделения подстроки
+     * @return метод или UNKNOWN, если метод не входит в HttpMethod
+     */
+    public HttpMethod method() {
+        int start = starts[Field.METHOD.ordinal()];
+        int length = ends[Field.METHOD.ordinal()] - start;
+        for (HttpMethod method : METHODS) {
+            String name = method.name();
+            if (name.length() == length && matches(line, start, start + length, name)) {
+                return method;
+            }
+        }
+        return HttpMethod.UNKNOWN;
+    }
+
+    /**
+     * Время запроса последней строки; повторяющееся время не разбирается заново
+     * @return секунды эпохи UTC или TimestampParser.INVALID
+     */
+    public long getEpochSecond() {
+        return timestamps.parse(line, starts[Field.TIMESTAMP.ordinal()], ends[Field.TIMESTAMP.ordinal()]);
+    }
+
+    public int getResponseCode() { return responseCode; }
+    public long getRejectedLines() { return rejectedLines; }
+    public int getDataSize() { return dataSize; }
+}
@@ -0,0 +1,197 @@
+package parser;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class Main {
+    // Группы показателей, которые выводит этот отчёт; остальные поля строк не декодируются
+    private static final Set<Statistics.Metric> REPORT_METRICS = EnumSet.of(
+            Statistics.Metric.TIME, Statistics.Metric.TRAFFIC, Statistics.Metric.AGENTS, Statistics.Metric.PAGES);
+
+    public static void main(String[] args) {
+        AnalysisOptions options;
+        try {
+            options = AnalysisOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        analyzeFile(options);
+    }
+    public static void analyzeFile(String inputPath, String outputPath) {
+        analyzeFile(AnalysisOptions.of(inputPath, outputPath));
+    }
+    public static void analyzeFile(AnalysisOptions options) {
+        if (options.getSelectedMetrics() == null) {
+            // ряду по времени нужны все его столбцы: трафик, коды ответа и посещения
+            Set<Statistics.Metric> metrics = EnumSet.copyOf(REPORT_METRICS);
+            if (options.getSeriesPath() != null) {
+                metrics.add(Statistics.Metric.STATUS);
+            }
+            options.setSelectedMetrics(metrics);
+        }
+        String inputPath = options.getInputPath();
+        String outputPath = options.getOutputPath();
+        File inputFile = new File(inputPath);
+        System.out.println("Проверка лога: " + inputFile.getAbsolutePath());
+        System.out.println("Результат будет сохранен в: " + outputPath);
+
+        try {
+            System.out.println("Обработка файла...");
+            if (options.isFollow()) {
+                new LogFollower(inputFile, options).run(stats -> {
+                    writeReport(stats, options);
+                    writeTimeSeries(stats, options, false);
+                });
+                return;
+            }
+            Statistics stats = LogAnalyzer.analyze(options);
+            printUserAgentCacheStatistics(stats);
+            writeReport(stats, options);
+            writeTimeSeries(stats, options, true);
+            System.out.println("Результаты сохранены в: " + outputPath);
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Запись отчёта по накопленной статистике; файл отчёта перезаписывается целиком
+     * @param stats статистика
+     * @param options параметры анализа: входной файл для заголовка, файл отчёта, размер топов и полные списки
+     */
+    static void writeReport(Statistics stats, AnalysisOptions options) throws IOException {
+        String inputPath = options.getInputPath();
+        int top = options.getTopSize();
+        try (PrintWriter writer = new PrintWriter(new FileWriter(options.getOutputPath())))
+        {
+            writer.println("Анализ лог-файла: " + inputPath);
+            writer.println("=" .repeat(50));
+
+            long totalLines = stats.getTotalLines();
+            if (totalLines == 0) {
+                writer.println("Файл пуст.");
+            } else {
+                writer.println("\nРезультаты анализа:");
+                writer.println("Всего строк: " + totalLines);
+                if (stats.collects(Statistics.Metric.TRAFFIC)) {
+                    writer.printf("Средний объем трафика за час: %.2f байт/час\n", stats.getTrafficRate());
+                }
+
+                if (stats.collects(Statistics.Metric.AGENTS)) {
+                    // статистик по браузерам и ОС
+                    writer.println("\nСтатистика по браузерам:");
+                    printBrowserStatisticsToFile(stats, writer);
+                    writer.println("\nСтатистика по операционным системам:");
+                    printOsStatisticsToFile(stats, writer);
+                }
+
+                if (stats.collects(Statistics.Metric.PAGES)) {
+                    // топы страниц; полные списки - только по запросу, без копирования множеств
+                    writer.println("\nСамые запрашиваемые страницы (топ " + top + " из " + stats.getExistingPagesCount()
+                            + approximate(stats.isTopPagesExact()) + "):");
+                    printTopToFile(stats.getTopPages(top), "запросов", writer);
+                    writer.println("\nСамые частые несуществующие страницы (топ " + top + " из " + stats.getNotFoundPagesCount()
+                            + approximate(stats.isTopNotFoundPagesExact()) + "):");
+                    printTopToFile(stats.getTopNotFoundPages(top), "запросов", writer);
+                    if (options.isFullLists()) {
+                        writer.println("\nСуществующие страницы сайта (" + stats.getExistingPagesCount() + "):");
+                        for (String page : stats.getExistingPages()) {
+                            writer.println("  " + page);
+                        }
+                        writer.println("\nНесуществующие страницы сайта (" + stats.getNotFoundPagesCount() + "):");
+                        for (String page : stats.getNotFoundPages()) {
+                            writer.println("  " + page);
+                        }
+                    }
+                }
+
+                if (stats.collects(Statistics.Metric.AGENTS)) {
+                    // статистика ОС
+                    Map<String, Double> osStatistics = stats.getOsStatistics();
+                    writer.println("\nСтатистика операционных систем (доли):");
+                    for (Map.Entry<String, Double> entry : osStatistics.entrySet()) {
+                        writer.printf("  %s: %.2f%%\n", entry.getKey(), entry.getValue() * 100);
+                    }
+
+                    // статистика браузеров
+                    Map<String, Double> browserStatistics = stats.getBrowserStatistics();
+                    writer.println("\nСтатистика браузеров (проценты):");
+                    for (Map.Entry<String, Double> entry : browserStatistics.entrySet()) {
+                        writer.printf("  %s: %.2f%%\n", entry.getKey(), entry.getValue() * 100);
+                    }
+                }
+
+                // точность показателей в режиме ограниченной памяти
+                if (stats.isMemoryBounded()) {
+                    writer.println("\nТочность показателей:");
+                    for (Map.Entry<String, String> entry : stats.getAccuracy().entrySet()) {
+                        writer.println("  " + entry.getKey() + ": " + entry.getValue());
+                    }
+                }
+
+                writer.println("\n" + "=" .repeat(50));
+                writer.println("Анализ завершен");
+            }
+        }
+    }
+
+    // запись ряда по времени в CSV и, по окончании анализа, сводка пиковой нагрузки в консоль
+    private static void writeTimeSeries(Statistics stats, AnalysisOptions options, boolean printSummary) throws IOException {
+        if (options.getSeriesPath() == null) {
+            return;
+        }
+        if (!stats.collects(Statistics.Metric.TIME)) {
+            System.out.println("Ряд по времени не записан: время запросов не собиралось, см. --only");
+            return;
+        }
+        stats.getTimeSeries().writeCsv(Paths.get(options.getSeriesPath()), options.getSeriesStep());
+        if (printSummary) {
+            stats.getTimeSeries().printSummary(System.out, 3);
+            System.out.println("Ряд по времени сохранён в: " + options.getSeriesPath());
+        }
+    }
+
+    // пометка заголовка топа, посчитанного приблизительно
+    private static String approximate(boolean exact) {
+        return exact ? "" : ", оценка Space-Saving";
+    }
+
+    // вывод топа в файл; у оценки Space-Saving указывается возможное завышение
+    private static void printTopToFile(List<SpaceSaving.Counter<String>> top, String unit, PrintWriter writer) {
+        for (SpaceSaving.Counter<String> counter : top) {
+            writer.print("  " + counter.getKey() + ": " + counter.getCount() + " " + unit);
+            writer.println(counter.getError() > 0 ? " (завышение не более " + counter.getError() + ")" : "");
+        }
+    }
+
+    // вывод в файл
+    private static void printBrowserStatisticsToFile(Statistics stats, PrintWriter writer) {
+        for (Map.Entry<String, Integer> entry : stats.getBrowserStats().entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue() + " запросов");
+        }
+    }
+    private static void printOsStatisticsToFile(Statistics stats, PrintWriter writer) {
+        for (Map.Entry<String, Integer> entry : stats.getOsStats().entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue() + " запросов");
+        }
+    }
+
+    // вывод эффективности кеша User-Agent в консоль
+    private static void printUserAgentCacheStatistics(Statistics stats) {
+        long hits = stats.getUserAgentCacheHits();
+        long lookups = hits + stats.getUserAgentCacheMisses();
+        if (lookups > 0) {
+            System.out.printf("Кеш User-Agent: попаданий %d, промахов %d (%.2f%%)\n",
+                    hits, lookups - hits, 100.0 * hits / lookups);
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,245 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Чтение лога через отображение файла в память без декодирования строк.
+ * Файл отображается сегментами не длиннее 2 ГБ, каждый сегмент заканчивается на границе строки.
+ * Сегмент копируется порциями в массив, по порции строится индекс разделителей DelimiterIndex,
+ * и строки и поля ищутся по нему.
+ */
+class MappedLogReader {
+    // Предел размера одного MappedByteBuffer
+    static final long MAX_SEGMENT_BYTES = Integer.MAX_VALUE;
+
+    private final FileChannel channel;
+    private final long segmentBytes;
+    private final DelimiterIndex index = new DelimiterIndex();
+    private final byte[] chunk = new byte[DelimiterIndex.CHUNK_BYTES];
+    private final ByteBuffer chunkBuffer = ByteBuffer.wrap(chunk);
+
+    MappedLogReader(FileChannel channel) {
+        this(channel, MAX_SEGMENT_BYTES);
+    }
+
+    MappedLogReader(FileChannel channel, long segmentBytes) {
+        this.channel = channel;
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Передаёт обработчику все строки из диапазона байтов [start, end)
+     * @param start начало диапазона, совпадающее с началом строки
+     * @param end конец диапазона
+     * @param processor обработчик строк
+     */
+    public void read(long start, long end, LineProcessor processor) throws IOException {
+        long position = start;
+        while (position < end) {
+            long window = Math.min(segmentBytes, end - position);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, window);
+            int limit = (int) window;
+            if (position + window < end) {
+                // неполная последняя строка переходит в следующий сегмент;
+                // строку длиннее сегмента отдаём целиком - её отвергнет проверка длины
+                int lastNewline = lastIndexOf(buffer, (byte) '\n', limit);
+                if (lastNewline >= 0) {
+                    limit = lastNewline + 1;
+                }
+            }
+
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int length = Math.min(chunk.length, limit - lineStart);
+                buffer.get(lineStart, chunk, 0, length);
+                int processed = index.processLines(chunkBuffer, 0, length, lineStart + length == limit, processor);
+                if (processed > 0) {
+                    lineStart += processed;
+                    continue;
+                }
+                // строка длиннее порции: отдаём её из сегмента целиком, её отвергнет проверка длины
+                int newline = indexOf(buffer, (byte) '\n', lineStart + length, limit);
+                int lineEnd = newline < 0 ? limit : newline;
+                processor.process(buffer, lineStart, trimCarriageReturn(buffer, lineStart, lineEnd));
+                lineStart = newline < 0 ? limit : newline + 1;
+            }
+            position += limit;
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value, int from, int limit) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(ByteBuffer buffer, byte value, int limit) {
+        for (int i = limit - 1; i >= 0; i--) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Конец строки без завершающего '\r', как у BufferedReader.readLine
+    private static int trimCarriageReturn(ByteBuffer buffer, int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+}
+
+// Диапазон байтов, видимый как символы Latin-1, без копирования
+class ByteCharSequence implements CharSequence {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+
+    public ByteCharSequence wrap(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new ByteCharSequence().wrap(buffer, offset + start, end - start);
+    }
+
+    // Декодированный в UTF-8 текст диапазона
+    @Override
+    public String toString() {
+        byte[] raw = new byte[length];
+        buffer.get(offset, raw);
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+}
+
+/**
+ * Переиспользуемое представление строки лога в отображённом буфере.
+ * Строки создаются только для значений, которые запрашивает Statistics, и берутся из пула,
+ * так что повторяющиеся IP, страницы, домены и User-Agent не порождают новых объектов.
+ */
+class MappedLogRecord implements LogRecord {
+    private final LogTokenizer tokenizer;
+    private final StringPool pool;
+    private final UserAgentCache userAgents;
+    private final ByteCharSequence line = new ByteCharSequence();
+    private ByteBuffer buffer;
+    private int offset;
+    private String ipAddress;
+    private UserAgent userAgent;
+    private long epochSecond;
+    private boolean timeDecoded;
+
+    MappedLogRecord(LogTokenizer tokenizer, StringPool pool, UserAgentCache userAgents) {
+        this.tokenizer = tokenizer;
+        this.pool = pool;
+        this.userAgents = userAgents;
+    }
+
+    public boolean parse(ByteBuffer buffer, int start, int end) {
+        return parse(buffer, start, end, null);
+    }
+
+    /**
+     * Разбирает очередную строку
+     * @param index индекс разделителей порции буфера, в которой лежит строка, или null
+     * @return true, если строку принял LogTokenizer
+     */
+    public boolean parse(ByteBuffer buffer, int start, int end, DelimiterIndex index) {
+        this.buffer = buffer;
+        this.offset = start;
+        this.ipAddress = null;
+        this.userAgent = null;
+        this.timeDecoded = false;
+        return tokenizer.tokenize(line.wrap(buffer, start, end - start), index, start);
+    }
+
+    // Текущая строка целиком, например для разбора регулярным выражением
+    public CharSequence line() { return line; }
+
+    private String pooled(LogTokenizer.Field field) {
+        return pool.intern(buffer, offset + tokenizer.start(field), offset + tokenizer.end(field));
+    }
+
+    private boolean isDash(LogTokenizer.Field field) {
+        int start = tokenizer.start(field);
+        return start < 0 || (tokenizer.end(field) - start == 1 && line.charAt(start) == '-');
+    }
+
+    @Override
+    public String getIpAddress() {
+        if (ipAddress == null) {
+            ipAddress = pooled(LogTokenizer.Field.IP);
+        }
+        return ipAddress;
+    }
+
+    @Override
+    public long getIPv4() {
+        return LogRecord.parseIPv4(line, tokenizer.start(LogTokenizer.Field.IP), tokenizer.end(LogTokenizer.Field.IP));
+    }
+
+    @Override
+    public long getEpochSecond() {
+        if (!timeDecoded) {
+            epochSecond = tokenizer.getEpochSecond();
+            if (epochSecond == TimestampParser.INVALID) {
+                LogEntry.reportInvalidTimestamp(tokenizer.text(LogTokenizer.Field.TIMESTAMP));
+            }
+            timeDecoded = true;
+        }
+        return epochSecond;
+    }
+
+    @Override
+    public String getPath() { return pooled(LogTokenizer.Field.PATH); }
+
+    @Override
+    public int getResponseCode() { return tokenizer.getResponseCode(); }
+
+    @Override
+    public int getDataSize() { return tokenizer.getDataSize(); }
+
+    @Override
+    public String getReferer() {
+        return isDash(LogTokenizer.Field.REFERER) ? null : tokenizer.text(LogTokenizer.Field.REFERER);
+    }
+
+    @Override
+    public String getRefererDomain() {
+        if (isDash(LogTokenizer.Field.REFERER)) {
+            return null;
+        }
+        int start = LogRecord.domainStart(line, tokenizer.start(LogTokenizer.Field.REFERER),
+                tokenizer.end(LogTokenizer.Field.REFERER));
+        int end = LogRecord.domainEnd(line, start, tokenizer.end(LogTokenizer.Field.REFERER));
+        return pool.intern(buffer, offset + start, offset + end);
+    }
+
+    @Override
+    public UserAgent getUserAgent() {
+        if (userAgent == null) {
+            userAgent = userAgents.get(pooled(LogTokenizer.Field.USER_AGENT));
+        }
+        return userAgent;
+    }
+}
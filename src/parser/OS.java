@@ -0,0 +1,1346 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class OS {
+    public static void main(String[] args) {
+        AnalysisOptions options;
+        try {
+            options = AnalysisOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        analyzeFile(options);
+    }
+
+    public static void analyzeFile(String inputPath, String outputPath) {
+        analyzeFile(AnalysisOptions.of(inputPath, outputPath));
+    }
+
+    public static void analyzeFile(AnalysisOptions options) {
+        String inputPath = options.getInputPath();
+        String outputPath = options.getOutputPath();
+        File inputFile = new File(inputPath);
+        if (options.isServer()) {
+            // строки приходят по сети, входной файл не читается
+            try {
+                IngestServer server = new IngestServer(options);
+                server.start();
+                server.run();
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+            return;
+        }
+        System.out.println("Проверка лога: " + inputFile.getAbsolutePath());
+        System.out.println("Результат будет сохранен в: " + outputPath);
+
+        try {
+            System.out.println("Обработка файла...");
+            if (options.getStorePath() != null) {
+                long start = System.nanoTime();
+                long rows = LogStore.ingest(options, Paths.get(options.getStorePath()));
+                System.out.printf("Хранилище %s: %d строк за %.2f с%n",
+                        options.getStorePath(), rows, (System.nanoTime() - start) / 1e9);
+                return;
+            }
+            if (options.isFollow()) {
+                new LogFollower(inputFile, options).run(stats -> {
+                    writeReport(stats, options);
+                    writeTimeSeries(stats, options, false);
+                });
+                return;
+            }
+            Statistics stats = LogAnalyzer.analyze(options);
+            printUserAgentCacheStatistics(stats);
+            writeReport(stats, options);
+            writeTimeSeries(stats, options, true);
+            System.out.println("Результаты сохранены в: " + outputPath);
+
+        } catch (Exception ex) {
+            ex.printStackTrace();
+        }
+    }
+
+    /**
+     * Запись отчёта по накопленной статистике; файл отчёта перезаписывается целиком
+     * @param stats статистика
+     * @param options параметры анализа: входной файл для заголовка, файл отчёта, размер топов и полные списки
+     */
+    static void writeReport(Statistics stats, AnalysisOptions options) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new FileWriter(options.getOutputPath()))) {
+            writeReport(stats, options, options.getInputPath(), writer);
+        }
+    }
+
+    /**
+     * Запись отчёта в поток, например в ответ HTTP сервера приёма логов
+     * @param stats статистика
+     * @param options параметры анализа: размер топов и полные списки
+     * @param source источник строк для заголовка отчёта
+     * @param writer поток отчёта; не закрывается
+     */
+    static void writeReport(Statistics stats, AnalysisOptions options, String source, PrintWriter writer) {
+        int top = options.getTopSize();
+        writer.println("Анализ лога: " + source);
+        writer.println("=" .repeat(50));
+
+        long totalLines = stats.getTotalLines();
+        if (totalLines == 0) {
+            writer.println("Файл пуст.");
+        } else {
+            writer.println("\nРезультаты анализа:");
+            writer.println("Всего строк: " + totalLines);
+            // разделы выводятся только для собранных групп показателей, см. --only
+            boolean time = stats.collects(Statistics.Metric.TIME);
+            boolean agents = stats.collects(Statistics.Metric.AGENTS);
+            boolean users = stats.collects(Statistics.Metric.USERS);
+            if (stats.collects(Statistics.Metric.TRAFFIC)) {
+                writer.printf("Средний объем трафика за час: %.2f байт/час\n", stats.getTrafficRate());
+            }
+
+            // Новые метрики
+            if (agents && time) {
+                writer.printf("Среднее количество посещений сайта за час: %.2f\n", stats.getAverageVisitsPerHour());
+            } else if (agents) {
+                writer.println("Посещений реальными пользователями: " + stats.getHumanVisits());
+            }
+            if (stats.collects(Statistics.Metric.STATUS) && time) {
+                writer.printf("Среднее количество ошибочных запросов в час: %.2f\n", stats.getAverageErrorRequestsPerHour());
+            } else if (stats.collects(Statistics.Metric.STATUS)) {
+                writer.println("Ошибочных запросов: " + stats.getErrorRequests());
+            }
+            if (users) {
+                writer.printf("Средняя посещаемость одним пользователем: %.2f\n", stats.getAverageVisitsPerUser());
+            }
+
+            // Новые методы
+            if (agents && time) {
+                writer.printf("Пиковая посещаемость сайта: %d посещений/секунду\n", stats.getPeakVisitsPerSecond());
+            }
+            if (users) {
+                writer.printf("Максимальная посещаемость одним пользователем: %d посещений\n", stats.getMaxVisitsPerUser());
+            }
+
+            // Сессии по IP и User-Agent
+            if (stats.collects(Statistics.Metric.SESSIONS)) {
+                Sessions.Summary sessions = stats.getSessions().summary();
+                writer.printf("Сессий реальных пользователей: %d (перерыв не больше %d с)\n",
+                        sessions.getSessions(), stats.getSessions().getTimeoutSeconds());
+                writer.printf("Средняя длительность сессии: %.1f с\n", sessions.getAverageSeconds());
+                writer.printf("Среднее число запросов за сессию: %.2f\n", sessions.getAveragePages());
+                writer.printf("Доля отказов (сессий из одного запроса): %.2f%%\n", sessions.getBounceRate() * 100);
+            }
+
+            // Сайты-рефереры и самые активные пользователи
+            if (stats.collects(Statistics.Metric.REFERERS)) {
+                writer.println("\nСайты-рефереры с наибольшим числом переходов (топ " + top + " из " + stats.getRefererDomainsCount()
+                        + approximate(stats.isTopRefererDomainsExact()) + "):");
+                printTopToFile(stats.getTopRefererDomains(top), "переходов", writer);
+                if (options.isFullLists()) {
+                    writer.println("\nСайты, со страниц которых есть ссылки на текущий сайт (" + stats.getRefererDomainsCount() + "):");
+                    for (String domain : stats.getRefererDomains()) {
+                        writer.println("  " + domain);
+                    }
+                }
+            }
+            if (users) {
+                writer.println("\nСамые активные IP реальных пользователей (топ " + top + "):");
+                printTopToFile(stats.getTopHumanIPs(top), "посещений", writer);
+            }
+
+            // статистик по браузерам и ОС
+            if (agents) {
+                writer.println("\nСтатистика по браузерам:");
+                printBrowserStatisticsToFile(stats, writer);
+                writer.println("\nСтатистика по операционным системам:");
+                printOsStatisticsToFile(stats, writer);
+                writer.println("\nСтатистика по типам устройств:");
+                for (Map.Entry<String, Integer> entry : stats.getDeviceStats().entrySet()) {
+                    writer.println("  " + entry.getKey() + ": " + entry.getValue() + " запросов");
+                }
+                writer.println("\nБоты по семействам:");
+                List<Map.Entry<String, Integer>> families = new ArrayList<>(stats.getBotFamilies().entrySet());
+                families.sort(Map.Entry.<String, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()));
+                for (Map.Entry<String, Integer> entry : families) {
+                    writer.println("  " + entry.getKey() + ": " + entry.getValue() + " запросов");
+                }
+            }
+
+            // топы страниц; полные списки - только по запросу, без копирования множеств
+            if (stats.collects(Statistics.Metric.PAGES)) {
+                writer.println("\nСамые запрашиваемые страницы (топ " + top + " из " + stats.getExistingPagesCount()
+                        + approximate(stats.isTopPagesExact()) + "):");
+                printTopToFile(stats.getTopPages(top), "запросов", writer);
+                writer.println("\nСамые частые несуществующие страницы (топ " + top + " из " + stats.getNotFoundPagesCount()
+                        + approximate(stats.isTopNotFoundPagesExact()) + "):");
+                printTopToFile(stats.getTopNotFoundPages(top), "запросов", writer);
+                if (options.isFullLists()) {
+                    writer.println("\nСуществующие страницы сайта (" + stats.getExistingPagesCount() + "):");
+                    for (String page : stats.getExistingPages()) {
+                        writer.println("  " + page);
+                    }
+                    writer.println("\nНесуществующие страницы сайта (" + stats.getNotFoundPagesCount() + "):");
+                    for (String page : stats.getNotFoundPages()) {
+                        writer.println("  " + page);
+                    }
+                }
+            }
+
+            if (agents) {
+                // статистика ОС
+                Map<String, Double> osStatistics = stats.getOsStatistics();
+                writer.println("\nСтатистика операционных систем (доли):");
+                for (Map.Entry<String, Double> entry : osStatistics.entrySet()) {
+                    writer.printf("  %s: %.2f%%\n", entry.getKey(), entry.getValue() * 100);
+                }
+
+                // статистика браузеров
+                Map<String, Double> browserStatistics = stats.getBrowserStatistics();
+                writer.println("\nСтатистика браузеров (проценты):");
+                for (Map.Entry<String, Double> entry : browserStatistics.entrySet()) {
+                    writer.printf("  %s: %.2f%%\n", entry.getKey(), entry.getValue() * 100);
+                }
+            }
+
+            // точность показателей в режиме ограниченной памяти
+            if (stats.isMemoryBounded()) {
+                writer.println("\nТочность показателей:");
+                for (Map.Entry<String, String> entry : stats.getAccuracy().entrySet()) {
+                    writer.println("  " + entry.getKey() + ": " + entry.getValue());
+                }
+            }
+
+            writer.println("\n" + "=" .repeat(50));
+            writer.println("Анализ завершен");
+        }
+    }
+
+    // вывод эффективности кеша User-Agent в консоль
+    private static void printUserAgentCacheStatistics(Statistics stats) {
+        long hits = stats.getUserAgentCacheHits();
+        long lookups = hits + stats.getUserAgentCacheMisses();
+        if (lookups > 0) {
+            System.out.printf("Кеш User-Agent: попаданий %d, промахов %d (%.2f%%)\n",
+                    hits, lookups - hits, 100.0 * hits / lookups);
+        }
+    }
+
+    // запись ряда по времени в CSV и, по окончании анализа, сводка пиковой нагрузки в консоль
+    private static void writeTimeSeries(Statistics stats, AnalysisOptions options, boolean printSummary) throws IOException {
+        if (options.getSeriesPath() == null) {
+            return;
+        }
+        if (!stats.collects(Statistics.Metric.TIME)) {
+            System.out.println("Ряд по времени не записан: время запросов не собиралось, см. --only");
+            return;
+        }
+        stats.getTimeSeries().writeCsv(Paths.get(options.getSeriesPath()), options.getSeriesStep());
+        if (printSummary) {
+            stats.getTimeSeries().printSummary(System.out, 3);
+            System.out.println("Ряд по времени сохранён в: " + options.getSeriesPath());
+        }
+    }
+
+    // пометка заголовка топа, посчитанного приблизительно: состав и порядок могут отличаться от точных
+    private static String approximate(boolean exact) {
+        return exact ? "" : ", оценка Space-Saving";
+    }
+
+    // вывод топа в файл; у оценки Space-Saving указывается возможное завышение
+    private static void printTopToFile(List<SpaceSaving.Counter<String>> top, String unit, PrintWriter writer) {
+        for (SpaceSaving.Counter<String> counter : top) {
+            writer.print("  " + counter.getKey() + ": " + counter.getCount() + " " + unit);
+            writer.println(counter.getError() > 0 ? " (завышение не более " + counter.getError() + ")" : "");
+        }
+    }
+
+    // вывод в файл
+    private static void printBrowserStatisticsToFile(Statistics stats, PrintWriter writer) {
+        for (Map.Entry<String, Integer> entry : stats.getBrowserStats().entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue() + " запросов");
+        }
+    }
+    private static void printOsStatisticsToFile(Statistics stats, PrintWriter writer) {
+        for (Map.Entry<String, Integer> entry : stats.getOsStats().entrySet()) {
+            writer.println("  " + entry.getKey() + ": " + entry.getValue() + " запросов");
+        }
+    }
+}
+
+// исключениe длинных строк
+class LineTooLongException extends RuntimeException {
+    private final long lineNumber;
+    // байт файла, от которого считаются строки: начало окна --from/--to или 0
+    private final long origin;
+    private final int length;
+
+    public LineTooLongException(String message) {
+        super(message);
+        this.lineNumber = 0;
+        this.origin = 0;
+        this.length = 0;
+    }
+
+    public LineTooLongException(long lineNumber, int length) {
+        this(lineNumber, 0, length);
+    }
+
+    public LineTooLongException(long lineNumber, long origin, int length) {
+        super("Строка #" + lineNumber + (origin > 0 ? " от начала окна --from/--to (байт " + origin + " файла)" : "")
+                + " превышает 1024 символа. Длина: " + length);
+        this.lineNumber = lineNumber;
+        this.origin = origin;
+        this.length = length;
+    }
+
+    /**
+     * Пересчёт номера строки, найденной во фрагменте файла, относительно начала файла или окна времени
+     * @param linesBefore число строк до начала фрагмента
+     * @return исключение с исправленным номером строки
+     */
+    public LineTooLongException shiftedBy(long linesBefore) {
+        return new LineTooLongException(lineNumber + linesBefore, origin, length);
+    }
+
+    public long getLineNumber() { return lineNumber; }
+    public long getOrigin() { return origin; }
+}
+
+// Enum для методов HTTP-запросов
+enum HttpMethod {
+    GET, POST, PUT, DELETE, HEAD, OPTIONS, PATCH, UNKNOWN
+}
+
+// Класс строк лог-файла
+class LogEntry implements LogRecord {
+    private final String ipAddress;
+    private final long epochSecond;
+    public final String path;
+    private final int responseCode;
+    private final int dataSize;
+    private final String referer;
+    private final UserAgent userAgent;
+
+    // Регулярное выражение для строк, которые не принял LogTokenizer
+    private static final Pattern LOG_PATTERN =
+            Pattern.compile("^(\\S+) - - \\[(.+?)] \"(\\S+) (\\S+) HTTP/\\d\\.\\d\" (\\d+) (\\d+) \"([^\"]*)\" \"([^\"]*)\"$");
+
+    public LogEntry(String logLine) {
+        this(logLine, new LogTokenizer(LogTokenizer.Mode.STRICT));
+    }
+
+    /**
+     * Разбирает строку однопроходным разборщиком, а отвергнутые им строки - регулярным выражением
+     * @param logLine строка лога
+     * @param tokenizer разборщик; null - разбор только регулярным выражением
+     */
+    public LogEntry(String logLine, LogTokenizer tokenizer) {
+        this(logLine, tokenizer, null);
+    }
+
+    /**
+     * Разбор строки с классификацией User-Agent через кеш
+     * @param logLine строка лога
+     * @param tokenizer разборщик; null - разбор только регулярным выражением
+     * @param userAgents кеш классификации User-Agent; null - классификация каждой строки заново
+     * @throws IllegalArgumentException если строку не разобрал ни один способ
+     */
+    public LogEntry(String logLine, LogTokenizer tokenizer, UserAgentCache userAgents) {
+        this(logLine, tokenizer != null && tokenizer.tokenize(logLine) ? tokenizer : null, null, userAgents);
+    }
+
+    /**
+     * Разбор из уже разобранных полей: токенизатора, принявшего строку, или совпадения
+     * регулярного выражения; если нет ни того, ни другого, строка проверяется выражением
+     */
+    private LogEntry(String logLine, LogTokenizer tokenized, Matcher matched, UserAgentCache userAgents) {
+        if (tokenized != null) {
+            this.ipAddress = tokenized.text(LogTokenizer.Field.IP);
+            long epochSecond = tokenized.getEpochSecond();
+            if (epochSecond == TimestampParser.INVALID) {
+                reportInvalidTimestamp(tokenized.text(LogTokenizer.Field.TIMESTAMP));
+            }
+            this.epochSecond = epochSecond;
+            this.path = tokenized.text(LogTokenizer.Field.PATH);
+            this.responseCode = tokenized.getResponseCode();
+            this.dataSize = tokenized.getDataSize();
+            String referer = tokenized.text(LogTokenizer.Field.REFERER);
+            this.referer = referer.equals("-") ? null : referer;
+            this.userAgent = classify(tokenized.text(LogTokenizer.Field.USER_AGENT), userAgents);
+            return;
+        }
+
+        Matcher matcher = matched != null ? matched : LOG_PATTERN.matcher(logLine);
+        if (matched != null || matcher.find()) {
+            this.ipAddress = matcher.group(1);
+            this.epochSecond = parseTimestamp(matcher.group(2));
+            this.path = matcher.group(4);
+            this.responseCode = Integer.parseInt(matcher.group(5));
+            this.dataSize = Integer.parseInt(matcher.group(6));
+            this.referer = matcher.group(7).equals("-") ? null : matcher.group(7);
+            this.userAgent = classify(matcher.group(8), userAgents);
+        } else {
+            throw new IllegalArgumentException("Неверный формат строки лога: " + logLine);
+        }
+    }
+
+    /**
+     * Копия полей записи, которые нужны собираемым группам показателей; остальные поля
+     * не декодируются: время остаётся TimestampParser.INVALID, строки и User-Agent - null.
+     * Нужна, когда запись переходит в другой поток, а переиспользуемое представление - нет.
+     * @param record запись, обычно ленивое представление LineRecord
+     * @param metrics собираемые группы с учётом зависимостей, см. Statistics.Metric.withDependencies
+     */
+    LogEntry(LogRecord record, Set<Statistics.Metric> metrics) {
+        this.ipAddress = metrics.contains(Statistics.Metric.USERS) || metrics.contains(Statistics.Metric.SESSIONS)
+                ? record.getIpAddress() : null;
+        this.epochSecond = metrics.contains(Statistics.Metric.TIME) ? record.getEpochSecond() : TimestampParser.INVALID;
+        this.path = metrics.contains(Statistics.Metric.PAGES) ? record.getPath() : null;
+        this.responseCode = record.getResponseCode();
+        this.dataSize = record.getDataSize();
+        this.referer = metrics.contains(Statistics.Metric.REFERERS) ? record.getReferer() : null;
+        this.userAgent = metrics.contains(Statistics.Metric.AGENTS) ? record.getUserAgent() : null;
+    }
+
+    /**
+     * Разбор без исключений для терпимого режима: неразобранная строка обходится
+     * без сообщения и трассировки стека
+     * @return запись или null, если строку не разобрал ни один способ
+     */
+    static LogEntry tryParse(String logLine, LogTokenizer tokenizer, UserAgentCache userAgents) {
+        if (tokenizer != null && tokenizer.tokenize(logLine)) {
+            return new LogEntry(logLine, tokenizer, null, userAgents);
+        }
+        Matcher matcher = LOG_PATTERN.matcher(logLine);
+        if (!matcher.find() || !fitsInt(matcher.group(5)) || !fitsInt(matcher.group(6))) {
+            return null;
+        }
+        return new LogEntry(logLine, null, matcher, userAgents);
+    }
+
+    // Десятичное число без знака, которое Integer.parseInt разберёт без переполнения
+    private static boolean fitsInt(String digits) {
+        return digits.length() < 10 || digits.length() == 10 && digits.compareTo("2147483647") <= 0;
+    }
+
+    private static UserAgent classify(String userAgent, UserAgentCache userAgents) {
+        return userAgents == null ? new UserAgent(userAgent) : userAgents.get(userAgent);
+    }
+
+    /**
+     * Разбор даты типа "25/Sep/2022:06:25:04 +0300" с учётом часового пояса
+     * @param dateTimeStr дата из строки лога
+     * @return секунды эпохи UTC или TimestampParser.INVALID, если дату разобрать не удалось
+     */
+    static long parseTimestamp(String dateTimeStr) {
+        long epochSecond = TimestampParser.decode(dateTimeStr, 0, dateTimeStr.length());
+        if (epochSecond == TimestampParser.INVALID) {
+            reportInvalidTimestamp(dateTimeStr);
+        }
+        return epochSecond;
+    }
+
+    // Неразобранная дата не попадает в статистику времени, но о ней сообщается
+    static void reportInvalidTimestamp(String dateTimeStr) {
+        System.err.println("Ошибка парсинга даты: " + dateTimeStr);
+    }
+
+    // Геттеры
+    public String getIpAddress() { return ipAddress; }
+    public long getEpochSecond() { return epochSecond; }
+    //public HttpMethod getMethod() { return method; }
+    public String getPath() { return path; }
+    public int getResponseCode() { return responseCode; }
+    public int getDataSize() { return dataSize; }
+    public String getReferer() { return referer; }
+    public UserAgent getUserAgent() { return userAgent; }
+}
+
+/**
+ * Переиспользуемое ленивое представление строки лога: LogTokenizer за один проход находит
+ * границы полей, а каждое поле декодируется при первом обращении. Statistics читает только поля
+ * собираемых групп показателей, поэтому без них не создаются строки, не разбирается дата
+ * и не классифицируется User-Agent.
+ */
+class LineRecord implements LogRecord {
+    private final LogTokenizer tokenizer;
+    private final UserAgentCache userAgents;
+    private String line;
+    private String ipAddress;
+    private String path;
+    private UserAgent userAgent;
+    private long epochSecond;
+    private boolean timeDecoded;
+
+    LineRecord(LogTokenizer tokenizer, UserAgentCache userAgents) {
+        this.tokenizer = tokenizer;
+        this.userAgents = userAgents;
+    }
+
+    /**
+     * Разбирает очередную строку
+     * @return true, если строку принял LogTokenizer
+     */
+    public boolean parse(String line) {
+        this.line = line;
+        this.ipAddress = null;
+        this.path = null;
+        this.userAgent = null;
+        this.timeDecoded = false;
+        return tokenizer.tokenize(line);
+    }
+
+    @Override
+    public String getIpAddress() {
+        if (ipAddress == null) {
+            ipAddress = tokenizer.text(LogTokenizer.Field.IP);
+        }
+        return ipAddress;
+    }
+
+    @Override
+    public long getIPv4() {
+        return LogRecord.parseIPv4(line, tokenizer.start(LogTokenizer.Field.IP), tokenizer.end(LogTokenizer.Field.IP));
+    }
+
+    @Override
+    public long getEpochSecond() {
+        if (!timeDecoded) {
+            epochSecond = tokenizer.getEpochSecond();
+            if (epochSecond == TimestampParser.INVALID) {
+                LogEntry.reportInvalidTimestamp(tokenizer.text(LogTokenizer.Field.TIMESTAMP));
+            }
+            timeDecoded = true;
+        }
+        return epochSecond;
+    }
+
+    @Override
+    public String getPath() {
+        if (path == null) {
+            path = tokenizer.text(LogTokenizer.Field.PATH);
+        }
+        return path;
+    }
+
+    @Override
+    public int getResponseCode() { return tokenizer.getResponseCode(); }
+
+    @Override
+    public int getDataSize() { return tokenizer.getDataSize(); }
+
+    @Override
+    public String getReferer() {
+        String referer = tokenizer.text(LogTokenizer.Field.REFERER);
+        return referer.equals("-") ? null : referer;
+    }
+
+    @Override
+    public String getRefererDomain() {
+        int start = tokenizer.start(LogTokenizer.Field.REFERER);
+        int end = tokenizer.end(LogTokenizer.Field.REFERER);
+        if (start < 0 || end - start == 1 && line.charAt(start) == '-') {
+            return null;
+        }
+        int domainStart = LogRecord.domainStart(line, start, end);
+        return line.substring(domainStart, LogRecord.domainEnd(line, domainStart, end));
+    }
+
+    @Override
+    public UserAgent getUserAgent() {
+        if (userAgent == null) {
+            userAgent = userAgents.get(tokenizer.text(LogTokenizer.Field.USER_AGENT));
+        }
+        return userAgent;
+    }
+}
+
+// Операционные системы, которые различает UserAgent
+enum OsType {
+    WINDOWS("Windows"), MAC_OS("macOS"), LINUX("Linux"), ANDROID("Android"), IOS("iOS"),
+    OTHER("Other"), UNKNOWN("Unknown");
+
+    private final String title;
+
+    OsType(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String toString() { return title; }
+}
+
+// Браузеры, которые различает UserAgent
+enum Browser {
+    EDGE("Edge"), FIREFOX("Firefox"), CHROME("Chrome"), SAFARI("Safari"), OPERA("Opera"),
+    OTHER("Other"), UNKNOWN("Unknown");
+
+    private final String title;
+
+    Browser(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String toString() { return title; }
+}
+
+// Типы устройств, которые различает UserAgent
+enum DeviceClass {
+    DESKTOP("Desktop"), MOBILE("Mobile"), TABLET("Tablet"), BOT("Bot"),
+    OTHER("Other"), UNKNOWN("Unknown");
+
+    private final String title;
+
+    DeviceClass(String title) {
+        this.title = title;
+    }
+
+    @Override
+    public String toString() { return title; }
+}
+
+// Класс User-Agent: неизменяемая классификация, которую можно разделять между записями
+class UserAgent {
+    private final OsType osType;
+    private final Browser browser;
+    private final DeviceClass device;
+    // семейство бота по правилам или null, если User-Agent не бот
+    private final String botFamily;
+    private final long hash;
+
+    public UserAgent(String userAgentString) {
+        this(userAgentString, UserAgentRules.defaults());
+    }
+
+    /**
+     * Классификация по правилам за один проход автомата
+     * @param userAgentString строка User-Agent
+     * @param rules правила классификации
+     */
+    public UserAgent(String userAgentString, UserAgentRules rules) {
+        this.hash = userAgentString == null ? 0 : HyperLogLog.hash(userAgentString);
+        if (userAgentString == null || userAgentString.isEmpty()) {
+            this.osType = OsType.UNKNOWN;
+            this.browser = Browser.UNKNOWN;
+            this.device = DeviceClass.UNKNOWN;
+            this.botFamily = null;
+            return;
+        }
+        UserAgentRules.Match match = rules.classify(userAgentString);
+        this.osType = match.getOs();
+        this.browser = match.getBrowser();
+        this.device = match.getDevice();
+        this.botFamily = match.getBotFamily();
+    }
+
+    // Геттеры
+    public String getOsType() { return osType.toString(); }
+    public String getBrowser() { return browser.toString(); }
+    public OsType getOs() { return osType; }
+    public Browser getBrowserType() { return browser; }
+    public DeviceClass getDevice() { return device; }
+    public String getBotFamily() { return botFamily; }
+    public boolean isBot() { return botFamily != null; }
+    // хеш исходной строки: различает User-Agent с одинаковой классификацией, например в ключе сессии
+    public long getHash() { return hash; }
+}
+
+// Класс для статистики
+class Statistics {
+    /**
+     * Группы показателей, которые собирает статистика. Из записи читаются только поля,
+     * нужные выбранным группам: без AGENTS не классифицируется User-Agent, без TIME не разбирается дата,
+     * без PAGES и REFERERS не создаются строки путей и доменов.
+     */
+    enum Metric {
+        // время запроса: границы периода, средние за час и ряды по времени
+        TIME,
+        // объём трафика за час; требует TIME
+        TRAFFIC,
+        // ошибочные запросы по коду ответа
+        STATUS,
+        // браузеры, ОС и посещения реальными пользователями по User-Agent
+        AGENTS,
+        // уникальные и самые активные IP реальных пользователей; требует AGENTS
+        USERS,
+        // существующие и несуществующие страницы
+        PAGES,
+        // домены рефереров
+        REFERERS,
+        // сессии реальных пользователей по IP и User-Agent; требует TIME и AGENTS
+        SESSIONS;
+
+        /**
+         * Группы вместе с теми, без которых они не считаются
+         * @param metrics выбранные группы
+         */
+        static Set<Metric> withDependencies(Set<Metric> metrics) {
+            EnumSet<Metric> result = metrics.isEmpty() ? EnumSet.noneOf(Metric.class) : EnumSet.copyOf(metrics);
+            if (result.contains(TRAFFIC)) {
+                result.add(TIME);
+            }
+            if (result.contains(USERS)) {
+                result.add(AGENTS);
+            }
+            if (result.contains(SESSIONS)) {
+                result.add(TIME);
+                result.add(AGENTS);
+            }
+            return result;
+        }
+
+        static int toMask(Set<Metric> metrics) {
+            int mask = 0;
+            for (Metric metric : metrics) {
+                mask |= 1 << metric.ordinal();
+            }
+            return mask;
+        }
+
+        static Set<Metric> fromMask(int mask) {
+            EnumSet<Metric> metrics = EnumSet.noneOf(Metric.class);
+            for (Metric metric : values()) {
+                if ((mask & 1 << metric.ordinal()) != 0) {
+                    metrics.add(metric);
+                }
+            }
+            return metrics;
+        }
+    }
+
+    private long totalLines;
+    private int totalTraffic;
+    // границы времени запросов в секундах эпохи; пока запросов нет, minTime > maxTime
+    private long minTime;
+    private long maxTime;
+    // запросы по браузерам и ОС в массивах по значениям перечислений
+    private final EnumCounter<Browser> browserStats = new EnumCounter<>(Browser.class);
+    private final EnumCounter<OsType> osStats = new EnumCounter<>(OsType.class);
+    // запросы по типам устройств и ботов по семействам правил; семейства в порядке первого появления
+    private final EnumCounter<DeviceClass> deviceStats = new EnumCounter<>(DeviceClass.class);
+    private final Map<String, Integer> botFamilies = new LinkedHashMap<>();
+
+    // Наибольший размер топа и число счётчиков Space-Saving на каждый топ при бюджете памяти,
+    // оценка памяти на счётчик Space-Saving со строкой ключа и на ячейку точного счёта по номеру
+    static final int TOP_CAPACITY = 4096;
+    private static final int TOP_ENTRY_BYTES = 160;
+    private static final int TOP_EXACT_ENTRY_BYTES = BoundedCounter.INT_KEY_ENTRY_BYTES;
+
+    // Бюджет памяти на каждую из неограниченных структур; Long.MAX_VALUE - точный подсчёт
+    private final long memoryBudget;
+
+    // Собираемые группы показателей; флаги проверяются на каждой записи
+    private final Set<Metric> metrics;
+    private final boolean collectsTime;
+    private final boolean collectsTraffic;
+    private final boolean collectsStatus;
+    private final boolean collectsAgents;
+    private final boolean collectsUsers;
+    private final boolean collectsPages;
+    private final boolean collectsReferers;
+    private final boolean collectsSessions;
+
+    // Словари путей, IP и доменов: множества ниже хранят номера значений, текст нужен только отчёту
+    private final Dictionary paths = new Dictionary();
+    private final Dictionary addresses = new Dictionary();
+    private final Dictionary domains = new Dictionary();
+
+    // Существующие поля страниц
+    private final BoundedSet existingPages;
+
+    // Новые поля несуществующих страниц
+    private final BoundedSet notFoundPages;
+
+    // поля для требуемых метрик
+    private int humanVisits; // посещения реальными пользователями (не ботами)
+    private int errorRequests; // ошибочные запросы (4xx или 5xx)
+    private final BoundedSet uniqueHumanIPs; // уникальные IP реальных пользователей
+
+    // Новые поля для доп методов
+    private final TimeSeries timeSeries; // запросы, трафик, посещения и ошибки по секундам, минутам и часам
+    private final BoundedSet refererDomains; // домены рефереров
+    private final BoundedCounter visitsPerUser; // посещения по пользователям (IPv4-адреса реальных пользователей как int)
+    private final BoundedCounter visitsPerOtherUser; // посещения с остальных адресов по их 64-битному хешу
+    private final Sessions sessions; // сессии реальных пользователей
+
+    // Самые частые страницы, несуществующие страницы и домены рефереров для топов отчёта:
+    // точный счёт по номерам словарей, при бюджете памяти - оценки Space-Saving
+    private final TopCounter topPages;
+    private final TopCounter topNotFoundPages;
+    private final TopCounter topRefererDomains;
+
+    // обращения к кешу классификации User-Agent, накопленные потоками разбора
+    private long userAgentCacheHits;
+    private long userAgentCacheMisses;
+
+    public Statistics() {
+        this(Long.MAX_VALUE);
+    }
+
+    public Statistics(long memoryBudget) {
+        this(memoryBudget, EnumSet.allOf(Metric.class));
+    }
+
+    /**
+     * Статистика с ограничением памяти: множества страниц, IP и доменов, а также счётчики
+     * по пользователям при превышении бюджета переходят на приблизительные оценки,
+     * а посекундный ряд сворачивает самые старые секунды в итоги
+     * @param memoryBudget бюджет памяти в байтах на каждую такую структуру
+     * @param metrics собираемые группы показателей; зависимости добавляются сами
+     */
+    public Statistics(long memoryBudget, Set<Metric> metrics) {
+        this(memoryBudget, metrics, Sessions.DEFAULT_TIMEOUT_SECONDS);
+    }
+
+    /**
+     * @param memoryBudget бюджет памяти в байтах на каждую ограниченную структуру
+     * @param metrics собираемые группы показателей; зависимости добавляются сами
+     * @param sessionTimeoutSeconds наибольший перерыв между запросами одной сессии
+     */
+    public Statistics(long memoryBudget, Set<Metric> metrics, int sessionTimeoutSeconds) {
+        this.memoryBudget = memoryBudget;
+        this.metrics = Metric.withDependencies(metrics);
+        this.collectsTime = this.metrics.contains(Metric.TIME);
+        this.collectsTraffic = this.metrics.contains(Metric.TRAFFIC);
+        this.collectsStatus = this.metrics.contains(Metric.STATUS);
+        this.collectsAgents = this.metrics.contains(Metric.AGENTS);
+        this.collectsUsers = this.metrics.contains(Metric.USERS);
+        this.collectsPages = this.metrics.contains(Metric.PAGES);
+        this.collectsReferers = this.metrics.contains(Metric.REFERERS);
+        this.collectsSessions = this.metrics.contains(Metric.SESSIONS);
+        this.totalTraffic = 0;
+        this.minTime = Long.MAX_VALUE;
+        this.maxTime = Long.MIN_VALUE;
+        this.existingPages = new BoundedSet(memoryBudget, paths);
+
+        // Инициализация существующих полей
+        this.notFoundPages = new BoundedSet(memoryBudget, paths);
+
+        // Инициализация новых полей
+        this.humanVisits = 0;
+        this.errorRequests = 0;
+        this.uniqueHumanIPs = new BoundedSet(memoryBudget, addresses);
+
+        // Инициализация дополнительных полей
+        this.timeSeries = new TimeSeries(memoryBudget);
+        this.refererDomains = new BoundedSet(memoryBudget, domains);
+        this.visitsPerUser = BoundedCounter.withIntKeys(memoryBudget);
+        this.visitsPerOtherUser = BoundedCounter.withLongKeys(memoryBudget);
+        this.sessions = new Sessions(sessionTimeoutSeconds);
+
+        // счётчики топов: точно без бюджета, иначе не больше TOP_CAPACITY на структуру и в пределах бюджета
+        if (memoryBudget == Long.MAX_VALUE) {
+            this.topPages = TopCounter.exact(paths);
+            this.topNotFoundPages = TopCounter.exact(paths);
+            this.topRefererDomains = TopCounter.exact(domains);
+        } else {
+            int topCapacity = (int) Math.min(TOP_CAPACITY, memoryBudget / TOP_ENTRY_BYTES);
+            this.topPages = TopCounter.approximate(paths, topCapacity);
+            this.topNotFoundPages = TopCounter.approximate(paths, topCapacity);
+            this.topRefererDomains = TopCounter.approximate(domains, topCapacity);
+        }
+    }
+
+    public void addEntry(LogRecord entry) {
+        // поля записи читаются только для собираемых групп: ленивая запись их иначе не декодирует
+        int responseCode = entry.getResponseCode();
+
+        // Добавлен трафик
+        if (collectsTraffic) {
+            this.totalTraffic += entry.getDataSize();
+        }
+
+        // Обновляем min и max; строки с неразобранным временем в них не участвуют
+        long entryTime = collectsTime ? entry.getEpochSecond() : TimestampParser.INVALID;
+        boolean hasTime = entryTime != TimestampParser.INVALID;
+        if (hasTime && entryTime < minTime) {
+            minTime = entryTime;
+        }
+        if (hasTime && entryTime > maxTime) {
+            maxTime = entryTime;
+        }
+
+        // статистика по браузерам и ОС
+        boolean isHuman = false;
+        UserAgent userAgent = null;
+        if (collectsAgents) {
+            userAgent = entry.getUserAgent();
+            browserStats.increment(userAgent.getBrowserType());
+            osStats.increment(userAgent.getOs());
+            deviceStats.increment(userAgent.getDevice());
+            isHuman = !userAgent.isBot();
+            if (!isHuman) {
+                botFamilies.merge(userAgent.getBotFamily(), 1, Integer::sum);
+            }
+        }
+
+        // страницы с ответом 200
+        if (collectsPages && responseCode == 200) {
+            existingPages.add(entry.getPath());
+            topPages.add(entry.getPath());
+        }
+
+        // страницы с ответом 404
+        if (collectsPages && responseCode == 404) {
+            notFoundPages.add(entry.getPath());
+            topNotFoundPages.add(entry.getPath());
+        }
+
+        // Подсчет посещений реальными пользователями
+        if (isHuman) {
+            humanVisits++;
+        }
+
+        // Подсчет посещений по пользователям (IP-адреса реальных пользователей);
+        // адрес IPv4 учитывается числом, без строки
+        if (isHuman && collectsUsers) {
+            long ipv4 = entry.getIPv4();
+            if (ipv4 >= 0) {
+                uniqueHumanIPs.addIPv4(ipv4);
+                visitsPerUser.increment(ipv4);
+            } else {
+                uniqueHumanIPs.add(entry.getIpAddress());
+                visitsPerOtherUser.increment(HyperLogLog.hash(entry.getIpAddress()));
+            }
+        }
+
+        // Сессии реальных пользователей; запросы без времени в них не попадают
+        if (isHuman && hasTime && collectsSessions) {
+            sessions.add(Sessions.key(entry, userAgent), entryTime);
+        }
+
+        // Ряды по секундам, минутам и часам; из них считается пиковая посещаемость.
+        // Столбцы несобираемых групп остаются нулевыми
+        if (hasTime) {
+            timeSeries.add(entryTime, collectsTraffic ? entry.getDataSize() : 0, isHuman,
+                    collectsStatus ? responseCode : 0);
+        }
+
+        // Подсчет ошибочных запросов (4xx или 5xx)
+        if (collectsStatus && responseCode >= 400 && responseCode < 600) {
+            errorRequests++;
+        }
+
+        // Сбор доменов рефереров
+        if (collectsReferers) {
+            String domain = entry.getRefererDomain();
+            if (domain != null) {
+                refererDomains.add(domain);
+                topRefererDomains.add(domain);
+            }
+        }
+    }
+
+    // Учёт прочитанной строки лога, в том числе ещё не разобранной
+    public void countLine() {
+        totalLines++;
+    }
+
+    // Учёт попаданий и промахов кеша User-Agent, которым пользовался поток разбора
+    public void countUserAgentCache(UserAgentCache cache) {
+        userAgentCacheHits += cache.getHits();
+        userAgentCacheMisses += cache.getMisses();
+    }
+
+    /**
+     * Объединение со статистикой следующего фрагмента того же файла.
+     * Без бюджета памяти результат точно совпадает с последовательным проходом по обоим фрагментам:
+     * счётчики складываются, границы времени сравниваются, множества объединяются.
+     * С бюджетом объединяются оценки Space-Saving и HyperLogLog, и результат может отличаться
+     * от последовательного прохода в пределах их погрешности.
+     * Новые ключи добавляются в порядке обхода other, поэтому при объединении фрагментов
+     * по порядку следования порядок обхода множеств совпадает с последовательным проходом.
+     * @param other статистика фрагмента, следующего за уже учтёнными
+     */
+    public void merge(Statistics other) {
+        this.totalLines += other.totalLines;
+        this.totalTraffic += other.totalTraffic;
+        minTime = Math.min(minTime, other.minTime);
+        maxTime = Math.max(maxTime, other.maxTime);
+
+        browserStats.merge(other.browserStats);
+        osStats.merge(other.osStats);
+        deviceStats.merge(other.deviceStats);
+        other.botFamilies.forEach((family, count) -> botFamilies.merge(family, count, Integer::sum));
+        // номера другой статистики переводятся в свои; новые значения получают номера в порядке появления
+        int[] pathIds = paths.translate(other.paths);
+        existingPages.merge(other.existingPages, pathIds);
+        notFoundPages.merge(other.notFoundPages, pathIds);
+
+        this.humanVisits += other.humanVisits;
+        this.errorRequests += other.errorRequests;
+        uniqueHumanIPs.merge(other.uniqueHumanIPs, addresses.translate(other.addresses));
+
+        timeSeries.merge(other.timeSeries);
+        int[] domainIds = domains.translate(other.domains);
+        refererDomains.merge(other.refererDomains, domainIds);
+        visitsPerUser.merge(other.visitsPerUser);
+        visitsPerOtherUser.merge(other.visitsPerOtherUser);
+        topPages.merge(other.topPages, pathIds);
+        topNotFoundPages.merge(other.topNotFoundPages, pathIds);
+        topRefererDomains.merge(other.topRefererDomains, domainIds);
+        if (collectsSessions && other.collectsSessions) {
+            sessions.merge(other.sessions);
+        }
+        this.userAgentCacheHits += other.userAgentCacheHits;
+        this.userAgentCacheMisses += other.userAgentCacheMisses;
+    }
+
+    /**
+     * Запись в компактный двоичный снимок: счётчики, границы времени, временные ряды,
+     * счётчики по пользователям, словари и множества страниц, IP и доменов
+     * @param out поток снимка
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(memoryBudget);
+        out.writeInt(Metric.toMask(metrics));
+        out.writeInt(sessions.getTimeoutSeconds());
+        out.writeLong(totalLines);
+        out.writeInt(totalTraffic);
+        out.writeLong(minTime);
+        out.writeLong(maxTime);
+        out.writeInt(humanVisits);
+        out.writeInt(errorRequests);
+        out.writeLong(userAgentCacheHits);
+        out.writeLong(userAgentCacheMisses);
+        browserStats.writeTo(out);
+        osStats.writeTo(out);
+        deviceStats.writeTo(out);
+        out.writeInt(botFamilies.size());
+        for (Map.Entry<String, Integer> entry : botFamilies.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue());
+        }
+        paths.writeTo(out);
+        addresses.writeTo(out);
+        domains.writeTo(out);
+        existingPages.writeTo(out);
+        notFoundPages.writeTo(out);
+        uniqueHumanIPs.writeTo(out);
+        refererDomains.writeTo(out);
+        timeSeries.writeTo(out);
+        visitsPerUser.writeTo(out);
+        visitsPerOtherUser.writeTo(out);
+        topPages.writeTo(out);
+        topNotFoundPages.writeTo(out);
+        topRefererDomains.writeTo(out);
+        sessions.writeTo(out);
+    }
+
+    /**
+     * Чтение статистики, записанной writeTo
+     * @param in поток снимка
+     * @return статистика с тем же бюджетом памяти, что и сохранённая
+     */
+    public static Statistics readFrom(DataInput in) throws IOException {
+        Statistics stats = new Statistics(in.readLong(), Metric.fromMask(in.readInt()), in.readInt());
+        stats.totalLines = in.readLong();
+        stats.totalTraffic = in.readInt();
+        stats.minTime = in.readLong();
+        stats.maxTime = in.readLong();
+        stats.humanVisits = in.readInt();
+        stats.errorRequests = in.readInt();
+        stats.userAgentCacheHits = in.readLong();
+        stats.userAgentCacheMisses = in.readLong();
+        stats.browserStats.readFrom(in);
+        stats.osStats.readFrom(in);
+        stats.deviceStats.readFrom(in);
+        int families = in.readInt();
+        for (int i = 0; i < families; i++) {
+            stats.botFamilies.put(in.readUTF(), in.readInt());
+        }
+        stats.paths.readFrom(in);
+        stats.addresses.readFrom(in);
+        stats.domains.readFrom(in);
+        stats.existingPages.readFrom(in);
+        stats.notFoundPages.readFrom(in);
+        stats.uniqueHumanIPs.readFrom(in);
+        stats.refererDomains.readFrom(in);
+        stats.timeSeries.readFrom(in);
+        stats.visitsPerUser.readFrom(in);
+        stats.visitsPerOtherUser.readFrom(in);
+        stats.topPages.readFrom(in);
+        stats.topNotFoundPages.readFrom(in);
+        stats.topRefererDomains.readFrom(in);
+        stats.sessions.readFrom(in);
+        return stats;
+    }
+
+    /**
+     * Метод расчёта пиковой посещаемости сайта (в секунду)
+     * @return максимальное количество посещений за одну секунду
+     */
+    public int getPeakVisitsPerSecond() {
+        return timeSeries.getPeakHumanVisitsPerSecond();
+    }
+
+    /**
+     * Метод, возвращающий список сайтов, со страниц которых есть ссылки на текущий сайт
+     * @return Set<String> содержащий доменные имена рефереров в порядке первого появления; представление без копирования, только для чтения
+     */
+    public Set<String> getRefererDomains() {
+        return refererDomains.values();
+    }
+
+    /**
+     * Метод расчёта максимальной посещаемости одним пользователем
+     * @return максимальное количество посещений одним пользователем
+     */
+    public int getMaxVisitsPerUser() {
+        return Math.max(visitsPerUser.max(), visitsPerOtherUser.max());
+    }
+
+    /**
+     * Метод подсчёта среднего количества посещений сайта за час
+     * @return среднее количество посещений реальными пользователями за час
+     */
+    public double getAverageVisitsPerHour() {
+        if (minTime >= maxTime) {
+            return 0.0;
+        }
+
+        long hoursBetween = (maxTime - minTime) / 3600;
+        if (hoursBetween == 0) {
+            hoursBetween = 1;
+        }
+
+        return (double) humanVisits / hoursBetween;
+    }
+
+    /**
+     * Метод подсчёта среднего количества ошибочных запросов в час
+     * @return среднее количество ошибочных запросов в час
+     */
+    public double getAverageErrorRequestsPerHour() {
+        if (minTime >= maxTime) {
+            return 0.0;
+        }
+
+        long hoursBetween = (maxTime - minTime) / 3600;
+        if (hoursBetween == 0) {
+            hoursBetween = 1;
+        }
+
+        return (double) errorRequests / hoursBetween;
+    }
+
+    /**
+     * Метод расчёта средней посещаемости одним пользователем
+     * @return среднее количество посещений на одного реального пользователя
+     */
+    public double getAverageVisitsPerUser() {
+        if (uniqueHumanIPs.count() == 0) {
+            return 0.0;
+        }
+
+        return (double) humanVisits / uniqueHumanIPs.count();
+    }
+
+    /**
+     * Возврат страниц с ответом 200
+     * @return Set<String> содержащий адреса существующих страниц в порядке первого появления; представление без копирования, только для чтения
+     */
+    public Set<String> getExistingPages() {
+        return existingPages.values();
+    }
+
+    /**
+     * Возврат страниц с ответом 404
+     * @return Set<String> содержащий адреса несуществующих страниц в порядке первого появления; представление без копирования, только для чтения
+     */
+    public Set<String> getNotFoundPages() {
+        return notFoundPages.values();
+    }
+
+    /**
+     * Самые запрашиваемые страницы с ответом 200
+     * @param limit сколько страниц вернуть
+     * @return счётчики по убыванию числа запросов; оценка завышена не более чем на getError()
+     */
+    public List<SpaceSaving.Counter<String>> getTopPages(int limit) {
+        return topPages.top(limit);
+    }
+
+    // Самые частые страницы с ответом 404
+    public List<SpaceSaving.Counter<String>> getTopNotFoundPages(int limit) {
+        return topNotFoundPages.top(limit);
+    }
+
+    // Домены рефереров с наибольшим числом переходов
+    public List<SpaceSaving.Counter<String>> getTopRefererDomains(int limit) {
+        return topRefererDomains.top(limit);
+    }
+
+    /**
+     * IPv4-адреса реальных пользователей с наибольшим числом посещений.
+     * Остальные адреса считаются по хешу и в топ не попадают.
+     * @param limit сколько адресов вернуть
+     */
+    public List<SpaceSaving.Counter<String>> getTopHumanIPs(int limit) {
+        List<SpaceSaving.Counter<String>> result = new ArrayList<>();
+        for (SpaceSaving.Counter<Long> counter : visitsPerUser.top(limit)) {
+            String address = Dictionary.formatIPv4(counter.getKey());
+            result.add(new SpaceSaving.Counter<>(address, counter.getCount(), counter.getError()));
+        }
+        return result;
+    }
+
+    // Число различных страниц, доменов и IP: точное или оценка, если множество превысило бюджет памяти
+    public long getExistingPagesCount() { return existingPages.count(); }
+    public long getNotFoundPagesCount() { return notFoundPages.count(); }
+    public long getRefererDomainsCount() { return refererDomains.count(); }
+
+    // Топы посчитаны точно: без бюджета памяти или без вытеснений Space-Saving
+    public boolean isTopPagesExact() { return topPages.isExact(); }
+    public boolean isTopNotFoundPagesExact() { return topNotFoundPages.isExact(); }
+    public boolean isTopRefererDomainsExact() { return topRefererDomains.isExact(); }
+    public long getUniqueHumanIPsCount() { return uniqueHumanIPs.count(); }
+
+    public boolean isMemoryBounded() { return memoryBudget != Long.MAX_VALUE; }
+
+    // Собирается ли группа показателей; зависимости выбранных групп уже учтены
+    public boolean collects(Metric metric) { return metrics.contains(metric); }
+
+    // Число ошибочных запросов и посещений реальными пользователями за весь период
+    public int getErrorRequests() { return errorRequests; }
+    public int getHumanVisits() { return humanVisits; }
+
+    /**
+     * Описание точности показателей, зависящих от ограниченных по памяти структур
+     * @return название показателя и "точно" либо способ оценки с границей погрешности
+     */
+    public Map<String, String> getAccuracy() {
+        Map<String, String> accuracy = new LinkedHashMap<>();
+        if (collectsPages) {
+            accuracy.put("Существующие страницы", describe(existingPages));
+            accuracy.put("Несуществующие страницы", describe(notFoundPages));
+            accuracy.put("Топ страниц", describe(topPages));
+            accuracy.put("Топ несуществующих страниц", describe(topNotFoundPages));
+        }
+        if (collectsUsers) {
+            accuracy.put("Уникальные IP реальных пользователей", describe(uniqueHumanIPs));
+        }
+        if (collectsReferers) {
+            accuracy.put("Сайты-рефереры", describe(refererDomains));
+            accuracy.put("Топ сайтов-рефереров", describe(topRefererDomains));
+        }
+        if (collectsTime && collectsAgents) {
+            accuracy.put("Пиковая посещаемость сайта", describe(timeSeries));
+        }
+        if (collectsUsers) {
+            accuracy.put("Максимальная посещаемость одним пользователем", describe(visitsPerUser, visitsPerOtherUser));
+        }
+        return accuracy;
+    }
+
+    private static String describe(BoundedSet set) {
+        if (set.isExact()) {
+            return "точно";
+        }
+        return String.format("оценка HyperLogLog, стандартная ошибка %.2f%%, в списке образец из %d значений",
+                HyperLogLog.standardError() * 100, set.values().size());
+    }
+
+    private static String describe(TopCounter counter) {
+        if (counter.isExact()) {
+            return "точно";
+        }
+        return "оценка Space-Saving, завышение не более " + counter.errorBound();
+    }
+
+    private static String describe(TimeSeries series) {
+        if (series.isExact()) {
+            return "точно";
+        }
+        return "без " + series.getLateRequests() + " запросов, пришедших в уже свёрнутые секунды";
+    }
+
+    private static String describe(BoundedCounter... counters) {
+        long errorBound = 0;
+        boolean exact = true;
+        for (BoundedCounter counter : counters) {
+            exact &= counter.isExact();
+            errorBound = Math.max(errorBound, counter.errorBound());
+        }
+        if (exact) {
+            return "точно";
+        }
+        return "оценка Space-Saving, завышение не более " + errorBound;
+    }
+
+    /**
+     * Возврат ОС
+     * @return Map<String, Double> где ключ - название ОС, значение - доля от общего количества
+     */
+    public Map<String, Double> getOsStatistics() {
+        return osStats.toShares();
+    }
+
+    /**
+     * Возврат браузеров
+     * @return Map<String, Double> где ключ - название браузера, значение - процент от общего количества
+     */
+    public Map<String, Double> getBrowserStatistics() {
+        return browserStats.toShares();
+    }
+
+    public double getTrafficRate() {
+        if (minTime >= maxTime) {
+            return 0.0;
+        }
+
+        long hoursBetween = (maxTime - minTime) / 3600;
+        if (hoursBetween == 0) {
+            hoursBetween = 1;
+        }
+
+        return (double) totalTraffic / hoursBetween;
+    }
+
+    /**
+     * Оценка памяти, занятой множествами и счётчиками статистики, по тем же правилам,
+     * по которым они укладываются в бюджет памяти
+     * @return байты
+     */
+    public long estimatedBytes() {
+        return existingPages.estimatedBytes() + notFoundPages.estimatedBytes() + uniqueHumanIPs.estimatedBytes()
+                + refererDomains.estimatedBytes() + timeSeries.estimatedBytes()
+                + visitsPerUser.estimatedBytes() + visitsPerOtherUser.estimatedBytes() + sessions.estimatedBytes()
+                + (long) (topPages.size() + topNotFoundPages.size() + topRefererDomains.size())
+                * (memoryBudget == Long.MAX_VALUE ? TOP_EXACT_ENTRY_BYTES : TOP_ENTRY_BYTES);
+    }
+
+    // Геттеры
+    public long getTotalLines() { return totalLines; }
+    public TimeSeries getTimeSeries() { return timeSeries; }
+    public Sessions getSessions() { return sessions; }
+    public long getUserAgentCacheHits() { return userAgentCacheHits; }
+    public long getUserAgentCacheMisses() { return userAgentCacheMisses; }
+   // public int getTotalTraffic() { return totalTraffic; }
+    //public long getMinTime() { return minTime; }
+    //public long getMaxTime() { return maxTime; }
+    public Map<String, Integer> getBrowserStats() { return browserStats.toMap(); }
+    public Map<String, Integer> getOsStats() { return osStats.toMap(); }
+    public Map<String, Integer> getDeviceStats() { return deviceStats.toMap(); }
+    public Map<String, Integer> getBotFamilies() { return Collections.unmodifiableMap(botFamilies); }
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Чтение целых строк файла с заданной байтовой позиции порциями фиксированного размера.
+ * После каждой порции известна точная позиция сразу за последней учтённой строкой,
+ * поэтому чтение можно прервать и продолжить с неё: при слежении за файлом
+ * и при возобновлении анализа с контрольной точки.
+ */
+class OffsetLineReader {
+    // Размер порции; строка длиннее него заведомо длиннее допустимой
+    private static final int BUFFER_BYTES = 1 << 20;
+
+    private final LineProcessor processor;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final DelimiterIndex index = new DelimiterIndex();
+    // остаток отвергнутой длинной строки ещё не дочитан до перевода строки
+    private boolean skipping;
+
+    OffsetLineReader(LineProcessor processor) {
+        this.processor = processor;
+    }
+
+    /**
+     * Разбирает целые строки из одной порции файла
+     * @param channel файл
+     * @param offset позиция начала строки
+     * @param includeTail разобрать и последнюю строку без перевода строки, если порция дошла до конца файла
+     * @return позиция после последней разобранной строки; равна offset, если целых строк нет
+     */
+    public long read(FileChannel channel, long offset, boolean includeTail) throws IOException {
+        if (skipping) {
+            return skipLine(channel, offset);
+        }
+        buffer.clear();
+        int read = channel.read(buffer, offset);
+        if (read <= 0) {
+            return offset;
+        }
+        int lineStart = index.processLines(buffer, 0, read, false, processor);
+        boolean tail = includeTail && offset + read >= channel.size();
+        if (lineStart < read && tail) {
+            // последняя строка файла без перевода строки
+            processor.process(buffer, lineStart, trimCarriageReturn(lineStart, read));
+            lineStart = read;
+        } else if (lineStart == 0 && read == buffer.capacity()) {
+            // строка без перевода строки на всю порцию: её начало отвергнет проверка длины,
+            // а остаток до перевода строки пропускается, чтобы не разбирать его как новую строку
+            processor.process(buffer, 0, read);
+            skipping = true;
+            return skipLine(channel, offset + read);
+        }
+        return offset + lineStart;
+    }
+
+    /**
+     * Пропуск остатка длинной строки
+     * @param offset позиция внутри строки
+     * @return позиция после её перевода строки или конец файла, если перевода строки ещё нет
+     */
+    private long skipLine(FileChannel channel, long offset) throws IOException {
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return offset;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    skipping = false;
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Разбирает все целые строки до текущего конца файла
+     * @return позиция после последней разобранной строки
+     */
+    public long readAll(FileChannel channel, long offset, boolean includeTail) throws IOException {
+        long next;
+        while ((next = read(channel, offset, includeTail)) != offset) {
+            offset = next;
+        }
+        return offset;
+    }
+
+    // Конец строки без завершающего '\r', как у BufferedReader.readLine
+    private int trimCarriageReturn(int start, int end) {
+        return end > start && buffer.get(end - 1) == '\r' ? end - 1 : end;
+    }
+}
@@ -0,0 +1,181 @@
+package parser;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Пропуск неразобранных строк в терпимом режиме: счёт по причинам, равномерная выборка
+ * пропущенных строк ограниченного размера (reservoir sampling) для отдельного файла
+ * и прерывание анализа, если доля пропущенных строк превысила заданный порог.
+ * Пропуск - редкий путь, поэтому выборка защищена монитором объекта.
+ */
+class RejectedLines {
+    // Причины пропуска строки
+    enum Reason {
+        TOO_LONG("too_long", "слишком длинных"),
+        BAD_FORMAT("bad_format", "неверного формата");
+
+        private final String id;
+        private final String title;
+
+        Reason(String id, String title) {
+            this.id = id;
+            this.title = title;
+        }
+
+        public String getId() { return id; }
+        public String getTitle() { return title; }
+    }
+
+    // Долю пропущенных строк не проверяем, пока строк слишком мало для оценки
+    private static final long MIN_LINES_FOR_LIMIT = 10_000;
+    // Длиннее этого строка попадает в выборку обрезанной
+    private static final int MAX_SAMPLE_LINE_LENGTH = 4096;
+
+    private final AnalysisMetrics metrics;
+    private final double maxRate;
+    private final int sampleSize;
+    private final Path samplePath;
+    private final List<Entry> sample = new ArrayList<>();
+    private final Random random = new Random(1);
+    private long sampled;
+
+    RejectedLines(AnalysisOptions options) {
+        this.metrics = options.getMetrics();
+        this.maxRate = options.getMaxRejectRate();
+        this.sampleSize = options.getRejectSampleSize();
+        this.samplePath = Paths.get(options.getRejectSamplePath() != null
+                ? options.getRejectSamplePath() : options.getOutputPath() + ".rejected.txt");
+    }
+
+    // Строка выборки; номер строки от начала файла вычисляется при записи, когда он известен
+    private static final class Entry {
+        private final Reason reason;
+        private final LineSource source;
+        private final long lineNumber;
+        private final String text;
+
+        Entry(Reason reason, LineSource source, long lineNumber, String text) {
+            this.reason = reason;
+            this.source = source;
+            this.lineNumber = lineNumber;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Учёт пропущенной строки
+     * @param reason причина
+     * @param source файл или фрагмент файла, в котором лежит строка
+     * @param lineNumber номер строки от начала source
+     * @param line строка
+     * @throws TooManyRejectedLinesException если доля пропущенных строк превысила порог
+     */
+    public void reject(Reason reason, LineSource source, long lineNumber, CharSequence line) {
+        addToSample(reason, source, lineNumber, line);
+        // другие потоки разбора переносят свои строки в метрики раз в несколько сотен строк,
+        // поэтому во время анализа доля оценивается с небольшим завышением, а точно - в finish
+        long skipped = metrics.getSkippedLines();
+        long lines = Math.max(metrics.getLines(), skipped);
+        if (lines >= MIN_LINES_FOR_LIMIT && skipped > maxRate * lines) {
+            abort(skipped, lines);
+        }
+    }
+
+    private synchronized void addToSample(Reason reason, LineSource source, long lineNumber, CharSequence line) {
+        sampled++;
+        int slot = sample.size();
+        if (slot >= sampleSize) {
+            // каждая из sampled строк остаётся в выборке с равной вероятностью
+            long candidate = (long) (random.nextDouble() * sampled);
+            if (candidate >= sampleSize) {
+                return;
+            }
+            slot = (int) candidate;
+        }
+        CharSequence text = line.length() > MAX_SAMPLE_LINE_LENGTH ? line.subSequence(0, MAX_SAMPLE_LINE_LENGTH) : line;
+        Entry entry = new Entry(reason, source, lineNumber, text.toString());
+        if (slot == sample.size()) {
+            sample.add(entry);
+        } else {
+            sample.set(slot, entry);
+        }
+    }
+
+    private void abort(long skipped, long lines) {
+        writeSample();
+        throw new TooManyRejectedLinesException(String.format(
+                "Пропущено %d строк из %d (%.2f%%), порог %.2f%%; пример пропущенных строк: %s",
+                skipped, lines, 100.0 * skipped / lines, maxRate * 100, samplePath));
+    }
+
+    /**
+     * Итог по окончании анализа: печать числа пропусков по причинам, запись выборки
+     * и точная проверка доли пропущенных строк
+     */
+    public void finish() {
+        long skipped = metrics.getSkippedLines();
+        if (skipped == 0) {
+            return;
+        }
+        long lines = metrics.getLines();
+        StringBuilder reasons = new StringBuilder();
+        for (Reason reason : Reason.values()) {
+            long count = metrics.getSkippedLines(reason);
+            if (count > 0) {
+                reasons.append(reasons.length() == 0 ? "" : ", ").append(reason.getTitle()).append(": ").append(count);
+            }
+        }
+        System.out.printf("Пропущено строк: %d из %d (%s)%n", skipped, lines, reasons);
+        writeSample();
+        if (skipped > maxRate * lines) {
+            abort(skipped, lines);
+        }
+    }
+
+    /**
+     * Перезапись файла с выборкой пропущенных строк: причина, файл, номер строки и строка через табуляцию.
+     * При окне --from/--to номера строк считаются от его начала, о чём говорит сообщение о выборке.
+     * Строки фрагментов, начало которых ещё неизвестно, не пишутся: при прерывании анализа
+     * такие фрагменты лежат дальше места остановки
+     */
+    public synchronized void writeSample() {
+        if (sample.isEmpty()) {
+            return;
+        }
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(samplePath, StandardCharsets.UTF_8))) {
+            int written = 0;
+            long origin = 0;
+            for (Entry entry : sample) {
+                long linesBefore = entry.source.getLinesBefore();
+                if (linesBefore == LineSource.UNKNOWN) {
+                    continue;
+                }
+                origin = Math.max(origin, entry.source.getOrigin());
+                writer.println(entry.reason.getId() + "\t" + entry.source.getFile() + "\t"
+                        + (linesBefore + entry.lineNumber) + "\t" + entry.text);
+                written++;
+            }
+            if (written > 0) {
+                System.out.println("Пример пропущенных строк (" + written + " из " + sampled + "): " + samplePath
+                        + (origin > 0 ? "; номера строк считаются от начала окна --from/--to, байта " + origin + " файла" : ""));
+            }
+        } catch (IOException e) {
+            System.err.println("Не удалось записать пропущенные строки: " + e.getMessage());
+        }
+    }
+}
+
+// Доля пропущенных строк превысила порог терпимого режима
+class TooManyRejectedLinesException extends RuntimeException {
+    public TooManyRejectedLinesException(String message) {
+        super(message);
+    }
+}
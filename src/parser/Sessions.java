@@ -0,0 +1,418 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Сессии реальных пользователей: запросы с одного IP и одного User-Agent, между которыми
+ * проходит не больше timeout секунд, образуют сессию. Для каждой сессии известны первое
+ * и последнее время и число запросов; по завершённым сессиям копятся итоги длительности,
+ * запросов и отказов - сессий из одного запроса.
+ * Завершение ведёт TimingWheel по времени лога: часы - наибольшее встреченное время,
+ * а сессия завершается, когда часы уходят дальше её последнего запроса больше чем на timeout.
+ * Продление сессии не трогает колесо: сработавшая сессия с более поздним последним запросом
+ * просто встаёт на новый срок. Поэтому память пропорциональна числу открытых сессий,
+ * а не всех пользователей лога.
+ * Сессии лежат в параллельных массивах по номерам ячеек, номер открытой сессии ищется
+ * в LongIntHashMap по 64-битному ключу из IP и хеша User-Agent.
+ * Первые сессии фрагмента хранятся до объединения только во фрагментах, которые объединяются
+ * с предыдущими (см. keepHeads); при последовательном проходе они завершаются как все остальные.
+ * Не потокобезопасен.
+ */
+class Sessions {
+    static final int DEFAULT_TIMEOUT_SECONDS = 30 * 60;
+    // Оценка памяти на сессию: ячейки массивов, таблицы открытых сессий и колеса
+    private static final int SESSION_BYTES = 80;
+
+    // Состояние ячейки: 0 - свободна
+    private static final byte ACTIVE = 1; // открыта и лежит в active
+    private static final byte HEAD = 2; // первая сессия ключа в начале фрагмента, лежит в heads
+    private static final byte WHEEL = 4; // стоит на колесе
+
+    private final int timeoutSeconds;
+    // ключ -> номер ячейки + 1 открытой сессии
+    private final LongIntHashMap active = new LongIntHashMap();
+    // ключ -> номер ячейки + 1 первой сессии ключа, начатой в первые timeout секунд фрагмента:
+    // при объединении она может оказаться продолжением сессии предыдущего фрагмента
+    private final LongIntHashMap heads = new LongIntHashMap();
+    private final TimingWheel wheel = new TimingWheel();
+    // первые сессии отмечаются, только если фрагмент будет объединён с предыдущими
+    private boolean keepsHeads;
+
+    private long[] keys = new long[64];
+    private long[] firsts = new long[64];
+    private long[] lasts = new long[64];
+    private int[] pages = new int[64];
+    // часы на момент начала сессии
+    private long[] openedAt = new long[64];
+    private byte[] states = new byte[64];
+    // занятые когда-либо ячейки - [0, used); свободные из них собраны в стек
+    private int used;
+    private int[] free = new int[64];
+    private int freeCount;
+
+    // наибольшее время запроса; Long.MIN_VALUE - запросов ещё не было
+    private long watermark = Long.MIN_VALUE;
+    // часы на первом запросе фрагмента
+    private long startTime = Long.MIN_VALUE;
+
+    // итоги завершённых сессий
+    private long sessions;
+    private long totalSeconds;
+    private long totalPages;
+    private long bounces;
+
+    /**
+     * @param timeoutSeconds наибольший перерыв между запросами одной сессии
+     */
+    Sessions(int timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    /**
+     * Фрагмент продолжает уже учтённые и будет объединён с ними через merge: его первые сессии
+     * хранятся до объединения, даже если колесо их уже завершило. Вызывается до первого запроса
+     */
+    public void keepHeads() {
+        keepsHeads = true;
+    }
+
+    /**
+     * Ключ сессии: IPv4-адрес числом или хеш иного адреса вместе с хешем строки User-Agent
+     * @param entry запись реального пользователя
+     * @param userAgent её User-Agent
+     */
+    static long key(LogRecord entry, UserAgent userAgent) {
+        long ipv4 = entry.getIPv4();
+        long address = ipv4 >= 0 ? ipv4 : HyperLogLog.hash(entry.getIpAddress());
+        return HyperLogLog.mix(address * 0x9E3779B97F4A7C15L ^ userAgent.getHash());
+    }
+
+    /**
+     * Учёт запроса
+     * @param key ключ сессии, см. key
+     * @param epochSecond время запроса
+     */
+    public void add(long key, long epochSecond) {
+        advance(epochSecond);
+        int slot = active.get(key) - 1;
+        if (slot >= 0 && watermark - lasts[slot] > timeoutSeconds) {
+            // сессия, начатая запросом, который опоздал больше чем на тайм-аут: колесо завершит её
+            // на следующей секунде, а этот запрос начинает новую
+            active.remove(key);
+            states[slot] &= ~ACTIVE;
+            slot = -1;
+        }
+        if (slot >= 0) {
+            pages[slot]++;
+            firsts[slot] = Math.min(firsts[slot], epochSecond);
+            lasts[slot] = Math.max(lasts[slot], epochSecond);
+            return;
+        }
+        slot = allocate(key, epochSecond, epochSecond, 1, watermark);
+        open(slot);
+        if (keepsHeads && watermark - startTime <= timeoutSeconds && heads.get(key) == 0) {
+            heads.put(key, slot + 1);
+            states[slot] |= HEAD;
+        }
+    }
+
+    // Продвижение часов с завершением сессий, простоявших дольше тайм-аута
+    private void advance(long epochSecond) {
+        if (watermark == Long.MIN_VALUE) {
+            watermark = epochSecond;
+            startTime = epochSecond;
+            wheel.reset(epochSecond + 1);
+            return;
+        }
+        if (epochSecond <= watermark) {
+            return;
+        }
+        if (epochSecond - watermark > timeoutSeconds) {
+            // скачок дальше тайм-аута: сессии проверяются разом, без прохода колеса по каждой секунде
+            expireAll(epochSecond);
+        } else {
+            wheel.advance(epochSecond, this::expire);
+        }
+        watermark = epochSecond;
+    }
+
+    // Срабатывание сессии на колесе: завершение или новый срок по последнему запросу
+    private long expire(int slot, long tick) {
+        long deadline = lasts[slot] + timeoutSeconds + 1;
+        if ((states[slot] & ACTIVE) != 0 && deadline > tick) {
+            return deadline;
+        }
+        states[slot] &= ~WHEEL;
+        close(slot);
+        return TimingWheel.DONE;
+    }
+
+    private void expireAll(long epochSecond) {
+        int[] scheduled = new int[wheel.size()];
+        int count = 0;
+        for (int slot = 0; slot < used; slot++) {
+            if ((states[slot] & WHEEL) != 0) {
+                scheduled[count++] = slot;
+            }
+        }
+        wheel.clear();
+        wheel.reset(epochSecond + 1);
+        for (int i = 0; i < count; i++) {
+            int slot = scheduled[i];
+            long deadline = expire(slot, epochSecond);
+            if (deadline != TimingWheel.DONE) {
+                wheel.schedule(slot, deadline);
+            }
+        }
+    }
+
+    // Открытая сессия ставится в таблицу и на колесо
+    private void open(int slot) {
+        active.put(keys[slot], slot + 1);
+        states[slot] |= ACTIVE | WHEEL;
+        wheel.schedule(slot, lasts[slot] + timeoutSeconds + 1);
+    }
+
+    // Завершение сессии; первая сессия фрагмента остаётся в heads до объединения
+    private void close(int slot) {
+        if ((states[slot] & ACTIVE) != 0) {
+            active.remove(keys[slot]);
+            states[slot] &= ~ACTIVE;
+        }
+        if ((states[slot] & (HEAD | WHEEL)) == 0) {
+            complete(firsts[slot], lasts[slot], pages[slot]);
+            release(slot);
+        }
+    }
+
+    private void complete(long first, long last, int sessionPages) {
+        sessions++;
+        totalSeconds += last - first;
+        totalPages += sessionPages;
+        if (sessionPages == 1) {
+            bounces++;
+        }
+    }
+
+    private int allocate(long key, long first, long last, int sessionPages, long opened) {
+        int slot;
+        if (freeCount > 0) {
+            slot = free[--freeCount];
+        } else {
+            if (used == keys.length) {
+                grow();
+            }
+            slot = used++;
+        }
+        keys[slot] = key;
+        firsts[slot] = first;
+        lasts[slot] = last;
+        pages[slot] = sessionPages;
+        openedAt[slot] = opened;
+        states[slot] = 0;
+        return slot;
+    }
+
+    private void release(int slot) {
+        states[slot] = 0;
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, free.length * 2);
+        }
+        free[freeCount++] = slot;
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        firsts = Arrays.copyOf(firsts, capacity);
+        lasts = Arrays.copyOf(lasts, capacity);
+        pages = Arrays.copyOf(pages, capacity);
+        openedAt = Arrays.copyOf(openedAt, capacity);
+        states = Arrays.copyOf(states, capacity);
+    }
+
+    /**
+     * Объединение с сессиями следующего фрагмента того же лога или фрагмента с другими ключами.
+     * Первая сессия ключа в начале other продолжает открытую здесь сессию того же ключа,
+     * если последовательный проход не завершил бы её до начала той: часы к тому моменту ушли
+     * от её последнего запроса не дальше тайм-аута. Для лога, упорядоченного по времени,
+     * результат совпадает с последовательным проходом. Сессии other копируются.
+     * @param other сессии фрагмента, следующего за уже учтёнными
+     */
+    public void merge(Sessions other) {
+        if (other.watermark == Long.MIN_VALUE) {
+            return;
+        }
+        boolean empty = watermark == Long.MIN_VALUE;
+        if (empty) {
+            watermark = other.watermark;
+            startTime = other.startTime;
+            wheel.reset(watermark + 1);
+        }
+        // продолжения открытых сессий: номер ячейки здесь по ячейке other
+        int[] joined = new int[other.used];
+        Arrays.fill(joined, -1);
+        if (!empty) {
+            long boundary = watermark;
+            other.heads.forEach((key, value) -> {
+                int head = value - 1;
+                int slot = active.get(key) - 1;
+                if (slot >= 0 && Math.max(boundary, other.openedAt[head]) - lasts[slot] <= timeoutSeconds) {
+                    firsts[slot] = Math.min(firsts[slot], other.firsts[head]);
+                    lasts[slot] = Math.max(lasts[slot], other.lasts[head]);
+                    pages[slot] += other.pages[head];
+                    joined[head] = slot;
+                    if ((other.states[head] & ACTIVE) == 0) {
+                        // продолжение уже завершилось в other; ячейка освободится, когда сработает на колесе
+                        active.remove(key);
+                        states[slot] &= ~ACTIVE;
+                    }
+                }
+            });
+            advance(other.watermark);
+        }
+        for (int head = 0; head < other.used; head++) {
+            byte state = other.states[head];
+            if (state == 0 || joined[head] >= 0) {
+                continue;
+            }
+            long key = other.keys[head];
+            if ((state & ACTIVE) != 0) {
+                int previous = active.get(key) - 1;
+                if (previous >= 0) {
+                    // ключ открыт здесь, но other начал его новую сессию: прежняя закончилась
+                    active.remove(key);
+                    states[previous] &= ~ACTIVE;
+                }
+                int slot = allocate(key, other.firsts[head], other.lasts[head], other.pages[head], other.openedAt[head]);
+                open(slot);
+                if (empty && keepsHeads && (state & HEAD) != 0) {
+                    heads.put(key, slot + 1);
+                    states[slot] |= HEAD;
+                }
+            } else if (empty && keepsHeads && (state & HEAD) != 0) {
+                int slot = allocate(key, other.firsts[head], other.lasts[head], other.pages[head], other.openedAt[head]);
+                heads.put(key, slot + 1);
+                states[slot] = HEAD;
+            } else {
+                complete(other.firsts[head], other.lasts[head], other.pages[head]);
+            }
+        }
+        sessions += other.sessions;
+        totalSeconds += other.totalSeconds;
+        totalPages += other.totalPages;
+        bounces += other.bounces;
+    }
+
+    /**
+     * Итоги по всем сессиям, включая открытые и ещё не объединённые первые сессии фрагмента.
+     * Проходит по всем хранимым сессиям, поэтому отчёт считает итоги один раз
+     */
+    public Summary summary() {
+        long count = sessions;
+        long seconds = totalSeconds;
+        long requests = totalPages;
+        long single = bounces;
+        for (int slot = 0; slot < used; slot++) {
+            if (states[slot] != 0) {
+                count++;
+                seconds += lasts[slot] - firsts[slot];
+                requests += pages[slot];
+                single += pages[slot] == 1 ? 1 : 0;
+            }
+        }
+        return new Summary(count, seconds, requests, single);
+    }
+
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(watermark);
+        out.writeLong(startTime);
+        out.writeLong(sessions);
+        out.writeLong(totalSeconds);
+        out.writeLong(totalPages);
+        out.writeLong(bounces);
+        out.writeInt(used - freeCount);
+        for (int slot = 0; slot < used; slot++) {
+            if (states[slot] != 0) {
+                out.writeLong(keys[slot]);
+                out.writeLong(firsts[slot]);
+                out.writeLong(lasts[slot]);
+                out.writeInt(pages[slot]);
+                out.writeLong(openedAt[slot]);
+                out.writeByte(states[slot]);
+            }
+        }
+    }
+
+    // Чтение сессий, записанных writeTo, в пустой экземпляр с тем же тайм-аутом
+    public void readFrom(DataInput in) throws IOException {
+        watermark = in.readLong();
+        startTime = in.readLong();
+        sessions = in.readLong();
+        totalSeconds = in.readLong();
+        totalPages = in.readLong();
+        bounces = in.readLong();
+        if (watermark != Long.MIN_VALUE) {
+            wheel.reset(watermark + 1);
+        }
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            int slot = allocate(in.readLong(), in.readLong(), in.readLong(), in.readInt(), in.readLong());
+            byte state = in.readByte();
+            if (!keepsHeads) {
+                state &= ~HEAD;
+            }
+            if (state == 0) {
+                // первая сессия, завершённая колесом и больше не нужная для объединения
+                complete(firsts[slot], lasts[slot], pages[slot]);
+                release(slot);
+                continue;
+            }
+            if ((state & HEAD) != 0) {
+                heads.put(keys[slot], slot + 1);
+            }
+            if ((state & ACTIVE) != 0) {
+                open(slot);
+            } else if ((state & WHEEL) != 0) {
+                wheel.schedule(slot, lasts[slot] + timeoutSeconds + 1);
+            }
+            states[slot] = state;
+        }
+    }
+
+    // Память сессий, которые сейчас хранятся
+    public long estimatedBytes() {
+        return (long) (used - freeCount) * SESSION_BYTES;
+    }
+
+    // Открытые сейчас сессии
+    public int getActiveSessions() { return active.size(); }
+    public int getTimeoutSeconds() { return timeoutSeconds; }
+
+    // Итоги сессий на момент вызова summary
+    static final class Summary {
+        private final long sessions;
+        private final long seconds;
+        private final long pages;
+        private final long bounces;
+
+        Summary(long sessions, long seconds, long pages, long bounces) {
+            this.sessions = sessions;
+            this.seconds = seconds;
+            this.pages = pages;
+            this.bounces = bounces;
+        }
+
+        public long getSessions() { return sessions; }
+
+        // Средняя длительность сессии в секундах: от первого до последнего запроса
+        public double getAverageSeconds() { return sessions == 0 ? 0.0 : (double) seconds / sessions; }
+        public double getAveragePages() { return sessions == 0 ? 0.0 : (double) pages / sessions; }
+
+        // Доля сессий из одного запроса
+        public double getBounceRate() { return sessions == 0 ? 0.0 : (double) bounces / sessions; }
+    }
+}
@@ -0,0 +1,222 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Приблизительный подсчёт частот алгоритмом Space-Saving с фиксированным числом счётчиков.
+ * Когда счётчики заняты, новый ключ вытесняет ключ с наименьшим счётом и наследует его счёт,
+ * поэтому оценка никогда не меньше истинного значения и завышена не более чем на errorBound().
+ * Счётчики хранятся в min-куче, вытеснение и увеличение стоят O(log capacity).
+ */
+class SpaceSaving<K> {
+
+    // Счётчик ключа: оценка и максимально возможное завышение
+    static class Counter<K> {
+        private K key;
+        private long count;
+        private long error;
+        private int heapIndex;
+
+        Counter() {
+        }
+
+        // Счётчик вне оценки, например из точной таблицы, для отчёта наравне с оценками
+        Counter(K key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        public K getKey() { return key; }
+        public long getCount() { return count; }
+        public long getError() { return error; }
+    }
+
+    // Запись ключа в снимок
+    interface KeyWriter<K> {
+        void write(DataOutput out, K key) throws IOException;
+    }
+
+    // Чтение ключа из снимка
+    interface KeyReader<K> {
+        K read(DataInput in) throws IOException;
+    }
+
+    private final int capacity;
+    private final Map<K, Counter<K>> counters;
+    private final List<Counter<K>> heap;
+    private long total;
+    // завышение, накопленное при объединении с другими оценками
+    private long mergedError;
+
+    public SpaceSaving(int capacity) {
+        this.capacity = Math.max(1, capacity);
+        this.counters = new HashMap<>();
+        this.heap = new ArrayList<>();
+    }
+
+    /**
+     * Увеличивает счёт ключа
+     * @param key ключ
+     * @param increment прибавка
+     */
+    public void add(K key, long increment) {
+        total += increment;
+        Counter<K> counter = counters.get(key);
+        if (counter != null) {
+            counter.count += increment;
+            siftDown(counter.heapIndex);
+            return;
+        }
+
+        if (heap.size() < capacity) {
+            counter = new Counter<>();
+            counter.key = key;
+            counter.count = increment;
+            counter.heapIndex = heap.size();
+            heap.add(counter);
+            counters.put(key, counter);
+            siftUp(counter.heapIndex);
+            return;
+        }
+
+        // вытесняем ключ с наименьшим счётом
+        counter = heap.get(0);
+        counters.remove(counter.key);
+        counter.key = key;
+        counter.error = counter.count;
+        counter.count += increment;
+        counters.put(key, counter);
+        siftDown(0);
+    }
+
+    /**
+     * Объединение с оценкой другой части потока
+     * @param other оценка, построенная на непересекающейся части потока
+     */
+    public void merge(SpaceSaving<K> other) {
+        long before = errorBound();
+        for (Counter<K> counter : other.heap) {
+            add(counter.key, counter.count);
+        }
+        mergedError = Math.max(mergedError, before) + other.errorBound();
+    }
+
+    /**
+     * Граница завышения любой оценки
+     * @return наименьший счёт при заполненных счётчиках, иначе 0, плюс завышение от объединений
+     */
+    public long errorBound() {
+        long min = heap.size() < capacity || heap.isEmpty() ? 0 : heap.get(0).count;
+        return min + mergedError;
+    }
+
+    // Наибольшая оценка счёта
+    public long maxCount() {
+        long max = 0;
+        for (Counter<K> counter : heap) {
+            max = Math.max(max, counter.count);
+        }
+        return max;
+    }
+
+    /**
+     * Ключи с наибольшими оценками
+     * @param limit сколько ключей вернуть
+     * @return счётчики по убыванию оценки
+     */
+    public List<Counter<K>> top(int limit) {
+        List<Counter<K>> sorted = new ArrayList<>(heap);
+        sorted.sort((a, b) -> Long.compare(b.count, a.count));
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    /**
+     * Запись в снимок: счётчики в порядке кучи, так что после чтения куча не перестраивается
+     * @param out поток снимка
+     * @param keyWriter запись ключа
+     */
+    public void writeTo(DataOutput out, KeyWriter<K> keyWriter) throws IOException {
+        out.writeInt(capacity);
+        out.writeLong(total);
+        out.writeLong(mergedError);
+        out.writeInt(heap.size());
+        for (Counter<K> counter : heap) {
+            keyWriter.write(out, counter.key);
+            out.writeLong(counter.count);
+            out.writeLong(counter.error);
+        }
+    }
+
+    /**
+     * Чтение оценки, записанной writeTo
+     * @param in поток снимка
+     * @param keyReader чтение ключа
+     */
+    public static <K> SpaceSaving<K> readFrom(DataInput in, KeyReader<K> keyReader) throws IOException {
+        SpaceSaving<K> sketch = new SpaceSaving<>(in.readInt());
+        sketch.total = in.readLong();
+        sketch.mergedError = in.readLong();
+        int size = in.readInt();
+        for (int i = 0; i < size; i++) {
+            Counter<K> counter = new Counter<>();
+            counter.key = keyReader.read(in);
+            counter.count = in.readLong();
+            counter.error = in.readLong();
+            counter.heapIndex = i;
+            sketch.heap.add(counter);
+            sketch.counters.put(counter.key, counter);
+        }
+        return sketch;
+    }
+
+    public long getTotal() { return total; }
+    public int getCapacity() { return capacity; }
+    public int size() { return heap.size(); }
+
+    private void siftUp(int index) {
+        Counter<K> counter = heap.get(index);
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            Counter<K> parentCounter = heap.get(parent);
+            if (parentCounter.count <= counter.count) {
+                break;
+            }
+            place(parentCounter, index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        Counter<K> counter = heap.get(index);
+        int size = heap.size();
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && heap.get(child + 1).count < heap.get(child).count) {
+                child++;
+            }
+            Counter<K> childCounter = heap.get(child);
+            if (counter.count <= childCounter.count) {
+                break;
+            }
+            place(childCounter, index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(Counter<K> counter, int index) {
+        heap.set(index, counter);
+        counter.heapIndex = index;
+    }
+}
@@ -0,0 +1,237 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Запрос к хранилищу LogStore без повторного разбора лога.
+ * Запуск: java StoreQuery [файл хранилища] [--from=...] [--to=...] [--status=404|4xx] [--ip=...] [--path=...]
+ * [--group-by=status|path|ip|browser|os|hour] [--top=K]
+ * Время задаётся как 2024-01-01T00:00:00Z или секундами эпохи; диапазон [from, to).
+ * Блоки, границы которых не пересекаются с условиями, пропускаются без чтения.
+ */
+public class StoreQuery {
+    enum GroupBy { NONE, STATUS, PATH, IP, BROWSER, OS, HOUR }
+
+    private String storePath = "access.store";
+    private long from = Long.MIN_VALUE;
+    private long to = Long.MAX_VALUE;
+    private int minStatus = 0;
+    private int maxStatus = Short.MAX_VALUE;
+    private String ip;
+    private String path;
+    private GroupBy groupBy = GroupBy.NONE;
+    private int top = 10;
+
+    // Результат запроса: итоги по подходящим строкам и число прочитанных блоков
+    static final class Result {
+        private long requests;
+        private long bytes;
+        private long bots;
+        private int blocksScanned;
+        private int blocksTotal;
+        private final BoundedCounter groups = BoundedCounter.withLongKeys(Long.MAX_VALUE);
+
+        public long getRequests() { return requests; }
+        public long getBytes() { return bytes; }
+        public long getBots() { return bots; }
+        public int getBlocksScanned() { return blocksScanned; }
+        public int getBlocksTotal() { return blocksTotal; }
+        public BoundedCounter getGroups() { return groups; }
+    }
+
+    public static void main(String[] args) {
+        StoreQuery query;
+        try {
+            query = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+        try (LogStore store = LogStore.open(Paths.get(query.storePath))) {
+            long start = System.nanoTime();
+            Result result = query.run(store);
+            double millis = (System.nanoTime() - start) / 1e6;
+            query.print(store, result);
+            System.out.printf("Блоков прочитано: %d из %d, время запроса: %.1f мс%n",
+                    result.blocksScanned, result.blocksTotal, millis);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Разбор аргументов командной строки
+     * @param args аргументы main
+     * @return запрос
+     * @throws IllegalArgumentException при неизвестном параметре или неверном значении
+     */
+    public static StoreQuery parse(String[] args) {
+        StoreQuery query = new StoreQuery();
+        boolean positional = false;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                if (positional) {
+                    throw new IllegalArgumentException("Лишний аргумент: " + arg);
+                }
+                query.storePath = arg;
+                positional = true;
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq < 0 ? null : arg.substring(eq + 1);
+            switch (name) {
+                case "from":
+                    query.from = AnalysisOptions.parseTime(name, value);
+                    break;
+                case "to":
+                    query.to = AnalysisOptions.parseTime(name, value);
+                    break;
+                case "status":
+                    query.parseStatus(name, value);
+                    break;
+                case "ip":
+                    query.ip = value;
+                    break;
+                case "path":
+                    query.path = value;
+                    break;
+                case "group-by":
+                    query.groupBy = parseGroupBy(name, value);
+                    break;
+                case "top":
+                    query.top = Math.max(0, parseInt(name, value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Неизвестный параметр: " + arg);
+            }
+        }
+        return query;
+    }
+
+    // Код ответа целиком (404) или класс ответов (4xx)
+    private void parseStatus(String name, String value) {
+        if (value != null && value.length() == 3 && value.substring(1).equalsIgnoreCase("xx")
+                && Character.isDigit(value.charAt(0))) {
+            minStatus = (value.charAt(0) - '0') * 100;
+            maxStatus = minStatus + 99;
+            return;
+        }
+        minStatus = parseInt(name, value);
+        maxStatus = minStatus;
+    }
+
+    private static GroupBy parseGroupBy(String name, String value) {
+        for (GroupBy groupBy : GroupBy.values()) {
+            if (groupBy != GroupBy.NONE && groupBy.name().equalsIgnoreCase(value)) {
+                return groupBy;
+            }
+        }
+        throw new IllegalArgumentException("Параметр --" + name
+                + " ожидает status, path, ip, browser, os или hour, получено: " + value);
+    }
+
+    private static int parseInt(String name, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Параметр --" + name + " ожидает целое число, получено: " + value);
+        }
+    }
+
+    /**
+     * Выполнение запроса: блоки отбираются по индексу времени и границам колонок,
+     * в отобранных блоках строки проверяются по колонкам, отображённым в память
+     * @param store открытое хранилище
+     */
+    public Result run(LogStore store) throws IOException {
+        Result result = new Result();
+        List<LogStore.Block> blocks = store.getBlocks();
+        result.blocksTotal = blocks.size();
+        // значения, которых нет в словаре, не встречаются ни в одной строке
+        int ipId = ip == null ? -1 : store.getAddresses().find(ip);
+        int pathId = path == null ? -1 : store.getPaths().find(path);
+        if (ip != null && ipId < 0 || path != null && pathId < 0) {
+            return result;
+        }
+        boolean byTime = from != Long.MIN_VALUE || to != Long.MAX_VALUE;
+        for (int index : store.blocksInTimeRange(from, to)) {
+            LogStore.Block block = blocks.get(index);
+            if (block.getMaxStatus() < minStatus || block.getMinStatus() > maxStatus
+                    || ipId >= 0 && (ipId < block.getMinIp() || ipId > block.getMaxIp())
+                    || pathId >= 0 && (pathId < block.getMinPath() || pathId > block.getMaxPath())) {
+                continue;
+            }
+            result.blocksScanned++;
+            LogStore.Columns columns = store.columns(index);
+            for (int row = 0; row < columns.rows(); row++) {
+                if (byTime) {
+                    long time = columns.time(row);
+                    if (time == TimestampParser.INVALID || time < from || time >= to) {
+                        continue;
+                    }
+                }
+                int status = columns.status(row);
+                if (status < minStatus || status > maxStatus
+                        || ipId >= 0 && columns.ip(row) != ipId
+                        || pathId >= 0 && columns.path(row) != pathId) {
+                    continue;
+                }
+                result.requests++;
+                result.bytes += columns.size(row);
+                if (columns.bot(row)) {
+                    result.bots++;
+                }
+                if (groupBy != GroupBy.NONE) {
+                    result.groups.increment(groupKey(columns, row));
+                }
+            }
+        }
+        return result;
+    }
+
+    private long groupKey(LogStore.Columns columns, int row) {
+        switch (groupBy) {
+            case STATUS: return columns.status(row);
+            case PATH: return columns.path(row);
+            case IP: return columns.ip(row);
+            case BROWSER: return columns.browser(row);
+            case OS: return columns.os(row);
+            default: return Math.floorDiv(columns.time(row), 3600);
+        }
+    }
+
+    private String formatKey(LogStore store, long key) {
+        switch (groupBy) {
+            case PATH: return store.getPaths().value((int) key);
+            case IP: return store.getAddresses().value((int) key);
+            case BROWSER: return Browser.values()[(int) key].toString();
+            case OS: return OsType.values()[(int) key].toString();
+            case HOUR: return key == Math.floorDiv(TimestampParser.INVALID, 3600)
+                    ? "без времени" : Instant.ofEpochSecond(key * 3600).toString();
+            default: return Long.toString(key);
+        }
+    }
+
+    /**
+     * Вывод итогов запроса и самых частых групп
+     * @param store хранилище, из словарей которого восстанавливаются пути и адреса
+     * @param result результат run
+     */
+    public void print(LogStore store, Result result) {
+        System.out.println("Строк в хранилище: " + store.getRows());
+        System.out.println("Подходящих запросов: " + result.requests);
+        System.out.println("Байт передано: " + result.bytes);
+        System.out.println("Запросов реальных пользователей: " + (result.requests - result.bots) + ", ботов: " + result.bots);
+        if (groupBy == GroupBy.NONE) {
+            return;
+        }
+        System.out.println("\nГруппы по " + groupBy.name().toLowerCase() + " (топ " + top + "):");
+        for (SpaceSaving.Counter<Long> counter : result.groups.top(top)) {
+            System.out.println("  " + formatKey(store, counter.getKey()) + ": " + counter.getCount() + " запросов");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package parser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Пул строк, материализуемых прямо из байтов входного файла.
+ * Повторное значение возвращается без выделения памяти, новое декодируется из UTF-8 один раз,
+ * поэтому одинаковые IP, страницы и домены в статистике разделяют один экземпляр String.
+ * Для ASCII-строк сравнение идёт с самой строкой, исходные байты хранятся только для остальных.
+ * Не потокобезопасен: у каждого потока разбора свой пул.
+ */
+class StringPool {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private String[] values = new String[INITIAL_CAPACITY];
+    private byte[][] bytes = new byte[INITIAL_CAPACITY][];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Возвращает строку с содержимым байтов [start, end) буфера
+     * @param buffer буфер с данными
+     * @param start начало значения
+     * @param end конец значения
+     * @return общий экземпляр строки для этого значения
+     */
+    public String intern(ByteBuffer buffer, int start, int end) {
+        int hash = hash(buffer, start, end);
+        int mask = values.length - 1;
+        int slot = hash & mask;
+        String value;
+        while ((value = values[slot]) != null) {
+            if (hashes[slot] == hash && matches(slot, value, buffer, start, end)) {
+                return value;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        byte[] raw = new byte[end - start];
+        buffer.get(start, raw);
+        value = new String(raw, StandardCharsets.UTF_8);
+        values[slot] = value;
+        hashes[slot] = hash;
+        // строка той же длины, что и байты, состоит только из ASCII
+        bytes[slot] = value.length() == raw.length ? null : raw;
+        if (++size > values.length * 3 / 4) {
+            resize();
+        }
+        return value;
+    }
+
+    public int size() { return size; }
+
+    private boolean matches(int slot, String value, ByteBuffer buffer, int start, int end) {
+        byte[] raw = bytes[slot];
+        int length = end - start;
+        if (raw == null) {
+            if (value.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (value.charAt(i) != buffer.get(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (raw.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (raw[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hash(ByteBuffer buffer, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + buffer.get(i);
+        }
+        // перемешивание старших битов, чтобы близкие значения не попадали в соседние ячейки
+        return h ^ (h >>> 16) ^ (h >>> 7);
+    }
+
+    private void resize() {
+        String[] oldValues = values;
+        byte[][] oldBytes = bytes;
+        int[] oldHashes = hashes;
+        values = new String[oldValues.length * 2];
+        bytes = new byte[values.length][];
+        hashes = new int[values.length];
+        int mask = values.length - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+            int slot = oldHashes[i] & mask;
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            values[slot] = oldValues[i];
+            bytes[slot] = oldBytes[i];
+            hashes[slot] = oldHashes[i];
+        }
+    }
+}
@@ -0,0 +1,567 @@
+package parser;
+
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * Временные ряды запросов по секундам, минутам и часам в примитивных массивах.
+ * Значения хранятся страницами по 1024 интервала, индекс страницы - номер интервала от эпохи,
+ * сдвинутый на PAGE_BITS; на строку приходится по одному обращению к массиву каждого шага,
+ * а страница ищется в TreeMap только при переходе на другую страницу.
+ * По секундам хранятся запросы и посещения реальными пользователями, по минутам и часам -
+ * ещё байты, посещения ботами и ошибки 4xx и 5xx. Число посекундных страниц ограничено
+ * бюджетом памяти: самые старые страницы сворачиваются в гистограмму нагрузки, пик посещений
+ * и список самых нагруженных секунд, так что эти показатели остаются точными.
+ */
+class TimeSeries {
+    // Шаг ряда
+    enum Step {
+        SECOND(1, "секунды"), MINUTE(60, "минуты"), HOUR(3600, "часы");
+
+        private final int seconds;
+        private final String title;
+
+        Step(int seconds, String title) {
+            this.seconds = seconds;
+            this.title = title;
+        }
+
+        public int getSeconds() { return seconds; }
+        public String getTitle() { return title; }
+    }
+
+    // Интервал ряда с его счётчиками
+    static final class Window {
+        private final long start;
+        private final long requests;
+        private final long humanVisits;
+
+        Window(long start, long requests, long humanVisits) {
+            this.start = start;
+            this.requests = requests;
+            this.humanVisits = humanVisits;
+        }
+
+        // начало интервала в секундах эпохи
+        public long getStart() { return start; }
+        public long getRequests() { return requests; }
+        public long getHumanVisits() { return humanVisits; }
+    }
+
+    // Поля минутных и часовых страниц
+    private static final int REQUESTS = 0;
+    private static final int BYTES = 1;
+    private static final int HUMAN_VISITS = 2;
+    private static final int BOT_VISITS = 3;
+    private static final int CLIENT_ERRORS = 4;
+    private static final int SERVER_ERRORS = 5;
+    private static final int FIELDS = 6;
+    private static final String CSV_HEADER = "time,epoch,requests,bytes,human_visits,bot_visits,errors_4xx,errors_5xx";
+    // Поля посекундных страниц
+    private static final int SECOND_REQUESTS = 0;
+    private static final int SECOND_HUMAN_VISITS = 1;
+    private static final int SECOND_FIELDS = 2;
+
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SLOTS = 1 << PAGE_BITS;
+    // Оценка памяти посекундной страницы: массив int и узел TreeMap
+    private static final long SECOND_PAGE_BYTES = 4L * SECOND_FIELDS * PAGE_SLOTS + 64;
+    private static final long PAGE_BYTES = 8L * FIELDS * PAGE_SLOTS + 64;
+    // Сколько самых нагруженных секунд помнить из свёрнутых страниц
+    static final int TOP_K = 10;
+
+    private final long maxSecondPages;
+    private final TreeMap<Long, int[]> secondPages = new TreeMap<>();
+    private final TreeMap<Long, long[]> minutePages = new TreeMap<>();
+    private final TreeMap<Long, long[]> hourPages = new TreeMap<>();
+    // последние страницы, к которым обращались: строки лога идут почти по порядку
+    private long secondPageIndex = Long.MIN_VALUE;
+    private int[] secondPage;
+    private long minutePageIndex = Long.MIN_VALUE;
+    private long[] minutePage;
+    private long hourPageIndex = Long.MIN_VALUE;
+    private long[] hourPage;
+
+    private long firstSecond = Long.MAX_VALUE;
+    private long lastSecond = Long.MIN_VALUE;
+
+    // свёрнутые посекундные страницы: номера страниц ниже этого уже не хранятся
+    private long foldedBelowPage = Long.MIN_VALUE;
+    // запросы, пришедшие в уже свёрнутые секунды и не попавшие в посекундный ряд
+    private long lateRequests;
+    // число секунд с данной нагрузкой в запросах среди свёрнутых секунд
+    private long[] foldedLoad = new long[16];
+    private int foldedPeakHumanVisits;
+    private final List<Window> foldedTop = new ArrayList<>();
+
+    /**
+     * @param memoryBudget бюджет памяти на посекундные страницы; Long.MAX_VALUE - без ограничения
+     */
+    TimeSeries(long memoryBudget) {
+        this.maxSecondPages = Math.max(1, memoryBudget / SECOND_PAGE_BYTES);
+    }
+
+    /**
+     * Учёт запроса
+     * @param epochSecond время запроса в секундах эпохи
+     * @param bytes размер ответа
+     * @param human запрос реального пользователя, а не бота
+     * @param responseCode код ответа
+     */
+    public void add(long epochSecond, int bytes, boolean human, int responseCode) {
+        firstSecond = Math.min(firstSecond, epochSecond);
+        lastSecond = Math.max(lastSecond, epochSecond);
+
+        int[] seconds = secondPage(epochSecond >> PAGE_BITS);
+        if (seconds != null) {
+            int slot = (int) (epochSecond & (PAGE_SLOTS - 1)) * SECOND_FIELDS;
+            seconds[slot + SECOND_REQUESTS]++;
+            if (human) {
+                seconds[slot + SECOND_HUMAN_VISITS]++;
+            }
+        } else {
+            lateRequests++;
+        }
+
+        long minute = Math.floorDiv(epochSecond, 60);
+        long[] minutes = minutePage(minute >> PAGE_BITS);
+        count(minutes, (int) (minute & (PAGE_SLOTS - 1)) * FIELDS, bytes, human, responseCode);
+        long hour = Math.floorDiv(epochSecond, 3600);
+        long[] hours = hourPage(hour >> PAGE_BITS);
+        count(hours, (int) (hour & (PAGE_SLOTS - 1)) * FIELDS, bytes, human, responseCode);
+    }
+
+    private static void count(long[] page, int slot, int bytes, boolean human, int responseCode) {
+        page[slot + REQUESTS]++;
+        page[slot + BYTES] += bytes;
+        page[slot + (human ? HUMAN_VISITS : BOT_VISITS)]++;
+        if (responseCode >= 400 && responseCode < 500) {
+            page[slot + CLIENT_ERRORS]++;
+        } else if (responseCode >= 500 && responseCode < 600) {
+            page[slot + SERVER_ERRORS]++;
+        }
+    }
+
+    // Посекундная страница; null, если она уже свёрнута
+    private int[] secondPage(long index) {
+        if (index == secondPageIndex) {
+            return secondPage;
+        }
+        if (index < foldedBelowPage) {
+            return null;
+        }
+        int[] page = secondPages.get(index);
+        if (page == null) {
+            page = new int[PAGE_SLOTS * SECOND_FIELDS];
+            secondPages.put(index, page);
+            foldOldPages();
+            if (index < foldedBelowPage) {
+                // новая страница оказалась самой старой и сразу свёрнута
+                return null;
+            }
+        }
+        secondPageIndex = index;
+        secondPage = page;
+        return page;
+    }
+
+    private long[] minutePage(long index) {
+        if (index != minutePageIndex) {
+            minutePage = minutePages.computeIfAbsent(index, key -> new long[PAGE_SLOTS * FIELDS]);
+            minutePageIndex = index;
+        }
+        return minutePage;
+    }
+
+    private long[] hourPage(long index) {
+        if (index != hourPageIndex) {
+            hourPage = hourPages.computeIfAbsent(index, key -> new long[PAGE_SLOTS * FIELDS]);
+            hourPageIndex = index;
+        }
+        return hourPage;
+    }
+
+    // Сворачивание самых старых посекундных страниц сверх бюджета
+    private void foldOldPages() {
+        while (secondPages.size() > maxSecondPages) {
+            Map.Entry<Long, int[]> oldest = secondPages.pollFirstEntry();
+            long index = oldest.getKey();
+            int[] page = oldest.getValue();
+            for (int slot = 0; slot < PAGE_SLOTS; slot++) {
+                long second = (index << PAGE_BITS) + slot;
+                if (second < firstSecond || second > lastSecond) {
+                    continue;
+                }
+                int requests = page[slot * SECOND_FIELDS + SECOND_REQUESTS];
+                int humanVisits = page[slot * SECOND_FIELDS + SECOND_HUMAN_VISITS];
+                addLoad(requests, 1);
+                foldedPeakHumanVisits = Math.max(foldedPeakHumanVisits, humanVisits);
+                if (requests > 0) {
+                    offerFoldedTop(new Window(second, requests, humanVisits));
+                }
+            }
+            foldedBelowPage = Math.max(foldedBelowPage, index + 1);
+            if (index == secondPageIndex) {
+                secondPageIndex = Long.MIN_VALUE;
+                secondPage = null;
+            }
+        }
+    }
+
+    private void addLoad(long requests, long seconds) {
+        if (requests >= foldedLoad.length) {
+            foldedLoad = Arrays.copyOf(foldedLoad, (int) Math.max(requests + 1, foldedLoad.length * 2L));
+        }
+        foldedLoad[(int) requests] += seconds;
+    }
+
+    private void offerFoldedTop(Window window) {
+        if (foldedTop.size() < TOP_K) {
+            foldedTop.add(window);
+            return;
+        }
+        int smallest = 0;
+        for (int i = 1; i < foldedTop.size(); i++) {
+            if (foldedTop.get(i).requests < foldedTop.get(smallest).requests) {
+                smallest = i;
+            }
+        }
+        if (window.requests > foldedTop.get(smallest).requests) {
+            foldedTop.set(smallest, window);
+        }
+    }
+
+    /**
+     * Объединение с рядами следующего фрагмента: счётчики одинаковых интервалов складываются.
+     * Секунда, попавшая на границу фрагментов и свёрнутая в обоих, учитывается в гистограмме нагрузки дважды.
+     */
+    public void merge(TimeSeries other) {
+        firstSecond = Math.min(firstSecond, other.firstSecond);
+        lastSecond = Math.max(lastSecond, other.lastSecond);
+        for (Map.Entry<Long, int[]> entry : other.secondPages.entrySet()) {
+            int[] page = secondPage(entry.getKey());
+            if (page == null) {
+                // страница уже свёрнута: её секунды идут в итоги свёрнутых
+                int[] source = entry.getValue();
+                for (int slot = 0; slot < PAGE_SLOTS; slot++) {
+                    lateRequests += source[slot * SECOND_FIELDS + SECOND_REQUESTS];
+                }
+                continue;
+            }
+            int[] source = entry.getValue();
+            for (int i = 0; i < page.length; i++) {
+                page[i] += source[i];
+            }
+        }
+        mergePages(minutePages, other.minutePages);
+        mergePages(hourPages, other.hourPages);
+        for (int load = 0; load < other.foldedLoad.length; load++) {
+            if (other.foldedLoad[load] != 0) {
+                addLoad(load, other.foldedLoad[load]);
+            }
+        }
+        foldedPeakHumanVisits = Math.max(foldedPeakHumanVisits, other.foldedPeakHumanVisits);
+        for (Window window : other.foldedTop) {
+            offerFoldedTop(window);
+        }
+        foldedBelowPage = Math.max(foldedBelowPage, other.foldedBelowPage);
+        lateRequests += other.lateRequests;
+        // кеш страниц мог указывать на страницу, которая теперь ниже границы свёрнутых
+        secondPageIndex = Long.MIN_VALUE;
+        secondPage = null;
+        while (!secondPages.isEmpty() && secondPages.firstKey() < foldedBelowPage) {
+            secondPages.pollFirstEntry();
+        }
+    }
+
+    private static void mergePages(TreeMap<Long, long[]> target, TreeMap<Long, long[]> source) {
+        for (Map.Entry<Long, long[]> entry : source.entrySet()) {
+            long[] page = target.computeIfAbsent(entry.getKey(), key -> new long[PAGE_SLOTS * FIELDS]);
+            long[] values = entry.getValue();
+            for (int i = 0; i < page.length; i++) {
+                page[i] += values[i];
+            }
+        }
+    }
+
+    /**
+     * Наибольшее число посещений реальными пользователями за одну секунду
+     */
+    public int getPeakHumanVisitsPerSecond() {
+        int peak = foldedPeakHumanVisits;
+        for (int[] page : secondPages.values()) {
+            for (int slot = SECOND_HUMAN_VISITS; slot < page.length; slot += SECOND_FIELDS) {
+                peak = Math.max(peak, page[slot]);
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Квантиль нагрузки в запросах в секунду по всем секундам от первого до последнего запроса,
+     * включая секунды без запросов
+     * @param quantile квантиль от 0 до 1
+     */
+    public long getLoadQuantile(double quantile) {
+        long[] load = foldedLoad.clone();
+        long total = 0;
+        for (long seconds : load) {
+            total += seconds;
+        }
+        for (Map.Entry<Long, int[]> entry : secondPages.entrySet()) {
+            int[] page = entry.getValue();
+            for (int slot = 0; slot < PAGE_SLOTS; slot++) {
+                long second = (entry.getKey() << PAGE_BITS) + slot;
+                if (second < firstSecond || second > lastSecond) {
+                    continue;
+                }
+                int requests = page[slot * SECOND_FIELDS + SECOND_REQUESTS];
+                if (requests >= load.length) {
+                    load = Arrays.copyOf(load, Math.max(requests + 1, load.length * 2));
+                }
+                load[requests]++;
+                total++;
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int requests = 0; requests < load.length; requests++) {
+            seen += load[requests];
+            if (seen >= rank) {
+                return requests;
+            }
+        }
+        return load.length - 1;
+    }
+
+    /**
+     * Самые нагруженные интервалы по числу запросов
+     * @param step шаг ряда
+     * @param limit сколько интервалов вернуть
+     * @return интервалы по убыванию числа запросов
+     */
+    public List<Window> top(Step step, int limit) {
+        PriorityQueue<Window> heap = new PriorityQueue<>(Comparator.comparingLong(Window::getRequests));
+        forEach(step, window -> {
+            if (window.requests > 0) {
+                heap.offer(window);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        });
+        if (step == Step.SECOND) {
+            for (Window window : foldedTop) {
+                heap.offer(window);
+                if (heap.size() > limit) {
+                    heap.poll();
+                }
+            }
+        }
+        List<Window> result = new ArrayList<>(heap);
+        result.sort(Comparator.comparingLong(Window::getRequests).reversed().thenComparingLong(Window::getStart));
+        return result;
+    }
+
+    // Обход хранимых интервалов шага по возрастанию времени
+    private interface WindowVisitor {
+        void visit(Window window);
+    }
+
+    private void forEach(Step step, WindowVisitor visitor) {
+        if (step == Step.SECOND) {
+            for (Map.Entry<Long, int[]> entry : secondPages.entrySet()) {
+                int[] page = entry.getValue();
+                for (int slot = 0; slot < PAGE_SLOTS; slot++) {
+                    visitor.visit(new Window((entry.getKey() << PAGE_BITS) + slot,
+                            page[slot * SECOND_FIELDS + SECOND_REQUESTS], page[slot * SECOND_FIELDS + SECOND_HUMAN_VISITS]));
+                }
+            }
+            return;
+        }
+        for (Map.Entry<Long, long[]> entry : pages(step).entrySet()) {
+            long[] page = entry.getValue();
+            for (int slot = 0; slot < PAGE_SLOTS; slot++) {
+                visitor.visit(new Window(((entry.getKey() << PAGE_BITS) + slot) * step.seconds,
+                        page[slot * FIELDS + REQUESTS], page[slot * FIELDS + HUMAN_VISITS]));
+            }
+        }
+    }
+
+    private TreeMap<Long, long[]> pages(Step step) {
+        return step == Step.MINUTE ? minutePages : hourPages;
+    }
+
+    /**
+     * Запись ряда в CSV: все интервалы от первого до последнего запроса, включая пустые.
+     * Посекундный ряд содержит только запросы и посещения реальными пользователями
+     * и только за хранимые, не свёрнутые секунды.
+     * @param path файл CSV
+     * @param step шаг ряда
+     */
+    public void writeCsv(Path path, Step step) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            if (step == Step.SECOND) {
+                writer.write("time,epoch,requests,human_visits\n");
+                for (Map.Entry<Long, int[]> entry : secondPages.entrySet()) {
+                    int[] page = entry.getValue();
+                    for (int slot = 0; slot < PAGE_SLOTS; slot++) {
+                        long second = (entry.getKey() << PAGE_BITS) + slot;
+                        if (second >= firstSecond && second <= lastSecond) {
+                            writer.write(Instant.ofEpochSecond(second) + "," + second + ","
+                                    + page[slot * SECOND_FIELDS + SECOND_REQUESTS] + ","
+                                    + page[slot * SECOND_FIELDS + SECOND_HUMAN_VISITS] + "\n");
+                        }
+                    }
+                }
+                return;
+            }
+            writer.write(CSV_HEADER + "\n");
+            long first = Math.floorDiv(firstSecond, step.seconds);
+            long last = Math.floorDiv(lastSecond, step.seconds);
+            StringBuilder row = new StringBuilder(128);
+            for (long bucket = first; bucket <= last && firstSecond <= lastSecond; bucket++) {
+                long[] page = pages(step).get(bucket >> PAGE_BITS);
+                int slot = (int) (bucket & (PAGE_SLOTS - 1)) * FIELDS;
+                long start = bucket * step.seconds;
+                row.setLength(0);
+                row.append(Instant.ofEpochSecond(start)).append(',').append(start);
+                for (int field = 0; field < FIELDS; field++) {
+                    row.append(',').append(page == null ? 0 : page[slot + field]);
+                }
+                writer.write(row.append('\n').toString());
+            }
+        }
+    }
+
+    /**
+     * Сводка нагрузки: квантили запросов в секунду и самые нагруженные интервалы каждого шага
+     * @param out поток вывода
+     * @param limit сколько интервалов каждого шага показать
+     */
+    public void printSummary(PrintStream out, int limit) {
+        out.printf("Нагрузка, запросов в секунду: медиана %d, p90 %d, p99 %d, максимум %d\n",
+                getLoadQuantile(0.5), getLoadQuantile(0.9), getLoadQuantile(0.99), getLoadQuantile(1));
+        for (Step step : Step.values()) {
+            StringBuilder line = new StringBuilder("Пиковые ").append(step.title).append(':');
+            for (Window window : top(step, limit)) {
+                line.append(' ').append(Instant.ofEpochSecond(window.start))
+                        .append(" (").append(window.requests).append(')');
+            }
+            out.println(line);
+        }
+    }
+
+    public boolean isExact() {
+        return lateRequests == 0;
+    }
+
+    // Запросы, не вошедшие в посекундный ряд, потому что их секунды уже свёрнуты
+    public long getLateRequests() { return lateRequests; }
+
+    public long estimatedBytes() {
+        return secondPages.size() * SECOND_PAGE_BYTES + (minutePages.size() + hourPages.size()) * PAGE_BYTES
+                + 8L * foldedLoad.length;
+    }
+
+    /**
+     * Запись в снимок статистики
+     * @param out поток снимка
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(firstSecond);
+        out.writeLong(lastSecond);
+        out.writeLong(foldedBelowPage);
+        out.writeLong(lateRequests);
+        out.writeInt(foldedPeakHumanVisits);
+        out.writeInt(foldedLoad.length);
+        for (long seconds : foldedLoad) {
+            out.writeLong(seconds);
+        }
+        out.writeInt(foldedTop.size());
+        for (Window window : foldedTop) {
+            out.writeLong(window.start);
+            out.writeLong(window.requests);
+            out.writeLong(window.humanVisits);
+        }
+        out.writeInt(secondPages.size());
+        for (Map.Entry<Long, int[]> entry : secondPages.entrySet()) {
+            out.writeLong(entry.getKey());
+            for (int value : entry.getValue()) {
+                out.writeInt(value);
+            }
+        }
+        writePages(out, minutePages);
+        writePages(out, hourPages);
+    }
+
+    private static void writePages(DataOutput out, TreeMap<Long, long[]> pages) throws IOException {
+        out.writeInt(pages.size());
+        for (Map.Entry<Long, long[]> entry : pages.entrySet()) {
+            out.writeLong(entry.getKey());
+            for (long value : entry.getValue()) {
+                out.writeLong(value);
+            }
+        }
+    }
+
+    /**
+     * Чтение рядов, записанных writeTo, в пустой TimeSeries
+     * @param in поток снимка
+     */
+    public void readFrom(DataInput in) throws IOException {
+        firstSecond = in.readLong();
+        lastSecond = in.readLong();
+        foldedBelowPage = in.readLong();
+        lateRequests = in.readLong();
+        foldedPeakHumanVisits = in.readInt();
+        foldedLoad = new long[in.readInt()];
+        for (int i = 0; i < foldedLoad.length; i++) {
+            foldedLoad[i] = in.readLong();
+        }
+        int top = in.readInt();
+        for (int i = 0; i < top; i++) {
+            foldedTop.add(new Window(in.readLong(), in.readLong(), in.readLong()));
+        }
+        int pages = in.readInt();
+        for (int i = 0; i < pages; i++) {
+            long index = in.readLong();
+            int[] page = new int[PAGE_SLOTS * SECOND_FIELDS];
+            for (int j = 0; j < page.length; j++) {
+                page[j] = in.readInt();
+            }
+            secondPages.put(index, page);
+        }
+        readPages(in, minutePages);
+        readPages(in, hourPages);
+    }
+
+    private static void readPages(DataInput in, TreeMap<Long, long[]> pages) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long index = in.readLong();
+            long[] page = new long[PAGE_SLOTS * FIELDS];
+            for (int j = 0; j < page.length; j++) {
+                page[j] = in.readLong();
+            }
+            pages.put(index, page);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package parser;
+
+/**
+ * Разбор времени запроса вида "25/Sep/2022:06:25:04 +0300" сразу в секунды эпохи UTC.
+ * Поля имеют фиксированную ширину и читаются по позициям, без форматтера и промежуточных строк;
+ * смещение часового пояса учитывается, а без него время считается заданным в UTC.
+ * Экземпляр запоминает последнее разобранное значение: соседние строки лога обычно приходятся
+ * на ту же секунду или минуту, и тогда разбор сводится к сравнению символов.
+ * Не потокобезопасен.
+ */
+class TimestampParser {
+    // Результат для строки, которая не является временем
+    static final long INVALID = Long.MIN_VALUE;
+
+    // Позиции полей: dd/MMM/yyyy:HH:mm:ss +hhmm
+    private static final int SECOND = 18;
+    private static final int LENGTH_WITHOUT_ZONE = 20;
+    private static final int LENGTH_WITH_ZONE = 26;
+
+    private static final String[] MONTHS =
+            {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private final char[] last = new char[LENGTH_WITH_ZONE];
+    private int lastLength = -1;
+    private long lastEpochSecond;
+
+    /**
+     * Разбор с учётом предыдущего значения
+     * @param s текст, содержащий время
+     * @param from начало времени
+     * @param to конец времени
+     * @return секунды эпохи UTC или INVALID
+     */
+    public long parse(CharSequence s, int from, int to) {
+        int length = to - from;
+        if (length == lastLength) {
+            boolean sameSecond = true;
+            boolean sameMinute = true;
+            for (int i = 0; i < length; i++) {
+                if (s.charAt(from + i) != last[i]) {
+                    if (i == SECOND || i == SECOND + 1) {
+                        sameSecond = false;
+                    } else {
+                        sameSecond = false;
+                        sameMinute = false;
+                        break;
+                    }
+                }
+            }
+            if (sameSecond) {
+                return lastEpochSecond;
+            }
+            int second = twoDigits(s, from + SECOND);
+            if (sameMinute && second >= 0 && second < 60) {
+                lastEpochSecond += second - twoDigits(last, SECOND);
+                last[SECOND] = s.charAt(from + SECOND);
+                last[SECOND + 1] = s.charAt(from + SECOND + 1);
+                return lastEpochSecond;
+            }
+        }
+
+        long epochSecond = decode(s, from, to);
+        if (epochSecond != INVALID) {
+            for (int i = 0; i < length; i++) {
+                last[i] = s.charAt(from + i);
+            }
+            lastLength = length;
+            lastEpochSecond = epochSecond;
+        }
+        return epochSecond;
+    }
+
+    /**
+     * Разбор без запоминания
+     * @param s текст, содержащий время
+     * @param from начало времени
+     * @param to конец времени
+     * @return секунды эпохи UTC или INVALID
+     */
+    public static long decode(CharSequence s, int from, int to) {
+        int length = to - from;
+        if (length != LENGTH_WITHOUT_ZONE && length != LENGTH_WITH_ZONE) {
+            return INVALID;
+        }
+        int i = from;
+        int day = twoDigits(s, i);
+        int month = month(s, i + 3);
+        int year = fourDigits(s, i + 7);
+        int hour = twoDigits(s, i + 12);
+        int minute = twoDigits(s, i + 15);
+        int second = twoDigits(s, i + 18);
+        if (s.charAt(i + 2) != '/' || s.charAt(i + 6) != '/' || s.charAt(i + 11) != ':'
+                || s.charAt(i + 14) != ':' || s.charAt(i + 17) != ':'
+                || month < 1 || year < 0 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return INVALID;
+        }
+
+        int offsetSeconds = 0;
+        if (length == LENGTH_WITH_ZONE) {
+            char sign = s.charAt(i + 21);
+            int offsetHours = twoDigits(s, i + 22);
+            int offsetMinutes = twoDigits(s, i + 24);
+            if (s.charAt(i + 20) != ' ' || (sign != '+' && sign != '-')
+                    || offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return INVALID;
+            }
+            offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (sign == '-' ? -1 : 1);
+        }
+
+        return daysFromEpoch(year, month, day) * 86400 + hour * 3600 + minute * 60 + second - offsetSeconds;
+    }
+
+    /**
+     * Номер дня от 1970-01-01 по пролептическому григорианскому календарю
+     * (алгоритм days_from_civil Говарда Хиннанта)
+     */
+    private static long daysFromEpoch(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (long) era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+    }
+
+    // Номер месяца 1-12 по трёхбуквенному английскому названию; -1, если название неизвестно
+    private static int month(CharSequence s, int i) {
+        char c0 = s.charAt(i);
+        char c1 = s.charAt(i + 1);
+        char c2 = s.charAt(i + 2);
+        for (int m = 0; m < MONTHS.length; m++) {
+            String name = MONTHS[m];
+            if (name.charAt(0) == c0 && name.charAt(1) == c1 && name.charAt(2) == c2) {
+                return m + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static int twoDigits(CharSequence s, int i) {
+        return digits(s.charAt(i), s.charAt(i + 1));
+    }
+
+    private static int twoDigits(char[] s, int i) {
+        return digits(s[i], s[i + 1]);
+    }
+
+    private static int digits(char tens, char ones) {
+        if (tens < '0' || tens > '9' || ones < '0' || ones > '9') {
+            return -1;
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
+
+    private static int fourDigits(CharSequence s, int i) {
+        int high = twoDigits(s, i);
+        int low = twoDigits(s, i + 2);
+        return high < 0 || low < 0 ? -1 : high * 100 + low;
+    }
+}
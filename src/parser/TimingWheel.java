@@ -0,0 +1,160 @@
+package parser;
+
+import java.util.Arrays;
+
+/**
+ * Иерархическое колесо таймеров по секундам: четыре уровня по 64 ячейки, ячейка уровня l
+ * охватывает 64^l секунд, так что колесо покрывает 2^24 секунд (около 194 суток) вперёд.
+ * Элемент - номер от 0, который выдаёт владелец колеса; элементы одной ячейки связаны
+ * в список через массив next, поэтому постановка и срабатывание не создают объектов.
+ * Время колеса движется только вперёд, по вызовам advance. На каждой секунде срабатывает
+ * одна ячейка нижнего уровня, а в начале каждого блока из 64^l секунд ячейка уровня l
+ * раскладывается по нижним уровням. Постановка и срабатывание элемента - O(1), не считая
+ * не более трёх перекладываний между уровнями.
+ */
+class TimingWheel {
+    // Решение владельца по сработавшему элементу
+    interface Expiry {
+        /**
+         * @param item сработавший элемент
+         * @param tick секунда срабатывания
+         * @return новый срок элемента или DONE, если элемент больше не отслеживается
+         */
+        long expire(int item, long tick);
+    }
+
+    // Элемент снят с колеса
+    static final long DONE = Long.MIN_VALUE;
+
+    private static final int LEVEL_BITS = 6;
+    private static final int SLOTS = 1 << LEVEL_BITS;
+    private static final int LEVELS = 4;
+    // Срок дальше этого откладывается до края колеса и проверяется владельцем заново
+    static final long SPAN = 1L << (LEVEL_BITS * LEVELS);
+    private static final int NONE = -1;
+
+    // первые элементы ячеек по уровням
+    private final int[][] heads = new int[LEVELS][SLOTS];
+    private int[] next = new int[64];
+    private long[] deadlines = new long[64];
+    // следующая необработанная секунда; все секунды до неё уже сработали
+    private long now = Long.MIN_VALUE;
+    private int size;
+
+    TimingWheel() {
+        for (int[] level : heads) {
+            Arrays.fill(level, NONE);
+        }
+    }
+
+    /**
+     * Постановка элемента на срок
+     * @param item элемент, который сейчас не стоит на колесе
+     * @param deadline секунда срабатывания; прошедший срок срабатывает на ближайшей секунде
+     */
+    public void schedule(int item, long deadline) {
+        if (now == Long.MIN_VALUE) {
+            now = deadline;
+        }
+        if (item >= next.length) {
+            int capacity = Math.max(item + 1, next.length * 2);
+            next = Arrays.copyOf(next, capacity);
+            deadlines = Arrays.copyOf(deadlines, capacity);
+        }
+        deadlines[item] = deadline;
+        link(item, Math.max(deadline, now));
+        size++;
+    }
+
+    // Включение в ячейку по разнице между сроком и текущей секундой
+    private void link(int item, long deadline) {
+        long delta = deadline - now;
+        if (delta >= SPAN) {
+            deadline = now + SPAN - 1;
+            delta = SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (LEVEL_BITS * (level + 1))) {
+            level++;
+        }
+        int slot = (int) (deadline >>> (LEVEL_BITS * level)) & (SLOTS - 1);
+        next[item] = heads[level][slot];
+        heads[level][slot] = item;
+    }
+
+    /**
+     * Продвижение времени: срабатывают все элементы со сроком не позже tick
+     * @param tick секунда, до которой включительно продвигается колесо
+     * @param expiry решение по каждому сработавшему элементу
+     */
+    public void advance(long tick, Expiry expiry) {
+        if (now == Long.MIN_VALUE) {
+            now = tick + 1;
+            return;
+        }
+        while (now <= tick) {
+            if (size == 0) {
+                // без элементов секунды пропускаются разом
+                now = tick + 1;
+                return;
+            }
+            // старшие уровни раскладываются раньше младших: их элементы могут попасть в ячейки этой же секунды
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((now & ((1L << (LEVEL_BITS * level)) - 1)) == 0) {
+                    cascade(level, (int) (now >>> (LEVEL_BITS * level)) & (SLOTS - 1));
+                }
+            }
+            int slot = (int) now & (SLOTS - 1);
+            int item = heads[0][slot];
+            heads[0][slot] = NONE;
+            while (item != NONE) {
+                int following = next[item];
+                size--;
+                if (deadlines[item] > now) {
+                    // срок за краем колеса: элемент ждёт следующего оборота
+                    link(item, deadlines[item]);
+                    size++;
+                } else {
+                    long deadline = expiry.expire(item, now);
+                    if (deadline != DONE) {
+                        deadlines[item] = deadline;
+                        link(item, Math.max(deadline, now + 1));
+                        size++;
+                    }
+                }
+                item = following;
+            }
+            now++;
+        }
+    }
+
+    private void cascade(int level, int slot) {
+        int item = heads[level][slot];
+        heads[level][slot] = NONE;
+        while (item != NONE) {
+            int following = next[item];
+            link(item, Math.max(deadlines[item], now));
+            item = following;
+        }
+    }
+
+    // Снятие всех элементов без срабатывания, например когда владелец завершает их сам
+    public void clear() {
+        for (int[] level : heads) {
+            Arrays.fill(level, NONE);
+        }
+        size = 0;
+    }
+
+    /**
+     * Перевод времени колеса без срабатывания; допустим только на пустом колесе
+     * @param tick первая необработанная секунда
+     */
+    public void reset(long tick) {
+        now = tick;
+    }
+
+    // Число элементов на колесе
+    public int size() { return size; }
+    public long getNow() { return now; }
+}
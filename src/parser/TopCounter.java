@@ -0,0 +1,159 @@
+package parser;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Счёт значений словаря статистики для топов отчёта.
+ * Без бюджета памяти счёт точный: по номерам значений в словаре, так что топ не зависит от того,
+ * на какие фрагменты делился файл и в каком порядке они объединялись.
+ * С бюджетом памяти - Space-Saving с фиксированным числом счётчиков: оценки приблизительные,
+ * а при вытеснениях состав топа может зависеть от деления на фрагменты.
+ */
+class TopCounter {
+    // Порядок отчёта: по убыванию счёта, при равном счёте - по значению
+    private static final Comparator<SpaceSaving.Counter<String>> ORDER = Comparator
+            .<SpaceSaving.Counter<String>>comparingLong(SpaceSaving.Counter::getCount).reversed()
+            .thenComparing(SpaceSaving.Counter::getKey);
+
+    private final Dictionary dictionary;
+    // номер значения в словаре -> счёт; null при приблизительном счёте
+    private final IntIntHashMap exact;
+    private SpaceSaving<String> sketch;
+
+    private TopCounter(Dictionary dictionary, IntIntHashMap exact, SpaceSaving<String> sketch) {
+        this.dictionary = dictionary;
+        this.exact = exact;
+        this.sketch = sketch;
+    }
+
+    /**
+     * Точный счёт
+     * @param dictionary словарь значений, общий с множествами той же статистики
+     */
+    public static TopCounter exact(Dictionary dictionary) {
+        return new TopCounter(dictionary, new IntIntHashMap(), null);
+    }
+
+    /**
+     * Оценка Space-Saving
+     * @param capacity число счётчиков
+     */
+    public static TopCounter approximate(Dictionary dictionary, int capacity) {
+        return new TopCounter(dictionary, null, new SpaceSaving<>(capacity));
+    }
+
+    public void add(String value) {
+        if (exact != null) {
+            exact.addTo(dictionary.id(value), 1);
+        } else {
+            sketch.add(value, 1);
+        }
+    }
+
+    /**
+     * Объединение со счётом другого фрагмента
+     * @param other счёт фрагмента с тем же режимом
+     * @param translation номер в словаре этой статистики по номеру в словаре other
+     */
+    public void merge(TopCounter other, int[] translation) {
+        if (exact != null) {
+            exact.ensureCapacity(exact.size() + other.exact.size());
+            other.exact.forEach((id, count) -> exact.addTo(translation[(int) id], count));
+        } else {
+            sketch.merge(other.sketch);
+        }
+    }
+
+    /**
+     * Значения с наибольшим счётом
+     * @param limit сколько значений вернуть
+     * @return счётчики по убыванию счёта, при равном счёте - по значению; у точного счёта завышение 0
+     */
+    public List<SpaceSaving.Counter<String>> top(int limit) {
+        if (exact == null) {
+            List<SpaceSaving.Counter<String>> all = new ArrayList<>(sketch.top(sketch.size()));
+            all.sort(ORDER);
+            return all.subList(0, Math.min(limit, all.size()));
+        }
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        // в куче лежит limit лучших значений, в вершине - худшее из них
+        PriorityQueue<SpaceSaving.Counter<String>> heap = new PriorityQueue<>(limit + 1, ORDER.reversed());
+        exact.forEach((id, count) -> {
+            if (heap.size() == limit && count < heap.peek().getCount()) {
+                return;
+            }
+            heap.offer(new SpaceSaving.Counter<>(dictionary.value((int) id), count, 0));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        });
+        List<SpaceSaving.Counter<String>> result = new ArrayList<>(heap);
+        result.sort(ORDER);
+        return result;
+    }
+
+    /**
+     * Запись в снимок статистики: пары номер-счёт точной таблицы или счётчики Space-Saving
+     * @param out поток снимка
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeBoolean(exact == null);
+        if (exact == null) {
+            sketch.writeTo(out, DataOutput::writeUTF);
+            return;
+        }
+        out.writeInt(exact.size());
+        try {
+            exact.forEach((id, count) -> {
+                try {
+                    out.writeInt((int) id);
+                    out.writeInt(count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Чтение счёта, записанного writeTo, в пустой TopCounter того же режима; словарь уже прочитан
+     * @param in поток снимка
+     */
+    public void readFrom(DataInput in) throws IOException {
+        if (in.readBoolean()) {
+            sketch = SpaceSaving.readFrom(in, DataInput::readUTF);
+            return;
+        }
+        int size = in.readInt();
+        exact.ensureCapacity(size);
+        for (int i = 0; i < size; i++) {
+            exact.addTo(in.readInt(), in.readInt());
+        }
+    }
+
+    // Счёт точный: таблица без оценок или Space-Saving, который ещё ничего не вытеснил
+    public boolean isExact() {
+        return exact != null || sketch.errorBound() == 0;
+    }
+
+    // Число хранимых счётчиков
+    public int size() {
+        return exact != null ? exact.size() : sketch.size();
+    }
+
+    // Максимальное завышение оценок; 0 для точного счёта
+    public long errorBound() {
+        return exact != null ? 0 : sketch.errorBound();
+    }
+}
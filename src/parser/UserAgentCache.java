@@ -0,0 +1,98 @@
+package parser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Ограниченный кеш классификации User-Agent по исходной строке.
+ * В логах обычно несколько тысяч различных User-Agent повторяются миллионы раз,
+ * поэтому классификация выполняется один раз на строку, а записи разделяют один неизменяемый UserAgent.
+ * Не потокобезопасен: каждому потоку разбора нужен свой кеш.
+ */
+class UserAgentCache {
+    static final int DEFAULT_CAPACITY = 10_000;
+
+    // Порядок вытеснения при переполнении
+    enum Policy {
+        // вытесняется строка, к которой дольше всего не обращались
+        LRU,
+        // вытесняется строка, добавленная раньше всех
+        FIFO
+    }
+
+    private final int capacity;
+    private final Policy policy;
+    private final UserAgentRules rules;
+    private final Map<String, UserAgent> entries;
+    private long hits;
+    private long misses;
+
+    public UserAgentCache() {
+        this(DEFAULT_CAPACITY, Policy.LRU);
+    }
+
+    /**
+     * @param capacity наибольшее число строк в кеше; 0 - кеш отключён
+     * @param policy порядок вытеснения
+     */
+    public UserAgentCache(int capacity, Policy policy) {
+        this(capacity, policy, UserAgentRules.defaults());
+    }
+
+    /**
+     * @param capacity наибольшее число строк в кеше; 0 - кеш отключён
+     * @param policy порядок вытеснения
+     * @param rules правила классификации строк
+     */
+    public UserAgentCache(int capacity, Policy policy, UserAgentRules rules) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.rules = rules;
+        this.entries = new LinkedHashMap<>(16, 0.75f, policy == Policy.LRU) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UserAgent> eldest) {
+                return size() > UserAgentCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Классификация строки User-Agent
+     * @param userAgent исходная строка
+     * @return общий для одинаковых строк объект UserAgent
+     */
+    public UserAgent get(String userAgent) {
+        if (capacity <= 0 || userAgent == null) {
+            misses++;
+            return new UserAgent(userAgent, rules);
+        }
+        UserAgent cached = entries.get(userAgent);
+        if (cached != null) {
+            hits++;
+            return cached;
+        }
+        misses++;
+        UserAgent classified = new UserAgent(userAgent, rules);
+        entries.put(userAgent, classified);
+        return classified;
+    }
+
+    // Обнуление счётчиков попаданий после их передачи в статистику
+    public void resetCounters() {
+        hits = 0;
+        misses = 0;
+    }
+
+    // Доля обращений, обслуженных из кеша
+    public double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    // Геттеры
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public int getCapacity() { return capacity; }
+    public Policy getPolicy() { return policy; }
+    public int size() { return entries.size(); }
+}
@@ -0,0 +1,408 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Правила классификации User-Agent, собранные в один автомат Ахо-Корасик.
+ * Правило - подстрока и значения, которые она задаёт: ОС, браузер, тип устройства и семейство бота.
+ * Подстроки ищутся без учёта регистра ASCII. Если атрибут задают несколько совпавших правил,
+ * берётся правило с наибольшим priority, а при равном - записанное раньше.
+ * Автомат - таблица переходов по классам символов, в которой переходы по неудачам уже подставлены,
+ * поэтому строка проходится один раз, по одному обращению к таблице на символ, сколько бы правил ни было.
+ * В каждом состоянии заранее известно лучшее правило для каждого атрибута среди всех подстрок,
+ * которые в нём заканчиваются, включая суффиксы.
+ *
+ * Формат файла правил: одно правило на строку, поля через точку с запятой, # - комментарий до конца строки:
+ * <pre>
+ * подстрока; os=WINDOWS; browser=CHROME; device=DESKTOP; bot=Googlebot; priority=10
+ * </pre>
+ * os, browser и device принимают значения OsType, Browser и DeviceClass по имени или названию;
+ * bot - произвольное название семейства, его наличие делает User-Agent ботом; priority по умолчанию 0.
+ * Подстрока состоит из печатных символов ASCII.
+ */
+class UserAgentRules {
+    // Правила по умолчанию: признаки прежней классификации и распространённые боты и клиенты без браузера
+    static final String DEFAULT_RULES = """
+            # ОС: Windows, затем macOS, Linux, Android и iOS
+            windows; os=WINDOWS; priority=50
+            mac os x; os=MAC_OS; priority=40
+            macintosh; os=MAC_OS; priority=40
+            linux; os=LINUX; priority=30
+            android; os=ANDROID; priority=20
+            iphone; os=IOS; priority=10
+            ipad; os=IOS; priority=10
+
+            # браузеры: Edge, затем Firefox, Chrome, Safari и Opera
+            edg/; browser=EDGE; priority=50
+            firefox; browser=FIREFOX; priority=40
+            chrome; browser=CHROME; priority=30
+            safari; browser=SAFARI; priority=20
+            opera; browser=OPERA; priority=10
+            opr/; browser=OPERA; priority=10
+
+            # устройства
+            windows; device=DESKTOP
+            macintosh; device=DESKTOP
+            x11; device=DESKTOP
+            mobile; device=MOBILE; priority=10
+            iphone; device=MOBILE; priority=10
+            android; device=MOBILE; priority=10
+            ipad; device=TABLET; priority=20
+            tablet; device=TABLET; priority=20
+
+            # боты: общие признаки, затем известные семейства
+            bot; bot=Другие боты; device=BOT; priority=100
+            spider; bot=Другие боты; device=BOT; priority=100
+            crawl; bot=Другие боты; device=BOT; priority=100
+            googlebot; bot=Googlebot; device=BOT; priority=110
+            bingbot; bot=Bingbot; device=BOT; priority=110
+            yandexbot; bot=YandexBot; device=BOT; priority=110
+            baiduspider; bot=Baiduspider; device=BOT; priority=110
+            duckduckbot; bot=DuckDuckBot; device=BOT; priority=110
+            yahoo! slurp; bot=Yahoo Slurp; device=BOT; priority=110
+            applebot; bot=Applebot; device=BOT; priority=110
+            ahrefsbot; bot=AhrefsBot; device=BOT; priority=110
+            semrushbot; bot=SemrushBot; device=BOT; priority=110
+            mj12bot; bot=MJ12bot; device=BOT; priority=110
+            petalbot; bot=PetalBot; device=BOT; priority=110
+            gptbot; bot=GPTBot; device=BOT; priority=110
+            facebookexternalhit; bot=Facebook; device=BOT; priority=110
+            twitterbot; bot=Twitterbot; device=BOT; priority=110
+            headlesschrome; bot=HeadlessChrome; device=BOT; priority=110
+
+            # клиенты без браузера
+            curl/; bot=curl; device=BOT; priority=110
+            wget/; bot=Wget; device=BOT; priority=110
+            python-requests; bot=python-requests; device=BOT; priority=110
+            python-urllib; bot=Python urllib; device=BOT; priority=110
+            aiohttp; bot=aiohttp; device=BOT; priority=110
+            go-http-client; bot=Go http; device=BOT; priority=110
+            okhttp; bot=OkHttp; device=BOT; priority=110
+            apache-httpclient; bot=Apache HttpClient; device=BOT; priority=110
+            java/; bot=Java; device=BOT; priority=110
+            libwww-perl; bot=libwww-perl; device=BOT; priority=110
+            scrapy; bot=Scrapy; device=BOT; priority=110
+            """;
+
+    private static final UserAgentRules DEFAULTS = parse(DEFAULT_RULES, "правила по умолчанию");
+
+    // Ранг, которого нет ни у одного правила
+    private static final int NONE = Integer.MAX_VALUE;
+    // Атрибуты в массиве лучших рангов состояния
+    private static final int OS = 0;
+    private static final int BROWSER = 1;
+    private static final int DEVICE = 2;
+    private static final int BOT = 3;
+    private static final int ATTRIBUTES = 4;
+
+    // Правило файла
+    private static final class Rule {
+        private final String pattern;
+        private final int line;
+        private OsType os;
+        private Browser browser;
+        private DeviceClass device;
+        private String bot;
+        private int priority;
+
+        Rule(String pattern, int line) {
+            this.pattern = pattern;
+            this.line = line;
+        }
+    }
+
+    // Результат классификации; атрибуты без совпавших правил - OTHER, семейство бота - null
+    static final class Match {
+        private final OsType os;
+        private final Browser browser;
+        private final DeviceClass device;
+        private final String botFamily;
+
+        Match(OsType os, Browser browser, DeviceClass device, String botFamily) {
+            this.os = os;
+            this.browser = browser;
+            this.device = device;
+            this.botFamily = botFamily;
+        }
+
+        public OsType getOs() { return os; }
+        public Browser getBrowser() { return browser; }
+        public DeviceClass getDevice() { return device; }
+        public String getBotFamily() { return botFamily; }
+    }
+
+    private final String source;
+    // правила по убыванию priority, при равном - в порядке файла; номер в массиве - ранг правила
+    private final Rule[] ranked;
+    // класс символа ASCII без учёта регистра; 0 - символ не встречается в подстроках
+    private final byte[] classes = new byte[128];
+    private final int symbols;
+    // переход: next[состояние * symbols + класс]
+    private final int[] next;
+    // лучшие ранги по атрибутам: best[состояние * ATTRIBUTES + атрибут]
+    private final int[] best;
+    // в состоянии заканчивается хотя бы одна подстрока
+    private final boolean[] terminal;
+
+    private UserAgentRules(String source, List<Rule> rules) {
+        this.source = source;
+        this.ranked = rules.toArray(new Rule[0]);
+        // сортировка устойчивая: при равном priority сохраняется порядок файла
+        Arrays.sort(ranked, Comparator.comparingInt((Rule rule) -> rule.priority).reversed());
+
+        int classCount = 1;
+        for (Rule rule : ranked) {
+            for (int i = 0; i < rule.pattern.length(); i++) {
+                char c = rule.pattern.charAt(i);
+                if (classes[c] == 0) {
+                    classes[c] = (byte) classCount++;
+                }
+            }
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            classes[c] = classes[lower(c)];
+        }
+        this.symbols = classCount;
+
+        // бор подстрок
+        List<int[]> trie = new ArrayList<>();
+        List<int[]> bestByState = new ArrayList<>();
+        trie.add(newRow());
+        bestByState.add(newBest());
+        for (int rank = 0; rank < ranked.length; rank++) {
+            Rule rule = ranked[rank];
+            int state = 0;
+            for (int i = 0; i < rule.pattern.length(); i++) {
+                int symbol = classes[rule.pattern.charAt(i)];
+                if (trie.get(state)[symbol] <= 0) {
+                    trie.get(state)[symbol] = trie.size();
+                    trie.add(newRow());
+                    bestByState.add(newBest());
+                }
+                state = trie.get(state)[symbol];
+            }
+            // правила перебираются по рангу, поэтому первое записанное в состояние - лучшее
+            int[] stateBest = bestByState.get(state);
+            setIfNone(stateBest, OS, rule.os != null, rank);
+            setIfNone(stateBest, BROWSER, rule.browser != null, rank);
+            setIfNone(stateBest, DEVICE, rule.device != null, rank);
+            setIfNone(stateBest, BOT, rule.bot != null, rank);
+        }
+
+        // переходы по неудачам обходом в ширину: состояние неудачи всегда ближе к корню
+        int states = trie.size();
+        this.next = new int[states * symbols];
+        this.best = new int[states * ATTRIBUTES];
+        this.terminal = new boolean[states];
+        int[] fail = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int symbol = 0; symbol < symbols; symbol++) {
+            int child = trie.get(0)[symbol];
+            next[symbol] = Math.max(child, 0);
+            if (child > 0) {
+                queue.add(child);
+            }
+        }
+        copyBest(bestByState.get(0), 0);
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] own = bestByState.get(state);
+            for (int attribute = 0; attribute < ATTRIBUTES; attribute++) {
+                best[state * ATTRIBUTES + attribute] = Math.min(own[attribute], best[fail[state] * ATTRIBUTES + attribute]);
+            }
+            terminal[state] = hasAny(state);
+            for (int symbol = 0; symbol < symbols; symbol++) {
+                int child = trie.get(state)[symbol];
+                if (child > 0) {
+                    fail[child] = next[fail[state] * symbols + symbol];
+                    next[state * symbols + symbol] = child;
+                    queue.add(child);
+                } else {
+                    next[state * symbols + symbol] = next[fail[state] * symbols + symbol];
+                }
+            }
+        }
+    }
+
+    private int[] newRow() {
+        return new int[symbols];
+    }
+
+    private static int[] newBest() {
+        int[] result = new int[ATTRIBUTES];
+        Arrays.fill(result, NONE);
+        return result;
+    }
+
+    private static void setIfNone(int[] stateBest, int attribute, boolean present, int rank) {
+        if (present && stateBest[attribute] == NONE) {
+            stateBest[attribute] = rank;
+        }
+    }
+
+    private void copyBest(int[] own, int state) {
+        System.arraycopy(own, 0, best, state * ATTRIBUTES, ATTRIBUTES);
+        terminal[state] = hasAny(state);
+    }
+
+    private boolean hasAny(int state) {
+        for (int attribute = 0; attribute < ATTRIBUTES; attribute++) {
+            if (best[state * ATTRIBUTES + attribute] != NONE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Правила, которыми классифицируется User-Agent без --ua-rules
+    static UserAgentRules defaults() {
+        return DEFAULTS;
+    }
+
+    /**
+     * Чтение правил из файла в UTF-8
+     * @param path файл правил
+     * @throws IllegalArgumentException при ошибке в правиле, с номером строки
+     */
+    static UserAgentRules load(Path path) throws IOException {
+        return parse(Files.readString(path, StandardCharsets.UTF_8), path.toString());
+    }
+
+    /**
+     * Разбор правил из текста
+     * @param text правила в формате файла
+     * @param source название источника для сообщений об ошибках
+     * @throws IllegalArgumentException при ошибке в правиле, с номером строки
+     */
+    static UserAgentRules parse(String text, String source) {
+        List<Rule> rules = new ArrayList<>();
+        String[] lines = text.split("\n", -1);
+        for (int n = 0; n < lines.length; n++) {
+            String line = lines[n];
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = line.split(";");
+            Rule rule = new Rule(pattern(fields[0].trim(), source, n + 1), n + 1);
+            for (int i = 1; i < fields.length; i++) {
+                setAttribute(rule, fields[i].trim(), source);
+            }
+            if (rule.os == null && rule.browser == null && rule.device == null && rule.bot == null) {
+                throw error(source, rule.line, "правило не задаёт ни os, ни browser, ни device, ни bot");
+            }
+            rules.add(rule);
+        }
+        return new UserAgentRules(source, rules);
+    }
+
+    private static String pattern(String pattern, String source, int line) {
+        if (pattern.isEmpty()) {
+            throw error(source, line, "пустая подстрока");
+        }
+        StringBuilder lowered = new StringBuilder(pattern.length());
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c < 0x20 || c > 0x7E) {
+                throw error(source, line, "подстрока должна состоять из печатных символов ASCII: " + pattern);
+            }
+            lowered.append(lower(c));
+        }
+        return lowered.toString();
+    }
+
+    private static void setAttribute(Rule rule, String field, String source) {
+        if (field.isEmpty()) {
+            return;
+        }
+        int eq = field.indexOf('=');
+        String name = eq < 0 ? field : field.substring(0, eq).trim();
+        String value = eq < 0 ? "" : field.substring(eq + 1).trim();
+        switch (name) {
+            case "os":
+                rule.os = enumValue(OsType.class, value, source, rule.line);
+                break;
+            case "browser":
+                rule.browser = enumValue(Browser.class, value, source, rule.line);
+                break;
+            case "device":
+                rule.device = enumValue(DeviceClass.class, value, source, rule.line);
+                break;
+            case "bot":
+                if (value.isEmpty()) {
+                    throw error(source, rule.line, "bot ожидает название семейства");
+                }
+                rule.bot = value.intern();
+                break;
+            case "priority":
+                try {
+                    rule.priority = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    throw error(source, rule.line, "priority ожидает целое число, получено: " + value);
+                }
+                break;
+            default:
+                throw error(source, rule.line, "неизвестный атрибут: " + name);
+        }
+    }
+
+    private static <E extends Enum<E>> E enumValue(Class<E> type, String value, String source, int line) {
+        for (E constant : type.getEnumConstants()) {
+            if (constant.name().equalsIgnoreCase(value) || constant.toString().equalsIgnoreCase(value)) {
+                return constant;
+            }
+        }
+        throw error(source, line, "неизвестное значение " + type.getSimpleName() + ": " + value);
+    }
+
+    private static IllegalArgumentException error(String source, int line, String message) {
+        return new IllegalArgumentException("Правила User-Agent " + source + ", строка " + line + ": " + message);
+    }
+
+    private static char lower(char c) {
+        return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+
+    /**
+     * Классификация строки за один проход автомата
+     * @param userAgent непустая строка User-Agent
+     */
+    public Match classify(String userAgent) {
+        int os = NONE;
+        int browser = NONE;
+        int device = NONE;
+        int bot = NONE;
+        int state = 0;
+        for (int i = 0; i < userAgent.length(); i++) {
+            char c = userAgent.charAt(i);
+            state = next[state * symbols + (c < 128 ? classes[c] : 0)];
+            if (terminal[state]) {
+                int base = state * ATTRIBUTES;
+                os = Math.min(os, best[base + OS]);
+                browser = Math.min(browser, best[base + BROWSER]);
+                device = Math.min(device, best[base + DEVICE]);
+                bot = Math.min(bot, best[base + BOT]);
+            }
+        }
+        return new Match(os == NONE ? OsType.OTHER : ranked[os].os,
+                browser == NONE ? Browser.OTHER : ranked[browser].browser,
+                device == NONE ? DeviceClass.OTHER : ranked[device].device,
+                bot == NONE ? null : ranked[bot].bot);
+    }
+
+    // Число правил и состояний автомата
+    public int size() { return ranked.length; }
+    public int getStates() { return terminal.length; }
+    public String getSource() { return source; }
+}
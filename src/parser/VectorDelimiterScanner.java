@@ -0,0 +1,51 @@
+package parser;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Поиск разделителей Vector API: за одну итерацию сравниваются 32 или 64 байта,
+ * в зависимости от ширины векторов процессора, а позиции извлекаются из битовой маски совпадений.
+ * Единственный класс, который ссылается на jdk.incubator.vector; загружается только через DelimiterScanner.vector.
+ */
+class VectorDelimiterScanner extends DelimiterScanner {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    @Override
+    int scan(byte[] bytes, int from, int to, int[] positions) {
+        int count = 0;
+        int i = from;
+        for (int bound = from + SPECIES.loopBound(to - from); i < bound; i += SPECIES.length()) {
+            ByteVector v = ByteVector.fromArray(SPECIES, bytes, i);
+            VectorMask<Byte> delimiters = v.compare(VectorOperators.UNSIGNED_LE, (byte) 0x20)
+                    .or(v.eq((byte) '"'))
+                    .or(v.sub((byte) '[').compare(VectorOperators.UNSIGNED_LE, (byte) 2))
+                    .or(v.eq((byte) 0x85));
+            long bits = delimiters.toLong();
+            while (bits != 0) {
+                positions[count++] = i + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        // хвост короче вектора
+        for (; i < to; i++) {
+            if (isDelimiter(bytes[i])) {
+                positions[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    String name() {
+        return "vector " + SPECIES.vectorBitSize() + " бит";
+    }
+
+    // На процессорах без векторных команд Vector API работает медленнее побайтового цикла
+    @Override
+    boolean isSupported() {
+        return SPECIES.length() >= 16;
+    }
+}